@@ -0,0 +1,112 @@
+package org.jenkinsci.plugins.conditionchecker.benchmarks;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.jenkinsci.plugins.conditionchecker.BuildEvaluationCache;
+import org.jenkinsci.plugins.conditionchecker.ConditionChecker;
+import org.jenkinsci.plugins.conditionchecker.ConditionProgram;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of {@link ConditionChecker#perform} for generated trees of
+ * True and False conditions.
+ *
+ * @author Chris Johnson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConditionCheckerBenchmark {
+    @Param({"deep", "wide", "mixed"})
+    public String shape;
+
+    @Param({"16", "256"})
+    public int size;
+
+    @Param({"first", "middle", "last", "none"})
+    public String decisive;
+
+    private ConditionChecker checker;
+    private AbstractBuild build;
+    private BuildListener listener;
+    private Launcher launcher;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Stubs.descriptors();
+        checker = new ConditionChecker(Trees.create(shape, size, decisive), false);
+        build = Stubs.build();
+        listener = Stubs.listener();
+        launcher = Stubs.launcher(listener);
+        // compile up front, so only checking is measured
+        checker.getProgram();
+    }
+
+    /**
+     * Checks the tree as the publisher of a new build does,
+     * so the results start out uncached.
+     */
+    @Benchmark
+    public boolean perform() throws IOException, InterruptedException {
+        boolean r = checker.perform(build, launcher, listener);
+        BuildEvaluationCache.remove(build);
+        return r;
+    }
+
+    /**
+     * Checks the tree again for a build it was already checked for,
+     * as another checker of the same job with the same conditions does.
+     */
+    @Benchmark
+    public boolean performCached() throws IOException, InterruptedException {
+        return checker.perform(build, launcher, listener);
+    }
+
+    /**
+     * Compiles the tree, the cost paid once per configuration.
+     */
+    @Benchmark
+    public Object compile() {
+        return ConditionProgram.compileAnd(checker.getSnapshot(), false);
+    }
+}
@@ -0,0 +1,275 @@
+package org.jenkinsci.plugins.conditionchecker.benchmarks;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.Action;
+import hudson.model.BuildListener;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jenkinsci.plugins.conditionchecker.BuildEvaluationCache;
+import org.jenkinsci.plugins.conditionchecker.CheckCondition;
+import org.jenkinsci.plugins.conditionchecker.ConditionChecker;
+import org.jenkinsci.plugins.conditionchecker.ConditionResultAction;
+import org.jenkinsci.plugins.conditionchecker.ConditionSnapshot;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Drives many simulated builds through {@link ConditionChecker#perform}
+ * at the same time, the way the builds of busy jobs share one checker.
+ *
+ * Arguments are <tt>name=value</tt> pairs:
+ * <ul>
+ * <li><tt>builds</tt> - number of builds to run, 100000 by default</li>
+ * <li><tt>threads</tt> - builds running at the same time, 64 by default</li>
+ * <li><tt>jobs</tt> - number of jobs, each with its own checker, 8 by default</li>
+ * <li><tt>shape</tt>, <tt>size</tt>, <tt>decisive</tt> - tree of each checker, as for
+ *     the benchmarks, <tt>mixed</tt>, 32 and <tt>middle</tt> by default</li>
+ * <li><tt>latency</tt> - microseconds taken by each leaf checked, 0 by default</li>
+ * <li><tt>parallel</tt> - check the conditions of each checker in parallel</li>
+ * </ul>
+ *
+ * Throughput, latency percentiles of a build and the time the build threads
+ * spent blocked on monitors are reported. Every build's result is compared
+ * with the result of checking the same checker alone, and the snapshot of
+ * each checker must be the same object before and after the run, so lost
+ * updates or torn reads show up as failures. Exits with 1 if any check failed.
+ *
+ * @author Chris Johnson
+ */
+public final class LoadHarness {
+    private final int builds;
+    private final int threads;
+    private final ConditionChecker[] checkers;
+    private final boolean[] expected;
+    private final ConditionSnapshot[] snapshots;
+    private final long[] latencies;
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicInteger wrong = new AtomicInteger();
+    private final AtomicLong blockedCount = new AtomicLong();
+    private final AtomicLong blockedMillis = new AtomicLong();
+    private final AtomicLong waitedCount = new AtomicLong();
+    private final AtomicLong waitedMillis = new AtomicLong();
+
+    LoadHarness(Map<String, String> options) throws Exception {
+        builds = intOption(options, "builds", 100000);
+        threads = intOption(options, "threads", 64);
+        int jobs = intOption(options, "jobs", 8);
+        String shape = option(options, "shape", "mixed");
+        int size = intOption(options, "size", 32);
+        String decisive = option(options, "decisive", "middle");
+        long latency = TimeUnit.MICROSECONDS.toNanos(intOption(options, "latency", 0));
+        boolean parallel = Boolean.parseBoolean(option(options, "parallel", "false"));
+
+        Stubs.descriptors();
+        checkers = new ConditionChecker[jobs];
+        expected = new boolean[jobs];
+        snapshots = new ConditionSnapshot[jobs];
+        latencies = new long[builds];
+        BuildListener listener = Stubs.listener();
+        Launcher launcher = Stubs.launcher(listener);
+        for (int j = 0; j < jobs; j++) {
+            ArrayList<CheckCondition> conditions = Trees.create(shape, size, decisive);
+            if (latency > 0) {
+                conditions = Trees.withLatency(conditions, latency);
+            }
+            // every other job negated, so the jobs do not all give the same result
+            checkers[j] = new ConditionChecker(conditions, j % 2 == 1, parallel);
+            expected[j] = checkers[j].isMet(Stubs.build(), launcher, listener);
+            snapshots[j] = checkers[j].getSnapshot();
+        }
+        System.out.println("Load: " + builds + " builds of " + jobs + " jobs on " + threads
+                + " threads, tree " + shape + "/" + size + "/" + decisive
+                + ", leaf latency " + (latency / 1000) + "us"
+                + (parallel ? ", parallel" : ""));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<String, String>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Expected name=value: " + arg);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        LoadHarness harness = new LoadHarness(options);
+        // warm up with a tenth of the builds, then measure
+        harness.run(Math.max(1, harness.builds / 10), false);
+        boolean ok = harness.run(harness.builds, true);
+        System.exit(ok ? 0 : 1);
+    }
+
+    /**
+     * Runs the builds and prints the report.
+     *
+     * @return true if every build got the expected result
+     */
+    boolean run(final int count, boolean report) throws InterruptedException {
+        next.set(0);
+        wrong.set(0);
+        blockedCount.set(0);
+        blockedMillis.set(0);
+        waitedCount.set(0);
+        waitedMillis.set(0);
+        final ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        if (mx.isThreadContentionMonitoringSupported()) {
+            mx.setThreadContentionMonitoringEnabled(true);
+        }
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final List<Throwable> failures = new ArrayList<Throwable>();
+        for (int t = 0; t < threads; t++) {
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                        runBuilds(count, mx);
+                    } catch (Throwable e) {
+                        synchronized (failures) {
+                            failures.add(e);
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "Simulated build #" + t);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        long began = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - began;
+
+        boolean ok = failures.isEmpty() && wrong.get() == 0;
+        for (Throwable e : failures) {
+            e.printStackTrace();
+        }
+        int changed = 0;
+        for (int j = 0; j < checkers.length; j++) {
+            ConditionSnapshot s = checkers[j].getSnapshot();
+            if (s != snapshots[j] || !s.matches(checkers[j].conditions)) {
+                changed++;
+            }
+        }
+        ok &= changed == 0;
+        if (!report) {
+            return ok;
+        }
+
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        System.out.println(String.format("Throughput: %.1f builds/s (%.2f s)",
+                count / (elapsed / 1e9), elapsed / 1e9));
+        System.out.println(String.format("Latency (us): p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f",
+                percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99),
+                percentile(sorted, 99.9), sorted[count - 1] / 1e3));
+        if (mx.isThreadContentionMonitoringSupported()) {
+            System.out.println(String.format(
+                    "Contention on build threads: blocked %d times (%d ms, %.3f per build), waited %d times (%d ms)",
+                    blockedCount.get(), blockedMillis.get(), (double) blockedCount.get() / count,
+                    waitedCount.get(), waitedMillis.get()));
+        } else {
+            System.out.println("Contention: not supported by this JVM");
+        }
+        System.out.println("Consistency: " + wrong.get() + " wrong results, " + failures.size() + " failed builds, "
+                + changed + " changed snapshots");
+        return ok;
+    }
+
+    /**
+     * Loop of one build thread, taking builds until all have been run.
+     */
+    private void runBuilds(int count, ThreadMXBean mx) throws Exception {
+        final ConditionResultAction[] added = new ConditionResultAction[1];
+        AbstractBuild build = Stubs.build();
+        Mockito.doAnswer(new Answer<Void>() {
+            public Void answer(InvocationOnMock invocation) {
+                Object action = invocation.getArguments()[0];
+                if (action instanceof ConditionResultAction) {
+                    added[0] = (ConditionResultAction) action;
+                }
+                return null;
+            }
+        }).when(build).addAction(Mockito.any(Action.class));
+        // each thread logs to its own listener, like separate builds
+        BuildListener listener = Stubs.listener();
+        Launcher launcher = Stubs.launcher(listener);
+
+        long id = Thread.currentThread().getId();
+        ThreadInfo before = mx.getThreadInfo(id);
+        int i;
+        while ((i = next.getAndIncrement()) < count) {
+            int job = i % checkers.length;
+            added[0] = null;
+            long began = System.nanoTime();
+            checkers[job].perform(build, launcher, listener);
+            latencies[i] = System.nanoTime() - began;
+            // the thread reuses its build, so drop the results a new build would not have
+            BuildEvaluationCache.remove(build);
+            if (added[0] == null || added[0].getResult() != expected[job]) {
+                wrong.incrementAndGet();
+            }
+        }
+        ThreadInfo after = mx.getThreadInfo(id);
+        blockedCount.addAndGet(after.getBlockedCount() - before.getBlockedCount());
+        waitedCount.addAndGet(after.getWaitedCount() - before.getWaitedCount());
+        if (before.getBlockedTime() >= 0) {
+            blockedMillis.addAndGet(after.getBlockedTime() - before.getBlockedTime());
+            waitedMillis.addAndGet(after.getWaitedTime() - before.getWaitedTime());
+        }
+    }
+
+    /**
+     * Returns the percentile of the sorted nanosecond times, in microseconds.
+     */
+    private static double percentile(long[] sorted, double percent) {
+        int index = (int) Math.ceil(percent / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e3;
+    }
+
+    private static String option(Map<String, String> options, String name, String defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : value;
+    }
+
+    private static int intOption(Map<String, String> options, String name, int defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+}
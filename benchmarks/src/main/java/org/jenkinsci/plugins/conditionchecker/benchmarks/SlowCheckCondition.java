@@ -0,0 +1,63 @@
+package org.jenkinsci.plugins.conditionchecker.benchmarks;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import java.util.concurrent.locks.LockSupport;
+
+import org.jenkinsci.plugins.conditionchecker.CheckCondition;
+
+/**
+ * Condition that takes a fixed time before returning its result,
+ * standing in for conditions that wait on remote checks or file scans.
+ *
+ * @author Chris Johnson
+ */
+public class SlowCheckCondition extends CheckCondition {
+    private final boolean result;
+    private final long nanos;
+
+    /**
+     * @param result - result to return
+     * @param nanos - time to wait before returning
+     */
+    public SlowCheckCondition(boolean result, long nanos) {
+        this.result = result;
+        this.nanos = nanos;
+    }
+
+    public boolean isMet(AbstractBuild build, Launcher launcher, BuildListener listener)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + nanos;
+        long left;
+        while ((left = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(left);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        return result;
+    }
+}
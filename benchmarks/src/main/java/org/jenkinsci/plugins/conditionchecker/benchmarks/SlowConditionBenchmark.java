@@ -0,0 +1,90 @@
+package org.jenkinsci.plugins.conditionchecker.benchmarks;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.jenkinsci.plugins.conditionchecker.BuildEvaluationCache;
+import org.jenkinsci.plugins.conditionchecker.ConditionChecker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of checking groups of {@link SlowCheckCondition}s one after another
+ * and in parallel.
+ *
+ * @author Chris Johnson
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SlowConditionBenchmark {
+    @Param({"4", "16"})
+    public int width;
+
+    @Param({"200000"})
+    public long latencyNanos;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private ConditionChecker checker;
+    private AbstractBuild build;
+    private BuildListener listener;
+    private Launcher launcher;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        checker = new ConditionChecker(Trees.slow(width, latencyNanos), false, parallel);
+        build = Stubs.build();
+        listener = Stubs.listener();
+        launcher = Stubs.launcher(listener);
+    }
+
+    /**
+     * Checks the group as the publisher of a new build does.
+     */
+    @Benchmark
+    public boolean perform() throws IOException, InterruptedException {
+        boolean r = checker.perform(build, launcher, listener);
+        BuildEvaluationCache.remove(build);
+        return r;
+    }
+}
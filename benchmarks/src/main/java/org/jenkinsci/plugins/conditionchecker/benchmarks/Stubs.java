@@ -0,0 +1,89 @@
+package org.jenkinsci.plugins.conditionchecker.benchmarks;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.StreamBuildListener;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.jenkinsci.plugins.conditionchecker.AndGroupCheckCondition;
+import org.jenkinsci.plugins.conditionchecker.CheckConditionDescriptor;
+import org.jenkinsci.plugins.conditionchecker.DescriptorRegistry;
+import org.jenkinsci.plugins.conditionchecker.FalseCheckCondition;
+import org.jenkinsci.plugins.conditionchecker.OrGroupCheckCondition;
+import org.jenkinsci.plugins.conditionchecker.TrueCheckCondition;
+import org.mockito.Mockito;
+
+/**
+ * Stand ins for the Jenkins objects passed to the conditions,
+ * so the benchmarks can run without a Jenkins instance.
+ *
+ * @author Chris Johnson
+ */
+final class Stubs {
+    private Stubs() {
+    }
+
+    /**
+     * Returns a mocked build, the conditions used by the benchmarks
+     * do not look at it. Calls are not recorded, so the mock does not grow
+     * or lock when used by many threads.
+     */
+    static AbstractBuild build() {
+        return Mockito.mock(AbstractBuild.class, Mockito.withSettings().stubOnly());
+    }
+
+    /**
+     * Returns a listener that throws away everything logged.
+     */
+    static BuildListener listener() {
+        return new StreamBuildListener(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+    }
+
+    /**
+     * Registers the descriptors of the conditions used by the benchmarks,
+     * so their results are cached per build as in a running Jenkins.
+     */
+    static void descriptors() {
+        DescriptorRegistry.setStandalone(Arrays.<CheckConditionDescriptor>asList(
+                new TrueCheckCondition.DescriptorImpl(),
+                new FalseCheckCondition.DescriptorImpl(),
+                new AndGroupCheckCondition.DescriptorImpl(),
+                new OrGroupCheckCondition.DescriptorImpl()));
+    }
+
+    static Launcher launcher(BuildListener listener) {
+        return new Launcher.LocalLauncher(listener);
+    }
+}
@@ -0,0 +1,185 @@
+package org.jenkinsci.plugins.conditionchecker.benchmarks;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.jenkinsci.plugins.conditionchecker.AndGroupCheckCondition;
+import org.jenkinsci.plugins.conditionchecker.CheckCondition;
+import org.jenkinsci.plugins.conditionchecker.FalseCheckCondition;
+import org.jenkinsci.plugins.conditionchecker.OrGroupCheckCondition;
+import org.jenkinsci.plugins.conditionchecker.TrueCheckCondition;
+
+/**
+ * Generates the condition trees used by the benchmarks.
+ *
+ * Every tree has a single deciding leaf (a false leaf under an AND,
+ * a true leaf under an OR) placed at the <tt>first</tt>, <tt>middle</tt>
+ * or <tt>last</tt> position, or <tt>none</tt> for a tree that has to be
+ * checked completely.
+ *
+ * @author Chris Johnson
+ */
+final class Trees {
+    private Trees() {
+    }
+
+    /**
+     * @param shape - <tt>deep</tt>, <tt>wide</tt> or <tt>mixed</tt>
+     * @param size - depth of deep trees, number of leaves of the others
+     * @param decisive - position of the deciding leaf
+     */
+    static ArrayList<CheckCondition> create(String shape, int size, String decisive) {
+        if ("deep".equals(shape)) {
+            return deep(size, position(decisive, size));
+        }
+        if ("wide".equals(shape)) {
+            return wide(size, position(decisive, size));
+        }
+        if ("mixed".equals(shape)) {
+            return mixed(size, decisive);
+        }
+        throw new IllegalArgumentException("Unknown shape: " + shape);
+    }
+
+    /**
+     * Returns the index of the deciding leaf out of count, or -1 for none.
+     */
+    static int position(String decisive, int count) {
+        if ("first".equals(decisive)) {
+            return 0;
+        }
+        if ("middle".equals(decisive)) {
+            return count / 2;
+        }
+        if ("last".equals(decisive)) {
+            return count - 1;
+        }
+        if ("none".equals(decisive)) {
+            return -1;
+        }
+        throw new IllegalArgumentException("Unknown position: " + decisive);
+    }
+
+    /**
+     * Alternating And and Or groups nested depth levels deep, each holding
+     * a leaf and the next group, the leaf at level decideAt decides its group.
+     */
+    static ArrayList<CheckCondition> deep(int depth, int decideAt) {
+        CheckCondition inner = new TrueCheckCondition();
+        for (int level = depth - 1; level >= 0; level--) {
+            boolean and = level % 2 == 0;
+            boolean decides = level == decideAt;
+            ArrayList<CheckCondition> children = new ArrayList<CheckCondition>();
+            // false decides an AND, true decides an OR
+            children.add(leaf(and ? !decides : decides));
+            children.add(inner);
+            inner = and
+                    ? new AndGroupCheckCondition(children, false)
+                    : new OrGroupCheckCondition(children, false);
+        }
+        ArrayList<CheckCondition> conditions = new ArrayList<CheckCondition>();
+        conditions.add(inner);
+        return conditions;
+    }
+
+    /**
+     * A single level of true leaves, with a false leaf at decideAt.
+     */
+    static ArrayList<CheckCondition> wide(int width, int decideAt) {
+        ArrayList<CheckCondition> conditions = new ArrayList<CheckCondition>();
+        for (int i = 0; i < width; i++) {
+            conditions.add(leaf(i != decideAt));
+        }
+        return conditions;
+    }
+
+    /**
+     * Or groups of four leaves, the true leaf of each group at the given position,
+     * then randomly negated pairs of groups so the shapes differ.
+     */
+    static ArrayList<CheckCondition> mixed(int leaves, String decisive) {
+        Random random = new Random(leaves);
+        int trueAt = position(decisive, 4);
+        ArrayList<CheckCondition> conditions = new ArrayList<CheckCondition>();
+        for (int g = 0; g < Math.max(1, leaves / 4); g++) {
+            ArrayList<CheckCondition> or = new ArrayList<CheckCondition>();
+            for (int i = 0; i < 4; i++) {
+                or.add(leaf(i == trueAt));
+            }
+            CheckCondition group = new OrGroupCheckCondition(or, false);
+            if (random.nextBoolean()) {
+                // double negation keeps the result but adds structure
+                ArrayList<CheckCondition> wrapped = new ArrayList<CheckCondition>();
+                wrapped.add(group);
+                group = new AndGroupCheckCondition(wrapped, true);
+                wrapped = new ArrayList<CheckCondition>();
+                wrapped.add(group);
+                group = new OrGroupCheckCondition(wrapped, true);
+            }
+            conditions.add(group);
+        }
+        return conditions;
+    }
+
+    /**
+     * And group of slow leaves that all pass except the last one.
+     */
+    static ArrayList<CheckCondition> slow(int width, long nanos) {
+        ArrayList<CheckCondition> conditions = new ArrayList<CheckCondition>();
+        for (int i = 0; i < width; i++) {
+            conditions.add(new SlowCheckCondition(i != width - 1, nanos));
+        }
+        return conditions;
+    }
+
+    /**
+     * Copies the tree, replacing the True and False leaves by slow leaves
+     * with the same result, so every leaf checked takes the given time.
+     */
+    static ArrayList<CheckCondition> withLatency(List<CheckCondition> conditions, long nanos) {
+        ArrayList<CheckCondition> copy = new ArrayList<CheckCondition>();
+        for (CheckCondition c : conditions) {
+            if (c instanceof AndGroupCheckCondition) {
+                AndGroupCheckCondition and = (AndGroupCheckCondition) c;
+                copy.add(new AndGroupCheckCondition(withLatency(and.conditions, nanos),
+                        and.negate, and.parallel, and.reorder));
+            } else if (c instanceof OrGroupCheckCondition) {
+                OrGroupCheckCondition or = (OrGroupCheckCondition) c;
+                copy.add(new OrGroupCheckCondition(withLatency(or.conditions, nanos),
+                        or.negate, or.parallel, or.reorder));
+            } else if (c instanceof TrueCheckCondition || c instanceof FalseCheckCondition) {
+                copy.add(new SlowCheckCondition(c instanceof TrueCheckCondition, nanos));
+            } else {
+                copy.add(c);
+            }
+        }
+        return copy;
+    }
+
+    private static CheckCondition leaf(boolean result) {
+        return result ? new TrueCheckCondition() : new FalseCheckCondition();
+    }
+}
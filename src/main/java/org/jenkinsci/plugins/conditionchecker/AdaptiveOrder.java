@@ -0,0 +1,274 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import hudson.model.AbstractBuild;
+import hudson.Launcher;
+import hudson.model.BuildListener;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Checks the conditions of a group in the order that is expected to
+ * decide the group for the least cost.
+ *
+ * The time taken by each condition and how often it decides the group are
+ * measured on every check, as averages that decay so recent checks count
+ * the most and the order follows a change in behavior. The conditions are
+ * sorted by time taken per decision. Conditions not measured yet keep their
+ * configured place, so they are not moved before they can be compared.
+ * The new order is printed to the log of the build that works it out.
+ * Conditions that are order sensitive (see {@link CheckConditionDescriptor#isOrderSensitive()})
+ * stay where they are configured and nothing is moved across them.
+ *
+ * @author Chris Johnson
+ */
+public final class AdaptiveOrder {
+    /**
+     * Number of checks between working out the order again
+     */
+    static final int INTERVAL = 16;
+
+    /**
+     * Weight of the latest check in the decaying averages
+     */
+    static final double DECAY = 0.125;
+
+    private final CheckCondition[] conditions;
+    /**
+     * conditions that nothing may be moved across
+     */
+    private final boolean[] pinned;
+    /**
+     * true once a condition has been checked, guarded by this
+     */
+    private final boolean[] measured;
+    /**
+     * decaying average of the time taken by each check, guarded by this
+     */
+    private final double[] nanos;
+    /**
+     * decaying average of how often each check decides the group, guarded by this
+     */
+    private final double[] decisions;
+    private final AtomicLong checks = new AtomicLong();
+    /**
+     * order to check the conditions in, replaced as a whole
+     */
+    private volatile int[] order;
+
+    /**
+     * @param conditions - list of conditions of the group, may be null
+     */
+    public AdaptiveOrder(List<CheckCondition> conditions) {
+        this.conditions = conditions == null
+                ? new CheckCondition[0]
+                : conditions.toArray(new CheckCondition[conditions.size()]);
+        int size = this.conditions.length;
+        pinned = new boolean[size];
+        order = new int[size];
+        for (int i = 0; i < size; i++) {
+            pinned[i] = isOrderSensitive(this.conditions[i]);
+            order[i] = i;
+        }
+        measured = new boolean[size];
+        nanos = new double[size];
+        decisions = new double[size];
+    }
+
+    /**
+     * Checks the conditions in the measured order.
+     *
+     * @param decisive - result of a condition that decides the group,
+     *      false for an AND group and true for an OR group
+     * @param build
+     * @param launcher
+     * @param listener
+     * @param context - state of the whole check
+     *
+     * @return
+     *      decisive if any of the conditions returned it,
+     *      otherwise !decisive, not negated
+     */
+    public boolean evaluate(boolean decisive, AbstractBuild build, Launcher launcher,
+                    BuildListener listener, EvaluationContext context) throws IOException, InterruptedException {
+        int[] current = order;
+        try {
+            for (int i : current) {
+                long start = System.nanoTime();
+                boolean result = BuildEvaluationCache.isMet(conditions[i], build, launcher, listener, context);
+                measure(i, System.nanoTime() - start, result == decisive);
+                if (result == decisive) {
+                    return decisive;
+                }
+            }
+            return !decisive;
+        } finally {
+            if (checks.incrementAndGet() % INTERVAL == 0) {
+                reorder(listener);
+            }
+        }
+    }
+
+    /**
+     * Adds a check of a condition to its averages.
+     */
+    private synchronized void measure(int i, long time, boolean decided) {
+        double d = decided ? 1 : 0;
+        if (!measured[i]) {
+            measured[i] = true;
+            nanos[i] = time;
+            decisions[i] = d;
+        } else {
+            nanos[i] += DECAY * (time - nanos[i]);
+            decisions[i] += DECAY * (d - decisions[i]);
+        }
+    }
+
+    /**
+     * Works out the order again, printing it if it changed.
+     */
+    private void reorder(BuildListener listener) {
+        int[] sorted;
+        synchronized (this) {
+            sorted = sort();
+            if (Arrays.equals(sorted, order)) {
+                return;
+            }
+            order = sorted;
+        }
+        if (listener != null) {
+            listener.getLogger().println(isConfiguredOrder(sorted)
+                    ? "Checking conditions in configured order again"
+                    : "Checking conditions in measured order: " + describe(sorted));
+        }
+    }
+
+    /**
+     * Returns the current order, as indexes into the configured conditions.
+     */
+    public int[] getOrder() {
+        return order.clone();
+    }
+
+    /**
+     * Works out the order from the measurements, keeping pinned conditions
+     * in place and sorting the runs of conditions between them. Within a run,
+     * only the measured conditions are sorted, among the places they are
+     * configured at; the others stay where they are configured.
+     */
+    private int[] sort() {
+        int size = conditions.length;
+        double[] score = new double[size];
+        for (int i = 0; i < size; i++) {
+            // average time divided by decision rate
+            score[i] = decisions[i] == 0 ? Double.MAX_VALUE : nanos[i] / decisions[i];
+        }
+        int[] sorted = new int[size];
+        int[] places = new int[size];
+        int start = 0;
+        while (start < size) {
+            if (pinned[start]) {
+                sorted[start] = start;
+                start++;
+                continue;
+            }
+            int end = start;
+            int count = 0;
+            while (end < size && !pinned[end]) {
+                sorted[end] = end;
+                if (measured[end]) {
+                    places[count++] = end;
+                }
+                end++;
+            }
+            // insertion sort of the measured conditions, stable so ties keep the configured order
+            int[] run = Arrays.copyOf(places, count);
+            for (int i = 1; i < count; i++) {
+                int v = run[i];
+                int j = i - 1;
+                while (j >= 0 && score[run[j]] > score[v]) {
+                    run[j + 1] = run[j];
+                    j--;
+                }
+                run[j + 1] = v;
+            }
+            for (int i = 0; i < count; i++) {
+                sorted[places[i]] = run[i];
+            }
+            start = end;
+        }
+        return sorted;
+    }
+
+    private static boolean isConfiguredOrder(int[] order) {
+        for (int i = 0; i < order.length; i++) {
+            if (order[i] != i) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String describe(int[] order) {
+        StringBuilder sb = new StringBuilder();
+        for (int i : order) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(i + 1);
+            CheckConditionDescriptor d = conditions[i].getDescriptor();
+            if (d != null) {
+                sb.append(" (").append(d.getDisplayName()).append(')');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns true if the condition, or any condition contained in it,
+     * is order sensitive.
+     */
+    static boolean isOrderSensitive(CheckCondition condition) {
+        List<CheckCondition> stack = new ArrayList<CheckCondition>();
+        stack.add(condition);
+        while (!stack.isEmpty()) {
+            CheckCondition c = stack.remove(stack.size() - 1);
+            if (c == null) {
+                continue;
+            }
+            CheckConditionDescriptor d = c.getDescriptor();
+            if (d != null && d.isOrderSensitive()) {
+                return true;
+            }
+            List<CheckCondition> children = ConditionMetrics.childrenOf(c);
+            if (children != null) {
+                stack.addAll(children);
+            }
+        }
+        return false;
+    }
+}
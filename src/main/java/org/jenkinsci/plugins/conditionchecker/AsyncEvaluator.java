@@ -0,0 +1,387 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import hudson.model.AbstractBuild;
+import hudson.Launcher;
+import hudson.model.BuildListener;
+import java.util.List;
+
+/**
+ * Checks the conditions of a group through {@link CheckCondition#isMetAsync},
+ * so that a condition waiting on I/O does not hold a thread.
+ *
+ * Conditions are checked one after another, starting each one when the
+ * previous one completes, or all at once for parallel groups. Either way
+ * the group completes as soon as its result is known and the conditions
+ * still running are cancelled. Results are shared through the
+ * {@link BuildEvaluationCache} and recorded in the {@link ConditionMetrics}
+ * the same way as the blocking checks.
+ *
+ * @author Chris Johnson
+ */
+public final class AsyncEvaluator {
+    private AsyncEvaluator() {
+    }
+
+    /**
+     * Checks a group of conditions.
+     *
+     * @param conditions - list of conditions to check, may be null
+     * @param decisive - result of a condition that decides the group,
+     *      false for an AND group and true for an OR group
+     * @param parallel - start all of the conditions at once
+     * @param negate - invert the result of the group
+     * @param build
+     * @param launcher
+     * @param listener
+     * @param context - state of the whole check
+     */
+    public static ConditionFuture evaluate(List<CheckCondition> conditions, boolean decisive,
+                    boolean parallel, boolean negate, AbstractBuild build, Launcher launcher,
+                    BuildListener listener, EvaluationContext context) {
+        Group group = parallel
+                ? new Race(conditions, decisive, negate, build, launcher, listener, context)
+                : new Sequence(conditions, decisive, negate, build, launcher, listener, context);
+        group.start();
+        return group.result;
+    }
+
+    /**
+     * Checks a group that is met when at least a number of its conditions are,
+     * one condition after another, stopping once the result is known.
+     *
+     * @param conditions - list of conditions to check, may be null
+     * @param threshold - number of conditions that must be met
+     * @param negate - invert the result of the group
+     * @param build
+     * @param launcher
+     * @param listener
+     * @param context - state of the whole check
+     */
+    public static ConditionFuture evaluateThreshold(List<CheckCondition> conditions, int threshold,
+                    boolean negate, AbstractBuild build, Launcher launcher,
+                    BuildListener listener, EvaluationContext context) {
+        Group group = new Threshold(conditions, threshold, negate, build, launcher, listener, context);
+        group.start();
+        return group.result;
+    }
+
+    /**
+     * Checks a single condition, taking the result from the
+     * {@link BuildEvaluationCache} if it is already known.
+     */
+    public static ConditionFuture isMet(final CheckCondition condition, AbstractBuild build,
+                    Launcher launcher, BuildListener listener, final EvaluationContext context) {
+        final long key = StructuralHash.of(condition);
+        final BuildEvaluationCache cache = key == StructuralHash.NONE
+                ? BuildEvaluationCache.peek(build) : BuildEvaluationCache.of(build);
+        if (cache != null) {
+            int cached = cache.get(condition, key);
+            if (cached != BuildEvaluationCache.UNKNOWN) {
+                context.record(condition, cached == BuildEvaluationCache.TRUE);
+                return ConditionFuture.completed(cached == BuildEvaluationCache.TRUE);
+            }
+        }
+        final long start = System.nanoTime();
+        ConditionFuture future = context.isMetAsync(condition, build, launcher, listener);
+        future.addCallback(new ConditionFuture.Callback() {
+            public void done(ConditionFuture f) {
+                if (f.isCancelled()) {
+                    return;
+                }
+                long nanos = System.nanoTime() - start;
+                if (f.isFailed()) {
+                    ConditionMetrics.record(condition, nanos, ConditionStats.EXCEPTIONS);
+                    return;
+                }
+                boolean result = f.getResult();
+                context.record(condition, result);
+                ConditionMetrics.record(condition, nanos, result ? ConditionStats.TRUE : ConditionStats.FALSE);
+                if (cache != null && key != StructuralHash.NONE) {
+                    cache.put(key, result);
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * State of one group being checked.
+     */
+    private abstract static class Group implements ConditionFuture.Callback {
+        final ConditionFuture result = new ConditionFuture();
+        final List<CheckCondition> conditions;
+        final boolean decisive;
+        final boolean negate;
+        final AbstractBuild build;
+        final Launcher launcher;
+        final BuildListener listener;
+        final EvaluationContext context;
+
+        Group(List<CheckCondition> conditions, boolean decisive, boolean negate, AbstractBuild build,
+                        Launcher launcher, BuildListener listener, EvaluationContext context) {
+            this.conditions = conditions;
+            this.decisive = decisive;
+            this.negate = negate;
+            this.build = build;
+            this.launcher = launcher;
+            this.listener = listener;
+            this.context = context;
+        }
+
+        abstract void start();
+
+        int size() {
+            return conditions == null ? 0 : conditions.size();
+        }
+
+        /**
+         * Completes the group if the condition decided it.
+         *
+         * @return true if the group is complete
+         */
+        boolean decide(ConditionFuture f) {
+            if (f.isFailed()) {
+                result.fail(f.getFailure());
+                return true;
+            }
+            if (f.getResult() == decisive) {
+                finish(decisive);
+                return true;
+            }
+            return result.isDone();
+        }
+
+        void finish(boolean value) {
+            result.complete(negate ? !value : value);
+        }
+    }
+
+    /**
+     * Starts each condition once the previous one completes.
+     */
+    private static final class Sequence extends Group {
+        private int next;
+        private volatile ConditionFuture current;
+
+        Sequence(List<CheckCondition> conditions, boolean decisive, boolean negate, AbstractBuild build,
+                        Launcher launcher, BuildListener listener, EvaluationContext context) {
+            super(conditions, decisive, negate, build, launcher, listener, context);
+        }
+
+        void start() {
+            result.addCallback(new ConditionFuture.Callback() {
+                public void done(ConditionFuture f) {
+                    ConditionFuture c = current;
+                    if (f.isCancelled() && c != null) {
+                        c.cancel(true);
+                    }
+                }
+            });
+            run();
+        }
+
+        /**
+         * Checks conditions until one has not completed yet,
+         * it carries on from its callback.
+         */
+        private void run() {
+            while (next < size()) {
+                if (result.isDone()) {
+                    return;
+                }
+                ConditionFuture f = isMet(conditions.get(next++), build, launcher, listener, context);
+                if (!f.isDone()) {
+                    current = f;
+                    f.addCallback(this);
+                    return;
+                }
+                if (decide(f)) {
+                    return;
+                }
+            }
+            finish(!decisive);
+        }
+
+        public void done(ConditionFuture f) {
+            if (!decide(f)) {
+                run();
+            }
+        }
+    }
+
+    /**
+     * Starts each condition once the previous one completes, counting the
+     * conditions met until enough are, or too few are left.
+     */
+    private static final class Threshold extends Group {
+        private final int threshold;
+        private int next;
+        private int met;
+        private volatile ConditionFuture current;
+
+        Threshold(List<CheckCondition> conditions, int threshold, boolean negate, AbstractBuild build,
+                        Launcher launcher, BuildListener listener, EvaluationContext context) {
+            super(conditions, true, negate, build, launcher, listener, context);
+            this.threshold = threshold;
+        }
+
+        void start() {
+            result.addCallback(new ConditionFuture.Callback() {
+                public void done(ConditionFuture f) {
+                    ConditionFuture c = current;
+                    if (f.isCancelled() && c != null) {
+                        c.cancel(true);
+                    }
+                }
+            });
+            run();
+        }
+
+        /**
+         * Checks conditions until the result is known or one has not
+         * completed yet, it carries on from its callback.
+         */
+        private void run() {
+            while (!result.isDone()) {
+                if (met >= threshold) {
+                    finish(true);
+                    return;
+                }
+                // the rest can not make up the difference
+                if (met + size() - next < threshold) {
+                    finish(false);
+                    return;
+                }
+                ConditionFuture f = isMet(conditions.get(next++), build, launcher, listener, context);
+                if (!f.isDone()) {
+                    current = f;
+                    f.addCallback(this);
+                    return;
+                }
+                if (!count(f)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Counts a completed condition.
+         *
+         * @return false if the group failed
+         */
+        private boolean count(ConditionFuture f) {
+            if (f.isCancelled()) {
+                return false;
+            }
+            if (f.isFailed()) {
+                result.fail(f.getFailure());
+                return false;
+            }
+            if (f.getResult()) {
+                met++;
+            }
+            return true;
+        }
+
+        public void done(ConditionFuture f) {
+            if (count(f)) {
+                run();
+            }
+        }
+    }
+
+    /**
+     * Starts every condition at once on the {@link ParallelEvaluator} pool,
+     * so that blocking conditions are also checked at the same time.
+     *
+     * The group is decided in the configured order, as a sequence would
+     * decide it: a condition only decides it, by its result or its failure,
+     * once every condition before it has completed without deciding it.
+     */
+    private static final class Race extends Group {
+        private ConditionFuture[] children;
+        /**
+         * index of the first condition that has not been looked at,
+         * guarded by this
+         */
+        private int settled;
+
+        Race(List<CheckCondition> conditions, boolean decisive, boolean negate, AbstractBuild build,
+                        Launcher launcher, BuildListener listener, EvaluationContext context) {
+            super(conditions, decisive, negate, build, launcher, listener, context);
+        }
+
+        void start() {
+            int size = size();
+            if (size == 0) {
+                finish(!decisive);
+                return;
+            }
+            final ConditionFuture[] children = new ConditionFuture[size];
+            for (int i = 0; i < size; i++) {
+                children[i] = new ConditionFuture();
+            }
+            synchronized (this) {
+                this.children = children;
+            }
+            result.addCallback(new ConditionFuture.Callback() {
+                public void done(ConditionFuture f) {
+                    for (ConditionFuture child : children) {
+                        child.cancel(true);
+                    }
+                }
+            });
+            for (int i = 0; i < size; i++) {
+                final CheckCondition condition = conditions.get(i);
+                final ConditionFuture child = children[i];
+                child.addCallback(this);
+                ParallelEvaluator.execute(new Runnable() {
+                    public void run() {
+                        if (!child.isDone()) {
+                            child.follow(isMet(condition, build, launcher, listener, context));
+                        }
+                    }
+                });
+            }
+        }
+
+        /**
+         * Looks at the completed conditions in order, up to the first one
+         * still running.
+         */
+        public synchronized void done(ConditionFuture f) {
+            while (!result.isDone() && settled < children.length && children[settled].isDone()) {
+                ConditionFuture c = children[settled];
+                if (c.isCancelled() || decide(c)) {
+                    return;
+                }
+                settled++;
+            }
+            if (settled == children.length) {
+                finish(!decisive);
+            }
+        }
+    }
+}
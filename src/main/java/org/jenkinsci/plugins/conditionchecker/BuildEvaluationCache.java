@@ -0,0 +1,281 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import hudson.Extension;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Results of the conditions checked for a build, shared by every
+ * {@link ConditionChecker} in that build.
+ *
+ * Results are keyed by the {@link StructuralHash} of the condition,
+ * so equal conditions configured in different publishers are only checked once.
+ * Conditions that can not be cached but were checked early, see
+ * {@link EarlyEvaluation}, are kept by the condition itself instead.
+ * The cache is dropped when the build completes.
+ *
+ * @author Chris Johnson
+ */
+public final class BuildEvaluationCache {
+    /**
+     * Value returned by {@link #get(long)} when there is no result
+     */
+    public static final int UNKNOWN = 0;
+    public static final int FALSE = 1;
+    public static final int TRUE = 2;
+
+    /**
+     * caches of the running builds, split by build so concurrent builds
+     * rarely wait for each other to find their cache
+     */
+    private static final Map<AbstractBuild, BuildEvaluationCache>[] CACHES = createCaches(64);
+
+    /**
+     * open addressing table, a key of 0 marks an empty slot
+     */
+    private long[] keys = new long[64];
+    private byte[] values = new byte[64];
+    private int size;
+    /**
+     * results checked early of conditions that can not be cached, guarded by this
+     */
+    private Map<CheckCondition, Boolean> early;
+
+    /**
+     * Returns the cache of a build, creating it if needed.
+     *
+     * @return the cache, or null if there is no build
+     */
+    public static BuildEvaluationCache of(AbstractBuild build) {
+        if (build == null) {
+            return null;
+        }
+        Map<AbstractBuild, BuildEvaluationCache> caches = cachesOf(build);
+        synchronized (caches) {
+            BuildEvaluationCache cache = caches.get(build);
+            if (cache == null) {
+                cache = new BuildEvaluationCache();
+                caches.put(build, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Returns the cache of a build without creating it.
+     *
+     * @return the cache, or null if there is none
+     */
+    static BuildEvaluationCache peek(AbstractBuild build) {
+        return build == null ? null : cachesOf(build).get(build);
+    }
+
+    /**
+     * Drops the cache of a build.
+     */
+    public static void remove(AbstractBuild build) {
+        cachesOf(build).remove(build);
+    }
+
+    private static Map<AbstractBuild, BuildEvaluationCache> cachesOf(AbstractBuild build) {
+        int h = System.identityHashCode(build);
+        return CACHES[(h ^ (h >>> 16)) & (CACHES.length - 1)];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<AbstractBuild, BuildEvaluationCache>[] createCaches(int stripes) {
+        Map<AbstractBuild, BuildEvaluationCache>[] caches = new Map[stripes];
+        for (int i = 0; i < stripes; i++) {
+            caches[i] = Collections.synchronizedMap(new WeakHashMap<AbstractBuild, BuildEvaluationCache>());
+        }
+        return caches;
+    }
+
+    /**
+     * Checks a single condition, using the cached result if there is one.
+     *
+     * @param condition
+     * @param build
+     * @param launcher
+     * @param listener
+     * @param context - state of the whole check
+     *
+     * @return
+     *      true if the condition is met,
+     *      false if condition is not met
+     */
+    public static boolean isMet(CheckCondition condition, AbstractBuild build, Launcher launcher,
+                    BuildListener listener, EvaluationContext context) throws IOException, InterruptedException {
+        long key = StructuralHash.of(condition);
+        BuildEvaluationCache cache = key == StructuralHash.NONE ? peek(build) : of(build);
+        int cached = cache == null ? UNKNOWN : cache.get(condition, key);
+        boolean result;
+        if (cached != UNKNOWN) {
+            result = cached == TRUE;
+        } else {
+            result = ConditionMetrics.isMet(condition, build, launcher, listener, context);
+            if (cache != null && key != StructuralHash.NONE) {
+                cache.put(key, result);
+            }
+        }
+        context.record(condition, result);
+        return result;
+    }
+
+    /**
+     * Checks a condition ahead of the {@link ConditionChecker}, keeping the result
+     * for it even if the condition can not be cached.
+     */
+    static boolean isMetEarly(CheckCondition condition, AbstractBuild build, Launcher launcher,
+                    BuildListener listener, EvaluationContext context) throws IOException, InterruptedException {
+        if (StructuralHash.of(condition) != StructuralHash.NONE) {
+            return isMet(condition, build, launcher, listener, context);
+        }
+        boolean result = ConditionMetrics.isMet(condition, build, launcher, listener, context);
+        BuildEvaluationCache cache = of(build);
+        if (cache != null) {
+            synchronized (cache) {
+                if (cache.early == null) {
+                    cache.early = new IdentityHashMap<CheckCondition, Boolean>();
+                }
+                cache.early.put(condition, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the result of a condition, cached or checked early.
+     *
+     * @param condition - the condition
+     * @param key - its structural hash
+     * @return {@link #TRUE}, {@link #FALSE} or {@link #UNKNOWN}
+     */
+    public int get(CheckCondition condition, long key) {
+        if (key != StructuralHash.NONE) {
+            return get(key);
+        }
+        Boolean result;
+        synchronized (this) {
+            result = early == null ? null : early.get(condition);
+        }
+        return result == null ? UNKNOWN : result ? TRUE : FALSE;
+    }
+
+    /**
+     * Returns the cached result.
+     *
+     * @param key - structural hash of the condition
+     * @return {@link #TRUE}, {@link #FALSE} or {@link #UNKNOWN}
+     */
+    public synchronized int get(long key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key) & mask; ; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+            if (keys[i] == 0) {
+                return UNKNOWN;
+            }
+        }
+    }
+
+    /**
+     * Stores a result.
+     *
+     * @param key - structural hash of the condition, not {@link StructuralHash#NONE}
+     * @param result
+     */
+    public synchronized void put(long key, boolean result) {
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+        }
+        if (insert(keys, values, key, (byte) (result ? TRUE : FALSE))) {
+            size++;
+        }
+    }
+
+    private void grow() {
+        long[] k = new long[keys.length * 2];
+        byte[] v = new byte[values.length * 2];
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                insert(k, v, keys[i], values[i]);
+            }
+        }
+        keys = k;
+        values = v;
+    }
+
+    /**
+     * @return true if the key was not in the table yet
+     */
+    private static boolean insert(long[] keys, byte[] values, long key, byte value) {
+        int mask = keys.length - 1;
+        for (int i = slot(key) & mask; ; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return false;
+            }
+            if (keys[i] == 0) {
+                keys[i] = key;
+                values[i] = value;
+                return true;
+            }
+        }
+    }
+
+    private static int slot(long key) {
+        return (int) (key ^ (key >>> 32));
+    }
+
+    /**
+     * Drops the cache when the build completes.
+     */
+    @Extension
+    public static final class BuildCompletedListener extends RunListener<AbstractBuild> {
+        public BuildCompletedListener() {
+            super(AbstractBuild.class);
+        }
+
+        @Override
+        public void onCompleted(AbstractBuild build, TaskListener listener) {
+            remove(build);
+        }
+
+        @Override
+        public void onDeleted(AbstractBuild build) {
+            remove(build);
+        }
+    }
+}
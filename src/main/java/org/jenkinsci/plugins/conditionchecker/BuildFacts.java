@@ -0,0 +1,136 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import hudson.EnvVars;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.Result;
+import hudson.scm.ChangeLogSet;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Facts about a build that many conditions need, worked out the first time
+ * a condition asks for them and then shared by every condition of the same
+ * check, see {@link EvaluationContext#facts}.
+ *
+ * Safe to use from the threads of a parallel check, a fact is only worked
+ * out once even when asked for at the same time. A fact that throws is
+ * worked out again the next time it is asked for.
+ *
+ * @author Chris Johnson
+ */
+public final class BuildFacts {
+    private final AbstractBuild build;
+    private final BuildListener listener;
+
+    private final Fact<EnvVars> environment = new Fact<EnvVars>() {
+        @Override
+        EnvVars compute() throws IOException, InterruptedException {
+            return build.getEnvironment(listener);
+        }
+    };
+    private final Fact<ChangeLogSet<? extends ChangeLogSet.Entry>> changeSet =
+            new Fact<ChangeLogSet<? extends ChangeLogSet.Entry>>() {
+        @Override
+        ChangeLogSet<? extends ChangeLogSet.Entry> compute() {
+            return build.getChangeSet();
+        }
+    };
+    private final Fact<Result> result = new Fact<Result>() {
+        @Override
+        Result compute() {
+            return build.getResult();
+        }
+    };
+    private final Fact<Map<String, String>> parameters = new Fact<Map<String, String>>() {
+        @Override
+        @SuppressWarnings("unchecked")
+        Map<String, String> compute() {
+            Map<String, String> variables = build.getBuildVariables();
+            return variables == null ? Collections.<String, String>emptyMap()
+                    : Collections.unmodifiableMap(new HashMap<String, String>(variables));
+        }
+    };
+
+    BuildFacts(AbstractBuild build, BuildListener listener) {
+        this.build = build;
+        this.listener = listener;
+    }
+
+    /**
+     * Returns the build the facts are about.
+     */
+    public AbstractBuild getBuild() {
+        return build;
+    }
+
+    /**
+     * Returns the environment of the build, conditions must not modify it.
+     */
+    public EnvVars getEnvironment() throws IOException, InterruptedException {
+        return environment.get();
+    }
+
+    /**
+     * Returns the SCM changes of the build.
+     */
+    public ChangeLogSet<? extends ChangeLogSet.Entry> getChangeSet() throws IOException, InterruptedException {
+        return changeSet.get();
+    }
+
+    /**
+     * Returns the result of the build so far, null while it is still running without one.
+     */
+    public Result getResult() throws IOException, InterruptedException {
+        return result.get();
+    }
+
+    /**
+     * Returns the parameters and other build variables.
+     */
+    public Map<String, String> getParameters() throws IOException, InterruptedException {
+        return parameters.get();
+    }
+
+    /**
+     * A fact worked out on first use.
+     */
+    private abstract static class Fact<T> {
+        private T value;
+        private boolean known;
+
+        synchronized T get() throws IOException, InterruptedException {
+            if (!known) {
+                value = compute();
+                known = true;
+            }
+            return value;
+        }
+
+        abstract T compute() throws IOException, InterruptedException;
+    }
+}
@@ -0,0 +1,193 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import hudson.Extension;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.Action;
+import hudson.model.Hudson;
+import hudson.model.Item;
+import hudson.model.StreamBuildListener;
+import hudson.model.TransientProjectActionFactory;
+import hudson.util.NullStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import javax.servlet.http.HttpServletResponse;
+
+import net.sf.json.JSONObject;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Lists which builds of a job match the conditions of its {@link ConditionChecker}
+ * at <tt>/job/NAME/condition-history/</tt>, newest first.
+ *
+ * The parameters are <tt>checker</tt>, the index of the checker in the job (default 0),
+ * <tt>from</tt>, the build number to start from (default the last build),
+ * <tt>limit</tt>, the number of builds to check (default 100, at most 1000),
+ * and <tt>matching</tt>, true to only list the builds that match.
+ * The builds are written as they are checked, and the result ends with
+ * <tt>next</tt>, the build number to start from for the next page.
+ *
+ * Checking the conditions needs a POST and the extended read permission of
+ * the job, which configuring it implies. Only checkers made entirely of
+ * conditions whose results can be cached, see
+ * {@link CheckConditionDescriptor#isCacheable()}, can be checked, as the others
+ * may read or change the workspace or other state of the running job.
+ *
+ * @author Chris Johnson
+ */
+public class BuildHistoryAction implements Action {
+    static final int DEFAULT_LIMIT = 100;
+    static final int MAX_LIMIT = 1000;
+
+    private final AbstractProject<?,?> project;
+
+    public BuildHistoryAction(AbstractProject<?,?> project) {
+        this.project = project;
+    }
+
+    public String getIconFileName() {
+        // not shown in the side panel
+        return null;
+    }
+
+    public String getDisplayName() {
+        return "Condition history";
+    }
+
+    public String getUrlName() {
+        return "condition-history";
+    }
+
+    /**
+     * Writes the builds checked as JSON.
+     */
+    public void doIndex(StaplerRequest req, StaplerResponse rsp) throws IOException, InterruptedException {
+        project.checkPermission(Item.EXTENDED_READ);
+        if (!"POST".equals(req.getMethod())) {
+            rsp.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED, "POST required");
+            return;
+        }
+
+        List<ConditionChecker> checkers = project.getPublishersList().getAll(ConditionChecker.class);
+        int index = parseInt(req.getParameter("checker"), 0);
+        if (index < 0 || index >= checkers.size()) {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND, "No such condition checker");
+            return;
+        }
+        if (!isSideEffectFree(checkers.get(index).getSnapshot())) {
+            rsp.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                    "The conditions of this checker cannot be checked against past builds");
+            return;
+        }
+        int limit = Math.max(1, Math.min(MAX_LIMIT, parseInt(req.getParameter("limit"), DEFAULT_LIMIT)));
+        final boolean matching = Boolean.parseBoolean(req.getParameter("matching"));
+        String from = req.getParameter("from");
+        AbstractBuild start = from == null
+                ? (AbstractBuild) project.getLastBuild()
+                : (AbstractBuild) project.getNearestOldBuild(parseInt(from, 0));
+
+        StreamBuildListener listener = new StreamBuildListener(new NullStream());
+        BuildHistoryQuery query = new BuildHistoryQuery(checkers.get(index),
+                Hudson.getInstance().createLauncher(listener), listener);
+
+        rsp.setContentType("application/json;charset=UTF-8");
+        final PrintWriter out = rsp.getWriter();
+        out.print("{\"builds\":[");
+        AbstractBuild next = query.run(start, limit, new BuildHistoryQuery.Callback() {
+            private boolean first = true;
+
+            public boolean matched(AbstractBuild build, boolean result) {
+                if (matching && !result) {
+                    return true;
+                }
+                if (!first) {
+                    out.print(',');
+                }
+                first = false;
+                out.print(new JSONObject()
+                        .element("number", build.getNumber())
+                        .element("result", result)
+                        .toString());
+                out.flush();
+                return true;
+            }
+        });
+        out.print("],\"next\":");
+        out.print(next == null ? "null" : String.valueOf(next.getNumber()));
+        out.print('}');
+        out.flush();
+    }
+
+    /**
+     * Returns true if every condition, and every condition of the groups,
+     * is either a group or has a cacheable result.
+     */
+    static boolean isSideEffectFree(List<CheckCondition> conditions) {
+        for (CheckCondition c : conditions) {
+            List<CheckCondition> children = ConditionMetrics.childrenOf(c);
+            if (children != null) {
+                if (!isSideEffectFree(children)) {
+                    return false;
+                }
+                continue;
+            }
+            CheckConditionDescriptor d = c.getDescriptor();
+            if (d == null || !d.isCacheable()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Adds the action to jobs with a {@link ConditionChecker}.
+     */
+    @Extension
+    public static class Factory extends TransientProjectActionFactory {
+        @Override
+        public Collection<? extends Action> createFor(AbstractProject target) {
+            if (target.getPublishersList().get(ConditionChecker.class) == null) {
+                return Collections.emptyList();
+            }
+            return Collections.singletonList(new BuildHistoryAction(target));
+        }
+    }
+}
@@ -0,0 +1,635 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import hudson.Extension;
+import hudson.model.AbstractBuild;
+import hudson.model.Job;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Result, start time and duration of the completed builds of a job, kept in
+ * arrays of primitives so that conditions on the history of a job can be
+ * checked without loading any builds.
+ *
+ * The index is updated as builds complete or are deleted, and is kept in
+ * <tt>condition-history.bin</tt> in the job's directory: a snapshot of the
+ * builds followed by a log of the builds added and removed since, which is
+ * folded into a new snapshot once it is as long as the snapshot. It is only
+ * built from all the builds the first time it is used; when loaded, builds
+ * deleted while Jenkins was not running are dropped and only the builds
+ * completed since it was saved are read. A file that can not be read is
+ * rebuilt. Alongside each build it keeps the sum of the durations so far
+ * and, for each result, the latest build at least that good, so every query
+ * is a binary search for the build followed by constant work.
+ *
+ * @author Chris Johnson
+ */
+public final class BuildHistoryIndex {
+    private static final Logger LOGGER = Logger.getLogger(BuildHistoryIndex.class.getName());
+
+    static final String FILE_NAME = "condition-history.bin";
+
+    private static final int MAGIC = 0x43434832; // "CCH2"
+
+    /**
+     * Size of a build in the file
+     */
+    private static final int RECORD_SIZE = 4 + 1 + 8 + 8;
+
+    private static final byte ADDED = 1;
+    private static final byte REMOVED = 2;
+
+    /**
+     * Number of changes always allowed in the log before it is folded into the snapshot
+     */
+    private static final int MIN_LOGGED = 64;
+
+    /**
+     * Number of results tracked by {@link #lastAtLeast}, the last result
+     * ({@link Result#ABORTED}) is at least as good as every build
+     */
+    private static final int LEVELS = 4;
+
+    /**
+     * Index of each job, loaded outside of the lock on this map so that
+     * a job being loaded does not hold up the others
+     */
+    private static final Map<Job, BuildHistoryIndex> INDEXES = new WeakHashMap<Job, BuildHistoryIndex>();
+
+    /**
+     * true once loaded or built, guarded by this
+     */
+    private volatile boolean loaded;
+    /**
+     * true once loading has been started in the background, guarded by this
+     */
+    private boolean loading;
+    /**
+     * number of changes in the log after the snapshot
+     */
+    private int logged;
+    private int size;
+    private int[] numbers = new int[16];
+    private byte[] results = new byte[16];
+    private long[] timestamps = new long[16];
+    private long[] durations = new long[16];
+    /**
+     * sum of the durations of the builds up to and including each build
+     */
+    private long[] durationSums = new long[16];
+    /**
+     * for each result, the position of the latest build at least that good
+     * up to and including each build, -1 if there is none
+     */
+    private final int[][] lastAtLeast = new int[LEVELS][16];
+
+    private BuildHistoryIndex() {
+    }
+
+    /**
+     * Returns the index of a job, loading or building it on first use.
+     */
+    public static BuildHistoryIndex of(Job<?,?> job) {
+        BuildHistoryIndex index = slotOf(job);
+        index.ensureLoaded(job);
+        return index;
+    }
+
+    /**
+     * Returns the index of a job if it is already loaded.
+     */
+    public static BuildHistoryIndex peek(Job<?,?> job) {
+        BuildHistoryIndex index;
+        synchronized (INDEXES) {
+            index = INDEXES.get(job);
+        }
+        return index != null && index.loaded ? index : null;
+    }
+
+    /**
+     * Starts loading the index of a job in the background, if it is not loaded yet.
+     */
+    public static void loadLater(final Job<?,?> job) {
+        final BuildHistoryIndex index = slotOf(job);
+        synchronized (index) {
+            if (index.loaded || index.loading) {
+                return;
+            }
+            index.loading = true;
+        }
+        ParallelEvaluator.execute(new Runnable() {
+            public void run() {
+                index.ensureLoaded(job);
+            }
+        });
+    }
+
+    /**
+     * Returns the index of a job, which may not be loaded yet.
+     */
+    private static BuildHistoryIndex slotOf(Job<?,?> job) {
+        synchronized (INDEXES) {
+            BuildHistoryIndex index = INDEXES.get(job);
+            if (index == null) {
+                index = new BuildHistoryIndex();
+                INDEXES.put(job, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Returns the file of the index, looked up each time as the job may have been renamed.
+     */
+    private static File fileOf(Job<?,?> job) {
+        return new File(job.getRootDir(), FILE_NAME);
+    }
+
+    private synchronized void ensureLoaded(Job<?,?> job) {
+        if (loaded) {
+            return;
+        }
+        try {
+            load(job);
+            loaded = true;
+        } finally {
+            loading = false;
+        }
+    }
+
+    private void load(Job<?,?> job) {
+        File file = fileOf(job);
+        try {
+            if (file.exists()) {
+                read(file);
+                boolean changed = prune(job);
+                if (catchUp(job) || changed) {
+                    save(job);
+                }
+                return;
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Could not read the condition history " + file + ", rebuilding it", e);
+        }
+        rebuild(job);
+    }
+
+    /**
+     * Drops the builds deleted while the index was not kept up to date.
+     * The builds directory is listed once, as it has an entry named by the
+     * number of each build, and only builds missing from it are looked up.
+     *
+     * @return true if any build was dropped
+     */
+    private boolean prune(Job<?,?> job) {
+        BitSet listed = new BitSet();
+        File dir = job.getBuildDir();
+        String[] names = dir == null ? null : dir.list();
+        if (names != null) {
+            for (String name : names) {
+                int number = numberOf(name);
+                if (number > 0) {
+                    listed.set(number);
+                }
+            }
+        }
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            int number = numbers[i];
+            if (listed.get(number) || job.getBuildByNumber(number) != null) {
+                if (kept != i) {
+                    shift(i, kept, 1);
+                }
+                kept++;
+            }
+        }
+        if (kept == size) {
+            return false;
+        }
+        size = kept;
+        update(0);
+        return true;
+    }
+
+    /**
+     * Returns the number a name is made of, or -1 if it is not a number.
+     */
+    private static int numberOf(String name) {
+        if (name.length() == 0 || name.length() > 9) {
+            return -1;
+        }
+        int number = 0;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            number = number * 10 + (c - '0');
+        }
+        return number;
+    }
+
+    /**
+     * Adds the builds completed since the index was saved, walking back
+     * from the last completed build so only those builds are loaded.
+     *
+     * @return true if any build was added
+     */
+    private boolean catchUp(Job<?,?> job) {
+        int indexed = size == 0 ? 0 : numbers[size - 1];
+        boolean changed = false;
+        for (Run<?,?> run = job.getLastCompletedBuild(); run != null && run.getNumber() > indexed;
+                run = run.getPreviousBuild()) {
+            if (!run.isBuilding()) {
+                insert(run);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Builds the index from the builds of the job.
+     */
+    private void rebuild(Job<?,?> job) {
+        size = 0;
+        List<Run> runs = new ArrayList<Run>();
+        for (Run run : job.getBuilds()) {
+            if (!run.isBuilding()) {
+                runs.add(run);
+            }
+        }
+        Collections.sort(runs, new Comparator<Run>() {
+            public int compare(Run a, Run b) {
+                return a.getNumber() < b.getNumber() ? -1 : a.getNumber() == b.getNumber() ? 0 : 1;
+            }
+        });
+        for (Run run : runs) {
+            ensureCapacity(size + 1);
+            set(size++, run.getNumber(), codeOf(run.getResult()), run.getTimeInMillis(), run.getDuration());
+        }
+        update(0);
+        save(job);
+    }
+
+    /**
+     * Adds a completed build, or updates it if it is already in the index.
+     */
+    public synchronized void add(Run<?,?> run) {
+        insert(run);
+        int at = positionOf(run.getNumber());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 + RECORD_SIZE);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(ADDED);
+            writeRecord(out, at);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        append(run.getParent(), bytes.toByteArray());
+    }
+
+    private void insert(Run<?,?> run) {
+        int number = run.getNumber();
+        int at = positionOf(number);
+        if (at >= size || numbers[at] != number) {
+            ensureCapacity(size + 1);
+            shift(at, at + 1, size - at);
+            size++;
+        }
+        set(at, number, codeOf(run.getResult()), run.getTimeInMillis(), run.getDuration());
+        update(at);
+    }
+
+    /**
+     * Removes a deleted build.
+     */
+    public synchronized void remove(Run<?,?> run) {
+        int number = run.getNumber();
+        int at = positionOf(number);
+        if (at >= size || numbers[at] != number) {
+            return;
+        }
+        shift(at + 1, at, size - at - 1);
+        size--;
+        update(at);
+        append(run.getParent(), new byte[] {
+                REMOVED, (byte) (number >>> 24), (byte) (number >>> 16), (byte) (number >>> 8), (byte) number });
+    }
+
+    /**
+     * Returns the number of builds in the index.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of builds before a build that were worse than
+     * a result, counting back until one at least that good.
+     *
+     * @param before - number of the build, only builds before it are counted
+     * @param result - the result
+     * @param limit - stop counting at this number of builds
+     */
+    public synchronized int countWorseThan(int before, Result result, int limit) {
+        int end = positionOf(before);
+        int level = codeOf(result);
+        if (level >= LEVELS) {
+            return 0;
+        }
+        int last = end == 0 ? -1 : lastAtLeast[level][end - 1];
+        return Math.min(limit, end - 1 - last);
+    }
+
+    /**
+     * Returns the start time of the latest build before a build that was
+     * at least as good as a result.
+     *
+     * @param before - number of the build, only builds before it are considered
+     * @param result - the result
+     *
+     * @return the time in milliseconds, or -1 if there is no such build
+     */
+    public synchronized long lastAtLeast(int before, Result result) {
+        int end = positionOf(before);
+        if (end == 0) {
+            return -1;
+        }
+        int level = codeOf(result);
+        int last = level >= LEVELS ? end - 1 : lastAtLeast[level][end - 1];
+        return last < 0 ? -1 : timestamps[last];
+    }
+
+    /**
+     * Returns the average duration of the builds before a build.
+     *
+     * @param before - number of the build, only builds before it are considered
+     * @param count - number of builds to average
+     *
+     * @return the duration in milliseconds, or -1 if there are no builds
+     */
+    public synchronized long averageDuration(int before, int count) {
+        int end = positionOf(before);
+        int start = Math.max(0, end - Math.max(1, count));
+        if (end == start) {
+            return -1;
+        }
+        long sum = durationSums[end - 1] - (start == 0 ? 0 : durationSums[start - 1]);
+        return sum / (end - start);
+    }
+
+    /**
+     * Returns the position of the first build with at least a number.
+     */
+    private int positionOf(int number) {
+        if (size > 0 && number > numbers[size - 1]) {
+            return size;
+        }
+        int at = Arrays.binarySearch(numbers, 0, size, number);
+        return at < 0 ? -at - 1 : at;
+    }
+
+    private void set(int at, int number, byte result, long timestamp, long duration) {
+        numbers[at] = number;
+        results[at] = result;
+        timestamps[at] = timestamp;
+        durations[at] = duration;
+    }
+
+    private void shift(int from, int to, int length) {
+        System.arraycopy(numbers, from, numbers, to, length);
+        System.arraycopy(results, from, results, to, length);
+        System.arraycopy(timestamps, from, timestamps, to, length);
+        System.arraycopy(durations, from, durations, to, length);
+    }
+
+    /**
+     * Works out the sums and latest results from a position on.
+     */
+    private void update(int from) {
+        for (int i = from; i < size; i++) {
+            durationSums[i] = (i == 0 ? 0 : durationSums[i - 1]) + durations[i];
+            for (int level = 0; level < LEVELS; level++) {
+                lastAtLeast[level][i] = results[i] <= level ? i : i == 0 ? -1 : lastAtLeast[level][i - 1];
+            }
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= numbers.length) {
+            return;
+        }
+        int n = Math.max(capacity, numbers.length * 2);
+        numbers = Arrays.copyOf(numbers, n);
+        results = Arrays.copyOf(results, n);
+        timestamps = Arrays.copyOf(timestamps, n);
+        durations = Arrays.copyOf(durations, n);
+        durationSums = Arrays.copyOf(durationSums, n);
+        for (int level = 0; level < LEVELS; level++) {
+            lastAtLeast[level] = Arrays.copyOf(lastAtLeast[level], n);
+        }
+    }
+
+    /**
+     * Returns the code of a result, ordered from best to worst.
+     */
+    private static byte codeOf(Result result) {
+        return (byte) (result == null ? Result.ABORTED.ordinal : result.ordinal);
+    }
+
+    /**
+     * Reads the snapshot and replays the log after it.
+     */
+    private void read(File file) throws IOException {
+        long length = file.length();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a condition history: " + file);
+            }
+            int n = in.readInt();
+            if (n < 0 || 8 + (long) n * RECORD_SIZE > length) {
+                throw new IOException("Condition history " + file + " is cut short, " + n + " builds expected");
+            }
+            size = 0;
+            ensureCapacity(n);
+            for (int i = 0; i < n; i++) {
+                int number = in.readInt();
+                if (i > 0 && number <= numbers[i - 1]) {
+                    throw new IOException("Builds out of order in condition history " + file);
+                }
+                set(i, number, in.readByte(), in.readLong(), in.readLong());
+            }
+            size = n;
+            logged = 0;
+            for (int op = in.read(); op >= 0; op = in.read()) {
+                int number = in.readInt();
+                int at = positionOf(number);
+                boolean found = at < size && numbers[at] == number;
+                if (op == ADDED) {
+                    if (!found) {
+                        ensureCapacity(size + 1);
+                        shift(at, at + 1, size - at);
+                        size++;
+                    }
+                    set(at, number, in.readByte(), in.readLong(), in.readLong());
+                } else if (op == REMOVED) {
+                    if (found) {
+                        shift(at + 1, at, size - at - 1);
+                        size--;
+                    }
+                } else {
+                    throw new IOException("Unknown change " + op + " in condition history " + file);
+                }
+                logged++;
+            }
+            update(0);
+        } finally {
+            in.close();
+        }
+    }
+
+    private void writeRecord(DataOutputStream out, int at) throws IOException {
+        out.writeInt(numbers[at]);
+        out.writeByte(results[at]);
+        out.writeLong(timestamps[at]);
+        out.writeLong(durations[at]);
+    }
+
+    /**
+     * Appends a change to the log of the index, writing a new snapshot
+     * instead once the log is as long as the snapshot, logging any failure
+     * as the index can be rebuilt.
+     */
+    private void append(Job<?,?> job, byte[] change) {
+        File file = fileOf(job);
+        if (logged >= Math.max(MIN_LOGGED, size) || !file.exists()) {
+            save(job);
+            return;
+        }
+        try {
+            OutputStream out = new FileOutputStream(file, true);
+            try {
+                out.write(change);
+            } finally {
+                out.close();
+            }
+            logged++;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not save the condition history to " + file, e);
+        }
+    }
+
+    /**
+     * Writes a snapshot of the index with an empty log, logging any
+     * failure as the index can be rebuilt.
+     */
+    private void save(Job<?,?> job) {
+        File file = fileOf(job);
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(size);
+                for (int i = 0; i < size; i++) {
+                    writeRecord(out, i);
+                }
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(file) && (!file.delete() || !tmp.renameTo(file))) {
+                throw new IOException("Could not rename " + tmp);
+            }
+            logged = 0;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not save the condition history to " + file, e);
+        }
+    }
+
+    /**
+     * Keeps the indexes up to date, for the jobs that use one.
+     */
+    @Extension
+    public static final class Listener extends RunListener<AbstractBuild> {
+        public Listener() {
+            super(AbstractBuild.class);
+        }
+
+        @Override
+        public void onCompleted(AbstractBuild build, TaskListener listener) {
+            BuildHistoryIndex index = indexOf(build);
+            if (index != null) {
+                index.add(build);
+            }
+        }
+
+        @Override
+        public void onDeleted(AbstractBuild build) {
+            BuildHistoryIndex index = indexOf(build);
+            if (index != null) {
+                index.remove(build);
+            }
+        }
+
+        /**
+         * Returns the index of the job of a build if it has one, without creating it.
+         */
+        private static BuildHistoryIndex indexOf(AbstractBuild build) {
+            Job<?,?> job = build.getProject();
+            if (job == null) {
+                return null;
+            }
+            BuildHistoryIndex index = peek(job);
+            if (index == null && fileOf(job).exists()) {
+                index = of(job);
+            }
+            return index;
+        }
+    }
+}
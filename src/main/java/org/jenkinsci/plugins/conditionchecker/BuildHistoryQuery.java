@@ -0,0 +1,122 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import hudson.model.AbstractBuild;
+import hudson.Launcher;
+import hudson.model.BuildListener;
+import java.io.IOException;
+
+/**
+ * Checks the conditions of one {@link ConditionChecker} against many builds,
+ * for finding which past builds of a job match a configuration.
+ *
+ * The conditions are compiled once and the conditions that do not depend on
+ * the build are only checked once. Builds are walked from newest to oldest
+ * through {@link AbstractBuild#getPreviousBuild()} and nothing is kept for
+ * a build once it has been checked, so memory use does not grow with the
+ * length of the history.
+ *
+ * @author Chris Johnson
+ */
+public final class BuildHistoryQuery {
+    /**
+     * Receives the result for each build checked.
+     */
+    public interface Callback {
+        /**
+         * @param build - the build checked
+         * @param result - true if the conditions are met
+         * @return false to stop the query
+         */
+        boolean matched(AbstractBuild build, boolean result) throws IOException;
+    }
+
+    private final ConditionChecker checker;
+    private final Launcher launcher;
+    private final BuildListener listener;
+    /**
+     * program of the checker with the build independent conditions folded,
+     * null until the first build is checked
+     */
+    private ConditionProgram program;
+
+    /**
+     * @param checker - conditions to check
+     * @param launcher - launcher passed to the conditions
+     * @param listener - listener passed to the conditions
+     */
+    public BuildHistoryQuery(ConditionChecker checker, Launcher launcher, BuildListener listener) {
+        this.checker = checker;
+        this.launcher = launcher;
+        this.listener = listener;
+    }
+
+    /**
+     * Checks the conditions against a single build.
+     *
+     * @return
+     *      true if the conditions are met,
+     *      false if they are not
+     */
+    public boolean isMet(AbstractBuild build) throws IOException, InterruptedException {
+        try {
+            EvaluationContext context = checker.createContext();
+            if (program == null) {
+                program = checker.getProgram().fold(build, launcher, listener, context);
+            }
+            return checker.isMet(program, build, launcher, listener, context);
+        } finally {
+            if (!build.isBuilding()) {
+                // nothing else will check this build, do not keep the results
+                BuildEvaluationCache.remove(build);
+            }
+        }
+    }
+
+    /**
+     * Checks the conditions against a build and the builds before it.
+     *
+     * @param from - newest build to check
+     * @param limit - maximum number of builds to check
+     * @param callback - receives the result of each build
+     *
+     * @return the next build to check to carry on, or null if all builds were checked
+     */
+    public AbstractBuild run(AbstractBuild from, int limit, Callback callback)
+                    throws IOException, InterruptedException {
+        AbstractBuild build = from;
+        for (int i = 0; build != null && i < limit; i++) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            boolean result = isMet(build);
+            AbstractBuild previous = (AbstractBuild) build.getPreviousBuild();
+            if (!callback.matched(build, result)) {
+                return previous;
+            }
+            build = previous;
+        }
+        return build;
+    }
+}
@@ -33,7 +33,6 @@ import hudson.model.Hudson;
 import hudson.model.BuildListener;
 import java.io.IOException;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -44,6 +43,16 @@ import java.util.List;
  * @author Chris Johnson
  */
 public abstract class CheckCondition implements ExtensionPoint, Describable<CheckCondition> {
+    /**
+     * Cached {@link StructuralHash} of this condition, not persisted
+     */
+    transient volatile long structuralHash;
+    transient volatile boolean structuralHashed;
+    /**
+     * {@link ConditionMetrics} of this condition, not persisted
+     */
+    transient volatile ConditionStats stats;
+
     /**
      * Checks if the check criteria is met.
      *
@@ -58,8 +67,71 @@ public abstract class CheckCondition implements ExtensionPoint, Describable<Chec
     public abstract boolean isMet(AbstractBuild build, Launcher launcher, BuildListener listener)
             throws IOException, InterruptedException ;
 
+    /**
+     * Checks if the check criteria is met, as part of a larger check.
+     * Conditions that contain other conditions override this to pass
+     * the context on, others can leave it alone, or override it to read
+     * facts of the build shared with the other conditions through
+     * {@link EvaluationContext#facts}.
+     *
+     * @param build
+     * @param launcher
+     * @param listener
+     * @param context - state of the whole check, such as time limits
+     *
+     * @return
+     *      true if the condition is met,
+     *      false if condition is not met
+     */
+    public boolean isMet(AbstractBuild build, Launcher launcher, BuildListener listener,
+            EvaluationContext context) throws IOException, InterruptedException {
+        return isMet(build, launcher, listener);
+    }
+
+    /**
+     * Starts checking if the check criteria is met, without waiting for the result.
+     *
+     * Conditions that wait on I/O can override this to complete the future
+     * from a callback instead of holding a thread, the default checks the
+     * condition with {@link #isMet(AbstractBuild, Launcher, BuildListener, EvaluationContext)}.
+     * Failures are reported through the future, not thrown.
+     *
+     * @param build
+     * @param launcher
+     * @param listener
+     * @param context - state of the whole check, such as time limits
+     *
+     * @return the future result of the condition
+     */
+    public ConditionFuture isMetAsync(AbstractBuild build, Launcher launcher, BuildListener listener,
+            EvaluationContext context) {
+        return context.adapt(this, build, launcher, listener);
+    }
+
+    /**
+     * Checks the condition before the build is queued, from the project,
+     * parameters and causes of the build alone.
+     *
+     * This is called while Jenkins holds the queue lock, so it must be quick
+     * and must not block. The default returns null, conditions that can be
+     * decided before the build runs override this.
+     *
+     * @param item - the build about to be queued
+     *
+     * @return
+     *      true or false if the result is already known,
+     *      null if it can only be known once the build runs
+     */
+    public Boolean isMetInQueue(QueuedBuild item) {
+        return null;
+    }
+
+    /**
+     * Returns the descriptor of this condition,
+     * null when Jenkins is not running, such as in the benchmarks.
+     */
     public CheckConditionDescriptor getDescriptor() {
-        return (CheckConditionDescriptor)Hudson.getInstance().getDescriptor(getClass());
+        return DescriptorRegistry.get(getClass());
     }
 
     /**
@@ -73,12 +145,7 @@ public abstract class CheckCondition implements ExtensionPoint, Describable<Chec
      * Returns a subset of {@link CheckConditionDescriptor}s that applies to the given project.
      */
     public static List<CheckConditionDescriptor> getCheckConditionDescriptors(AbstractProject<?,?> p) {
-        List<CheckConditionDescriptor> r = new ArrayList<CheckConditionDescriptor>();
-        for (CheckConditionDescriptor t : all()) {
-            if(t.isApplicable(p))
-                r.add(t);
-        }
-        return r;
+        return DescriptorRegistry.getApplicable(p);
     }
     
 }
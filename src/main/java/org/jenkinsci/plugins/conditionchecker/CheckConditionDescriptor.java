@@ -22,11 +22,10 @@ package org.jenkinsci.plugins.conditionchecker;
  * THE SOFTWARE.
  */
 
-import hudson.model.Hudson;
 import hudson.model.AbstractProject;
 import hudson.model.Descriptor;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 /**
  * {@link Descriptor} for {@link CheckCondition}.
@@ -55,6 +54,83 @@ public abstract class CheckConditionDescriptor extends Descriptor<CheckCondition
     public boolean isApplicable(AbstractProject<?,?> item){
         return true;
     }
+
+    /**
+     * Returns true if this condition has side effects or depends on
+     * the conditions checked before it, so it must be checked in the
+     * configured order.
+     *
+     * @return
+     *      true to stop groups from reordering around this condition.
+     */
+    public boolean isOrderSensitive(){
+        return false;
+    }
+
+    /**
+     * Returns true if the result of this condition does not change during a build,
+     * so it can be shared by every check of an equal condition in the same build.
+     * Only conditions known to read nothing that changes while the build runs,
+     * such as the workspace, the clock or the environment, should return true.
+     *
+     * @return
+     *      true to allow the result to be cached for the build,
+     *      false (by default) to check the condition every time.
+     */
+    public boolean isCacheable(){
+        return false;
+    }
+
+    /**
+     * Returns true if the result of this condition is the same for every build,
+     * so it only needs to be checked once when checking many builds.
+     *
+     * @return
+     *      true if the result does not depend on the build.
+     */
+    public boolean isBuildIndependent(){
+        return false;
+    }
+
+    /**
+     * Returns the build events after which the result of this condition is final,
+     * so it can be checked as soon as they have happened instead of waiting
+     * for the {@link ConditionChecker}.
+     *
+     * @return
+     *      the events, empty if the result is known as soon as the build starts,
+     *      or null (by default) to only check the condition when asked.
+     *
+     * @see EarlyEvaluation
+     */
+    public Set<BuildEvent> getDependencies(){
+        return null;
+    }
+
+    /**
+     * Returns true if the configuration of a condition containing other
+     * conditions is shown collapsed, see {@link ConditionSubtreeAction}.
+     *
+     * @param it - object the configuration page is for
+     * @param instance - the condition shown, null for a new one
+     */
+    public boolean isCollapsible(Object it, CheckCondition instance){
+        return ConditionSubtreeAction.isCollapsible(it, instance);
+    }
+
+    /**
+     * Remembers a collapsed condition, returning the ID its configuration is loaded by.
+     */
+    public String collapse(AbstractProject<?,?> project, CheckCondition instance){
+        return ConditionSubtreeAction.register(project, instance);
+    }
+
+    /**
+     * Returns a short description of the conditions contained in a collapsed condition.
+     */
+    public String summarize(CheckCondition instance){
+        return ConditionSubtreeAction.summarize(instance);
+    }
     /**
      * Returns a subset of {@link ConditionCheckerDescriptor}s that applies to the given project.
      */
@@ -62,11 +138,6 @@ public abstract class CheckConditionDescriptor extends Descriptor<CheckCondition
      * Returns a subset of {@link CheckConditionDescriptor}s that applies to the given project.
      */
     public static List<CheckConditionDescriptor> getCheckConditionDescriptors(AbstractProject<?,?> p) {
-        List<CheckConditionDescriptor> r = new ArrayList<CheckConditionDescriptor>();
-        for (CheckConditionDescriptor t : Hudson.getInstance().<CheckCondition,CheckConditionDescriptor>getDescriptorList(CheckCondition.class)) {
-            if(t.isApplicable(p))
-                r.add(t);
-        }
-        return r;
+        return DescriptorRegistry.getApplicable(p);
     }
 }
@@ -31,6 +31,7 @@ import hudson.model.AbstractProject;
 import hudson.DescriptorExtensionList;
 import hudson.model.Describable;
 import hudson.model.Descriptor;
+import hudson.model.Result;
 import hudson.tasks.BuildStep;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.BuildStepMonitor;
@@ -38,12 +39,14 @@ import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
 import hudson.model.Hudson;
 import hudson.tasks.Publisher;
 import hudson.tasks.Notifier;
 
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.StaplerRequest;
+import net.sf.json.JSONObject;
 
 /**
  * Class to allow any build step to be performed before the SCM checkout occurs.
@@ -57,16 +60,102 @@ public class ConditionChecker extends Notifier{
      */
     public final ArrayList<CheckCondition> conditions;
     public final boolean negate;
+    /**
+     * check the conditions at the same time
+     */
+    public final boolean parallel;
+    /**
+     * time allowed for the whole check in seconds, 0 for no limit
+     */
+    public final int timeBudget;
+    /**
+     * what to do when the time budget runs out
+     */
+    public final TimeoutResult timeoutResult;
+    /**
+     * do not queue builds whose conditions are known not to be met
+     */
+    public final boolean skipInQueue;
+    /**
+     * Conditions as they are checked, not persisted
+     */
+    private transient volatile ConditionSnapshot snapshot;
+    /**
+     * Compiled form of the conditions, not persisted
+     */
+    private transient volatile ConditionProgram program;
+    /**
+     * Whether the checker is listed in the metrics, not persisted
+     */
+    transient volatile boolean registered;
+    /**
+     * Simplifications made when the configuration was saved, not persisted
+     */
+    private transient List<String> simplifications;
 
     /**
      * Constructor taking a list of conditions that need to be checked
      *
      * @param conditions - list of conditions that need to be checked
+     * @param negate - invert the result
+     * @param parallel - check the conditions at the same time
+     * @param timeBudget - seconds allowed for the whole check, 0 for no limit
+     * @param timeoutResult - what to do when the time budget runs out
+     * @param skipInQueue - do not queue builds whose conditions are known not to be met
      */
     @DataBoundConstructor
-    public ConditionChecker(ArrayList<CheckCondition> conditions, boolean negate) {
+    public ConditionChecker(ArrayList<CheckCondition> conditions, boolean negate, boolean parallel,
+            int timeBudget, TimeoutResult timeoutResult, boolean skipInQueue) {
             this.conditions = conditions;
             this.negate = negate;
+            this.parallel = parallel;
+            this.timeBudget = timeBudget;
+            this.timeoutResult = timeoutResult;
+            this.skipInQueue = skipInQueue;
+    }
+
+    /**
+     * Constructor for checkers that do not skip builds in the queue
+     *
+     * @param conditions - list of conditions that need to be checked
+     * @param negate - invert the result
+     * @param parallel - check the conditions at the same time
+     * @param timeBudget - seconds allowed for the whole check, 0 for no limit
+     * @param timeoutResult - what to do when the time budget runs out
+     */
+    public ConditionChecker(ArrayList<CheckCondition> conditions, boolean negate, boolean parallel,
+            int timeBudget, TimeoutResult timeoutResult) {
+            this(conditions, negate, parallel, timeBudget, timeoutResult, false);
+    }
+
+    /**
+     * Returns the simplifications made to the conditions when the configuration
+     * was last saved, or null if there were none.
+     */
+    public List<String> getSimplifications() {
+        List<String> s = simplifications;
+        return s == null || s.isEmpty() ? null : s;
+    }
+
+    /**
+     * Constructor for checking the conditions without a time limit
+     *
+     * @param conditions - list of conditions that need to be checked
+     * @param negate - invert the result
+     * @param parallel - check the conditions at the same time
+     */
+    public ConditionChecker(ArrayList<CheckCondition> conditions, boolean negate, boolean parallel) {
+            this(conditions, negate, parallel, 0, null);
+    }
+
+    /**
+     * Constructor for checking the conditions one after another
+     *
+     * @param conditions - list of conditions that need to be checked
+     * @param negate - invert the result
+     */
+    public ConditionChecker(ArrayList<CheckCondition> conditions, boolean negate) {
+            this(conditions, negate, false);
     }
 
     /**
@@ -80,21 +169,147 @@ public class ConditionChecker extends Notifier{
      */
     public boolean isMet(AbstractBuild build, Launcher launcher,
                     BuildListener listener) throws IOException, InterruptedException {
+        return isMet(build, launcher, listener, createContext());
+    }
+
+    /**
+     * Checks all of the containing conditions within the limits of the context.
+     * When the time budget set by {@link #createContext()} runs out, the
+     * configured result is returned, or the timeout thrown on if the build should fail.
+     *
+     * @param build
+     * @param launcher
+     * @param listener
+     * @param context - state of the whole check
+     */
+    public boolean isMet(AbstractBuild build, Launcher launcher,
+                    BuildListener listener, EvaluationContext context) throws IOException, InterruptedException {
+        return isMet(parallel ? null : getProgram(), build, launcher, listener, context);
+    }
 
-        boolean result = true;
+    /**
+     * Checks the conditions with the given program, or in parallel if there is none,
+     * handling the time budget as {@link #isMet(AbstractBuild, Launcher, BuildListener, EvaluationContext)}.
+     */
+    boolean isMet(ConditionProgram program, AbstractBuild build, Launcher launcher,
+                    BuildListener listener, EvaluationContext context) throws IOException, InterruptedException {
+        try {
+            return evaluate(program, build, launcher, listener, context);
+        } catch (ConditionTimeoutException e) {
+            if (e.getLimit() != context || getTimeoutResult() == TimeoutResult.FAIL) {
+                throw e;
+            }
+            return getTimeoutResult() == TimeoutResult.TRUE;
+        }
+    }
 
-        Iterator<CheckCondition> iterator = conditions.iterator();
+    private boolean evaluate(ConditionProgram program, AbstractBuild build, Launcher launcher,
+                    BuildListener listener, EvaluationContext context) throws IOException, InterruptedException {
         /*  work through the conditions
          * Behave as AND implementation so return
          * so stop checking as soon as we hit a false result.
          */
-        while (result && iterator.hasNext()) {
-                result = iterator.next().isMet(build, launcher, listener);
+        ConditionMetrics.register(this, build);
+        if (program == null) {
+            boolean result = ParallelEvaluator.evaluate(getSnapshot(), false, build, launcher, listener, context);
+            return negate ? !result : result;
+        }
+        return program.evaluate(build, launcher, listener, context);
+    }
+
+    /**
+     * Starts checking all of the containing conditions without waiting for the result,
+     * the conditions are ANDed together as by {@link #isMet}.
+     *
+     * @param build
+     * @param launcher
+     * @param listener
+     */
+    public ConditionFuture isMetAsync(AbstractBuild build, Launcher launcher, BuildListener listener) {
+        ConditionMetrics.register(this, build);
+        EvaluationContext context = createContext();
+        return context.recover(AsyncEvaluator.evaluate(getSnapshot(), false, parallel, negate,
+                build, launcher, listener, context));
+    }
+
+    /**
+     * Checks all of the containing conditions before the build is queued,
+     * ANDed together as by {@link #isMet}.
+     *
+     * @param item - the build about to be queued
+     *
+     * @return
+     *      true or false if the result is already known,
+     *      null if it can only be known once the build runs
+     */
+    public Boolean isMetInQueue(QueuedBuild item) {
+        Boolean result = QueuedBuild.isMet(getSnapshot(), false, negate, item);
+        return timeBudget <= 0 ? result : QueuedBuild.withTimeout(result, getTimeoutResult());
+    }
+
+    /**
+     * Records the result for a build once every condition it needs has been
+     * checked early, so it is known even if the build stops before the checker
+     * runs. Nothing is checked, and nothing is recorded if the checker has
+     * already recorded a result for the build.
+     */
+    void recordEarly(AbstractBuild build) {
+        if (ConditionResultAction.of(build, this) != null) {
+            return;
         }
-        if(negate){
-            result = !result;
+        EvaluationContext context = new EvaluationContext().trace();
+        Boolean result = getProgram().decide(build, context);
+        if (result == null) {
+            return;
         }
-        return result;
+        ConditionResultAction action = new ConditionResultAction(this,
+                ConditionResultAction.indexOf(build.getProject(), this), result.booleanValue(), context, true);
+        build.addAction(action);
+        EvaluationJournal.record(build, this, action, false, 0);
+    }
+
+    /**
+     * Creates the context for one check, limited by the time budget if one is set.
+     */
+    public EvaluationContext createContext() {
+        if (timeBudget <= 0) {
+            return new EvaluationContext();
+        }
+        return new EvaluationContext(TimeUnit.SECONDS.toNanos(timeBudget), getTimeoutResult(), "time budget");
+    }
+
+    /**
+     * Returns what to do when the time budget runs out, false if not set.
+     */
+    public TimeoutResult getTimeoutResult() {
+        return timeoutResult == null ? TimeoutResult.FALSE : timeoutResult;
+    }
+
+    /**
+     * Returns an unmodifiable snapshot of the conditions, taken the first time
+     * they are checked and used by every later check.
+     */
+    public ConditionSnapshot getSnapshot() {
+        ConditionSnapshot s = snapshot;
+        if (s == null) {
+            s = ConditionSnapshot.of(conditions);
+            snapshot = s;
+        }
+        return s;
+    }
+
+    /**
+     * Returns the conditions compiled into a {@link ConditionProgram},
+     * compiled from the {@link #getSnapshot() snapshot} on first use and then
+     * shared by every build.
+     */
+    public ConditionProgram getProgram() {
+        ConditionProgram p = program;
+        if (p == null) {
+            p = ConditionProgram.compileAnd(getSnapshot(), negate);
+            program = p;
+        }
+        return p;
     }
     public BuildStepMonitor getRequiredMonitorService() {
 		return BuildStepMonitor.NONE;
@@ -105,9 +320,28 @@ public class ConditionChecker extends Notifier{
 
 
 		listener.getLogger().println("ConditionChecker...");
-        boolean result = isMet(build, launcher,listener);
+        EvaluationContext context = createContext().trace();
+        boolean result;
+        long start = System.nanoTime();
+        try {
+            result = isMet(build, launcher, listener, context);
+        } catch (ConditionTimeoutException e) {
+            listener.error(e.getMessage());
+            ConditionResultAction action = new ConditionResultAction(this,
+                    ConditionResultAction.indexOf(build.getProject(), this), false, context, false);
+            ConditionResultAction.removeEarly(build, this);
+            build.addAction(action);
+            EvaluationJournal.record(build, this, action, true, System.nanoTime() - start);
+            build.setResult(Result.FAILURE);
+            return false;
+        }
 
         listener.getLogger().println("Result: " + result);
+        ConditionResultAction action = new ConditionResultAction(this,
+                ConditionResultAction.indexOf(build.getProject(), this), result, context, false);
+        ConditionResultAction.removeEarly(build, this);
+        build.addAction(action);
+        EvaluationJournal.record(build, this, action, false, System.nanoTime() - start);
 
 
      	return true;
@@ -126,16 +360,35 @@ public class ConditionChecker extends Notifier{
         public boolean isApplicable(Class<? extends AbstractProject> jobType) {
                     return true;
             }
+
+        public TimeoutResult[] getTimeoutResults() {
+            return TimeoutResult.values();
+        }
+
+        /**
+         * Simplifies the conditions before they are saved, keeping a summary
+         * of the changes made here and in the contained groups.
+         */
+        @Override
+        public Publisher newInstance(StaplerRequest req, JSONObject formData) throws FormException {
+            ConditionNormalizer normalizer = ConditionNormalizer.of(req);
+            try {
+                ConditionChecker checker = (ConditionChecker) super.newInstance(req, formData);
+                if (checker == null) {
+                    return null;
+                }
+                checker = normalizer.normalize(checker);
+                checker.simplifications = normalizer.getSummary();
+                return checker;
+            } finally {
+                ConditionNormalizer.done(req);
+            }
+        }
     /**
      * Returns a subset of {@link CheckConditionDescriptor}s that applies to the given project.
      */
     public static List<CheckConditionDescriptor> getCheckConditionDescriptors(AbstractProject<?,?> p) {
-        List<CheckConditionDescriptor> r = new ArrayList<CheckConditionDescriptor>();
-        for (CheckConditionDescriptor t : Hudson.getInstance().<CheckCondition,CheckConditionDescriptor>getDescriptorList(CheckCondition.class)) {
-            if(t.isApplicable(p))
-                r.add(t);
-        }
-        return r;
+        return DescriptorRegistry.getApplicable(p);
     }
     }
 
@@ -0,0 +1,304 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Result of a condition that may not have been checked yet,
+ * returned by {@link CheckCondition#isMetAsync}.
+ *
+ * Callbacks are run once the result is known, on the thread that completes
+ * the future, or straight away if it is already complete. Cancelling the
+ * future cancels the task it is attached to, if any.
+ *
+ * @author Chris Johnson
+ */
+public final class ConditionFuture implements Future<Boolean> {
+    private static final Logger LOGGER = Logger.getLogger(ConditionFuture.class.getName());
+
+    /**
+     * Called once the result of a future is known.
+     */
+    public interface Callback {
+        void done(ConditionFuture future);
+    }
+
+    private boolean done;
+    private boolean result;
+    private Throwable failure;
+    private List<Callback> callbacks;
+    /**
+     * task producing the result, cancelled with the future
+     */
+    private Future<?> task;
+
+    /**
+     * Creates a future to be completed later.
+     */
+    public ConditionFuture() {
+    }
+
+    /**
+     * Returns a future that is already complete.
+     */
+    public static ConditionFuture completed(boolean result) {
+        ConditionFuture f = new ConditionFuture();
+        f.complete(result);
+        return f;
+    }
+
+    /**
+     * Returns a future that has already failed.
+     */
+    public static ConditionFuture failed(Throwable failure) {
+        ConditionFuture f = new ConditionFuture();
+        f.fail(failure);
+        return f;
+    }
+
+    /**
+     * Sets the result, unless the future is already complete.
+     *
+     * @return true if this call completed the future
+     */
+    public boolean complete(boolean result) {
+        return finish(result, null);
+    }
+
+    /**
+     * Sets the failure, unless the future is already complete.
+     *
+     * @return true if this call completed the future
+     */
+    public boolean fail(Throwable failure) {
+        return finish(false, failure);
+    }
+
+    /**
+     * Sets the failure and cancels the task producing the result.
+     *
+     * @return true if this call completed the future
+     */
+    public boolean abort(Throwable failure) {
+        if (!finish(false, failure)) {
+            return false;
+        }
+        cancelTask(true);
+        return true;
+    }
+
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (!finish(false, new CancellationException())) {
+            return false;
+        }
+        cancelTask(mayInterruptIfRunning);
+        return true;
+    }
+
+    /**
+     * Completes this future the same way as another one, and cancels
+     * the other one if this one is cancelled first.
+     *
+     * @return this future
+     */
+    public ConditionFuture follow(final ConditionFuture source) {
+        source.addCallback(new Callback() {
+            public void done(ConditionFuture f) {
+                copy(f);
+            }
+        });
+        addCallback(new Callback() {
+            public void done(ConditionFuture f) {
+                if (f.isCancelled()) {
+                    source.cancel(true);
+                }
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Completes this future the same way as another, complete, one.
+     */
+    void copy(ConditionFuture source) {
+        synchronized (source) {
+            finish(source.result, source.failure);
+        }
+    }
+
+    /**
+     * Attaches the task producing the result, so that it can be cancelled.
+     */
+    void attach(Future<?> task) {
+        boolean cancel;
+        synchronized (this) {
+            this.task = task;
+            cancel = done && failure != null;
+        }
+        if (cancel) {
+            task.cancel(true);
+        }
+    }
+
+    private void cancelTask(boolean mayInterruptIfRunning) {
+        Future<?> t;
+        synchronized (this) {
+            t = task;
+        }
+        if (t != null) {
+            t.cancel(mayInterruptIfRunning);
+        }
+    }
+
+    private boolean finish(boolean result, Throwable failure) {
+        List<Callback> pending;
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            this.done = true;
+            this.result = result;
+            this.failure = failure;
+            pending = callbacks;
+            callbacks = null;
+            notifyAll();
+        }
+        if (pending != null) {
+            for (Callback callback : pending) {
+                run(callback);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds a callback to run once the result is known,
+     * it is run straight away if the result is already known.
+     */
+    public void addCallback(Callback callback) {
+        synchronized (this) {
+            if (!done) {
+                if (callbacks == null) {
+                    callbacks = new ArrayList<Callback>(2);
+                }
+                callbacks.add(callback);
+                return;
+            }
+        }
+        run(callback);
+    }
+
+    private void run(Callback callback) {
+        try {
+            callback.done(this);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Condition callback failed", e);
+        }
+    }
+
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    public synchronized boolean isCancelled() {
+        return failure instanceof CancellationException;
+    }
+
+    /**
+     * Returns true if the future completed with a failure or was cancelled.
+     */
+    public synchronized boolean isFailed() {
+        return failure != null;
+    }
+
+    /**
+     * Returns the failure, or null if there is none or the result is not known yet.
+     */
+    public synchronized Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * Returns the result of a future that completed without a failure.
+     *
+     * @throws IllegalStateException if the result is not known
+     */
+    public synchronized boolean getResult() {
+        if (!done || failure != null) {
+            throw new IllegalStateException("no result");
+        }
+        return result;
+    }
+
+    public synchronized Boolean get() throws InterruptedException, ExecutionException {
+        while (!done) {
+            wait();
+        }
+        return report();
+    }
+
+    public synchronized Boolean get(long timeout, TimeUnit unit)
+                    throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!done) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return report();
+    }
+
+    /**
+     * Waits for the result, throwing the failure of the condition as
+     * {@link CheckCondition#isMet} would.
+     */
+    public boolean join() throws IOException, InterruptedException {
+        try {
+            return get().booleanValue();
+        } catch (ExecutionException e) {
+            throw ParallelEvaluator.rethrow(e);
+        }
+    }
+
+    private Boolean report() throws ExecutionException {
+        if (failure instanceof CancellationException) {
+            throw (CancellationException) failure;
+        }
+        if (failure != null) {
+            throw new ExecutionException(failure);
+        }
+        return Boolean.valueOf(result);
+    }
+}
@@ -0,0 +1,137 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shares the compiled state of conditions between jobs, so that jobs created
+ * from the same template do not each compile and hold their own copy.
+ *
+ * Only immutable compiled state, such as a {@link PathGlobSet} or a
+ * {@link LogScanner}, is shared, looked up by the configuration it was
+ * compiled from. The conditions themselves are never shared, so each
+ * configured condition keeps its own {@link ConditionMetrics}, its own
+ * order for reordered groups and its own place in the results of a check.
+ * The table only holds the shared values weakly, so values no longer used by
+ * any condition can be collected.
+ * Sharing can be turned off with the
+ * <tt>org.jenkinsci.plugins.conditionchecker.ConditionInterner.disabled</tt> system property.
+ *
+ * @author Chris Johnson
+ */
+public final class ConditionInterner {
+    static final boolean DISABLED = Boolean.getBoolean(ConditionInterner.class.getName() + ".disabled");
+
+    private static final Map<Object, Entry> TABLE = new HashMap<Object, Entry>();
+    private static final ReferenceQueue<Object> QUEUE = new ReferenceQueue<Object>();
+    private static final AtomicLong LOOKUPS = new AtomicLong();
+    private static final AtomicLong HITS = new AtomicLong();
+
+    private ConditionInterner() {
+    }
+
+    /**
+     * Weak reference to a shared value, remembering its key so it can be
+     * removed from the table once cleared.
+     */
+    private static final class Entry extends WeakReference<Object> {
+        final Object key;
+
+        Entry(Object key, Object value) {
+            super(value, QUEUE);
+            this.key = key;
+        }
+    }
+
+    /**
+     * Returns the shared value compiled from the same configuration,
+     * adding the given one if there is none.
+     *
+     * @param key - the configuration the value was compiled from, including
+     *      the type of the value, compared with {@link Object#equals}
+     * @param value - the value compiled from the key, must be immutable
+     *
+     * @return the shared value, or the given one if there is none yet
+     */
+    public static <T> T share(Object key, T value) {
+        if (DISABLED || value == null) {
+            return value;
+        }
+        LOOKUPS.incrementAndGet();
+        synchronized (TABLE) {
+            expunge();
+            Entry e = TABLE.get(key);
+            Object other = e == null ? null : e.get();
+            if (other != null && other.getClass() == value.getClass()) {
+                HITS.incrementAndGet();
+                return (T) other;
+            }
+            TABLE.put(key, new Entry(key, value));
+            return value;
+        }
+    }
+
+    /**
+     * Drops the entries of values that have been collected.
+     */
+    private static void expunge() {
+        Reference<?> ref;
+        while ((ref = QUEUE.poll()) != null) {
+            Entry e = (Entry) ref;
+            // the key may have been taken over by a newer value
+            if (TABLE.get(e.key) == e) {
+                TABLE.remove(e.key);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of shared values in the table.
+     */
+    public static int size() {
+        synchronized (TABLE) {
+            expunge();
+            return TABLE.size();
+        }
+    }
+
+    /**
+     * Returns the number of lookups made.
+     */
+    public static long getLookups() {
+        return LOOKUPS.get();
+    }
+
+    /**
+     * Returns the number of lookups that found a value to share.
+     */
+    public static long getHits() {
+        return HITS.get();
+    }
+}
@@ -0,0 +1,235 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.BuildListener;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jenkinsci.plugins.conditionchecker.conditions.ThresholdGroupCheckCondition;
+import org.jenkinsci.plugins.conditionchecker.conditions.TimeoutCheckCondition;
+
+/**
+ * Records every {@link CheckCondition#isMet} call made while checking conditions,
+ * per type of condition and per configured condition.
+ *
+ * Per type counters are kept here, per condition counters are kept on the
+ * condition itself, and the {@link ConditionChecker}s that have been checked
+ * are remembered (weakly) so the configured conditions can be listed by job.
+ * Recording can be turned off with the
+ * <tt>org.jenkinsci.plugins.conditionchecker.ConditionMetrics.disabled</tt> system property.
+ *
+ * @author Chris Johnson
+ */
+public final class ConditionMetrics {
+    static final boolean DISABLED = Boolean.getBoolean(ConditionMetrics.class.getName() + ".disabled");
+
+    /**
+     * stripes for the per type counters, shared by every job
+     */
+    private static final int TYPE_STRIPES = Math.min(16, Runtime.getRuntime().availableProcessors() * 2);
+    /**
+     * stripes for the per condition counters, only shared by builds of one job
+     */
+    private static final int NODE_STRIPES = 2;
+
+    private static final ConcurrentMap<Class<?>, ConditionStats> BY_TYPE =
+            new ConcurrentHashMap<Class<?>, ConditionStats>();
+
+    private static final Map<ConditionChecker, String> CHECKERS =
+            Collections.synchronizedMap(new WeakHashMap<ConditionChecker, String>());
+
+    private ConditionMetrics() {
+    }
+
+    /**
+     * Calls {@link CheckCondition#isMet} within the limits of the context,
+     * recording the time taken and the result.
+     *
+     * @param condition
+     * @param build
+     * @param launcher
+     * @param listener
+     * @param context - state of the whole check
+     *
+     * @return
+     *      true if the condition is met,
+     *      false if condition is not met
+     */
+    public static boolean isMet(CheckCondition condition, AbstractBuild build, Launcher launcher,
+                    BuildListener listener, EvaluationContext context) throws IOException, InterruptedException {
+        if (DISABLED) {
+            return context.isMet(condition, build, launcher, listener);
+        }
+        int outcome = ConditionStats.EXCEPTIONS;
+        long start = System.nanoTime();
+        try {
+            boolean result = context.isMet(condition, build, launcher, listener);
+            outcome = result ? ConditionStats.TRUE : ConditionStats.FALSE;
+            return result;
+        } finally {
+            record(condition, System.nanoTime() - start, outcome);
+        }
+    }
+
+    /**
+     * Records a check of a condition made without {@link #isMet}.
+     *
+     * @param condition
+     * @param nanos - time taken
+     * @param outcome - {@link ConditionStats#TRUE}, {@link ConditionStats#FALSE}
+     *      or {@link ConditionStats#EXCEPTIONS}
+     */
+    static void record(CheckCondition condition, long nanos, int outcome) {
+        if (DISABLED) {
+            return;
+        }
+        statsOf(condition).record(nanos, outcome);
+        typeStatsOf(condition.getClass()).record(nanos, outcome);
+    }
+
+    /**
+     * Remembers a checker so its conditions are listed under the job.
+     */
+    static void register(ConditionChecker checker, AbstractBuild build) {
+        // checked without locking, as every build of every job calls this
+        if (DISABLED || build == null || checker.registered) {
+            return;
+        }
+        AbstractProject project = build.getProject();
+        if (project != null) {
+            CHECKERS.put(checker, project.getFullName());
+            checker.registered = true;
+        }
+    }
+
+    /**
+     * Returns the counters of a configured condition.
+     */
+    public static ConditionStats statsOf(CheckCondition condition) {
+        ConditionStats stats = condition.stats;
+        if (stats == null) {
+            synchronized (condition) {
+                stats = condition.stats;
+                if (stats == null) {
+                    stats = new ConditionStats(NODE_STRIPES);
+                    condition.stats = stats;
+                }
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Returns the counters of a type of condition.
+     */
+    public static ConditionStats typeStatsOf(Class<?> type) {
+        ConditionStats stats = BY_TYPE.get(type);
+        if (stats == null) {
+            stats = new ConditionStats(TYPE_STRIPES);
+            ConditionStats existing = BY_TYPE.putIfAbsent(type, stats);
+            if (existing != null) {
+                stats = existing;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Returns the counters of each type of condition.
+     */
+    public static Map<Class<?>, ConditionStats> getTypeStats() {
+        return new HashMap<Class<?>, ConditionStats>(BY_TYPE);
+    }
+
+    /**
+     * Returns the checkers that have been checked, with the name of their job.
+     */
+    public static Map<ConditionChecker, String> getCheckers() {
+        synchronized (CHECKERS) {
+            return new HashMap<ConditionChecker, String>(CHECKERS);
+        }
+    }
+
+    /**
+     * Clears all the counters.
+     */
+    public static void reset() {
+        for (ConditionStats stats : BY_TYPE.values()) {
+            stats.reset();
+        }
+        for (ConditionChecker checker : getCheckers().keySet()) {
+            List<CheckCondition> stack = new ArrayList<CheckCondition>();
+            if (checker.conditions != null) {
+                stack.addAll(checker.conditions);
+            }
+            while (!stack.isEmpty()) {
+                CheckCondition c = stack.remove(stack.size() - 1);
+                if (c == null) {
+                    continue;
+                }
+                if (c.stats != null) {
+                    c.stats.reset();
+                }
+                List<CheckCondition> children = childrenOf(c);
+                if (children != null) {
+                    stack.addAll(children);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the conditions contained in an And, Or, threshold or timeout group, as they are checked,
+     * null for anything else.
+     */
+    static List<CheckCondition> childrenOf(CheckCondition c) {
+        if (c instanceof TimeoutCheckCondition) {
+            TimeoutCheckCondition g = (TimeoutCheckCondition) c;
+            return g.conditions == null ? null : g.getSnapshot();
+        }
+        if (c instanceof ThresholdGroupCheckCondition) {
+            ThresholdGroupCheckCondition g = (ThresholdGroupCheckCondition) c;
+            return g.conditions == null ? null : g.getSnapshot();
+        }
+        if (c instanceof AndGroupCheckCondition) {
+            AndGroupCheckCondition g = (AndGroupCheckCondition) c;
+            return g.conditions == null ? null : g.getSnapshot();
+        }
+        if (c instanceof OrGroupCheckCondition) {
+            OrGroupCheckCondition g = (OrGroupCheckCondition) c;
+            return g.conditions == null ? null : g.getSnapshot();
+        }
+        return null;
+    }
+}
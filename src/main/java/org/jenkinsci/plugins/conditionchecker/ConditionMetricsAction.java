@@ -0,0 +1,161 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import hudson.Extension;
+import hudson.model.Hudson;
+import hudson.model.RootAction;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.servlet.http.HttpServletResponse;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Exposes the {@link ConditionMetrics} as JSON at <tt>/condition-metrics/</tt>,
+ * and resets them with a POST to <tt>/condition-metrics/reset</tt>.
+ *
+ * Both need the administer permission as the output lists job names.
+ *
+ * @author Chris Johnson
+ */
+@Extension
+public class ConditionMetricsAction implements RootAction {
+
+    public String getIconFileName() {
+        // not shown in the side panel
+        return null;
+    }
+
+    public String getDisplayName() {
+        return "Condition metrics";
+    }
+
+    public String getUrlName() {
+        return "condition-metrics";
+    }
+
+    /**
+     * Writes the metrics as JSON.
+     */
+    public void doIndex(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Hudson.getInstance().checkPermission(Hudson.ADMINISTER);
+        rsp.setContentType("application/json;charset=UTF-8");
+        rsp.getWriter().print(toJSON().toString());
+    }
+
+    /**
+     * Clears the metrics.
+     */
+    public void doReset(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Hudson.getInstance().checkPermission(Hudson.ADMINISTER);
+        if (!"POST".equals(req.getMethod())) {
+            rsp.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED, "POST required");
+            return;
+        }
+        ConditionMetrics.reset();
+        rsp.setStatus(HttpServletResponse.SC_OK);
+    }
+
+    /**
+     * Returns the metrics, per type and per configured condition of each job.
+     * Configured conditions are identified by their path, the index of each
+     * condition from the top of the checker separated by '/'.
+     */
+    public JSONObject toJSON() {
+        JSONArray types = new JSONArray();
+        for (Map.Entry<Class<?>, ConditionStats> e : ConditionMetrics.getTypeStats().entrySet()) {
+            types.add(toJSON(e.getValue()).element("type", e.getKey().getName()));
+        }
+
+        JSONArray jobs = new JSONArray();
+        for (Map.Entry<ConditionChecker, String> e : ConditionMetrics.getCheckers().entrySet()) {
+            JSONArray nodes = new JSONArray();
+            List<CheckCondition> stack = new ArrayList<CheckCondition>();
+            List<String> paths = new ArrayList<String>();
+            push(stack, paths, e.getKey().conditions, "");
+            while (!stack.isEmpty()) {
+                CheckCondition c = stack.remove(stack.size() - 1);
+                String path = paths.remove(paths.size() - 1);
+                if (c.stats != null) {
+                    nodes.add(toJSON(c.stats)
+                            .element("path", path)
+                            .element("type", c.getClass().getName()));
+                }
+                push(stack, paths, ConditionMetrics.childrenOf(c), path + "/");
+            }
+            jobs.add(new JSONObject()
+                    .element("job", e.getValue())
+                    .element("conditions", nodes));
+        }
+
+        JSONObject interned = new JSONObject()
+                .element("shared", ConditionInterner.size())
+                .element("lookups", ConditionInterner.getLookups())
+                .element("hits", ConditionInterner.getHits());
+
+        return new JSONObject()
+                .element("types", types)
+                .element("jobs", jobs)
+                .element("interned", interned);
+    }
+
+    /**
+     * Pushes the conditions in reverse, so they are popped in configured order.
+     */
+    private static void push(List<CheckCondition> stack, List<String> paths,
+                    List<CheckCondition> conditions, String prefix) {
+        if (conditions == null) {
+            return;
+        }
+        for (int i = conditions.size() - 1; i >= 0; i--) {
+            if (conditions.get(i) != null) {
+                stack.add(conditions.get(i));
+                paths.add(prefix + i);
+            }
+        }
+    }
+
+    private static JSONObject toJSON(ConditionStats stats) {
+        JSONArray histogram = new JSONArray();
+        long[] buckets = stats.getHistogram();
+        for (int i = 0; i < buckets.length; i++) {
+            histogram.add(new JSONObject()
+                    .element("lessThanMicros", i < buckets.length - 1 ? Long.valueOf(1L << i) : null)
+                    .element("count", buckets[i]));
+        }
+        return new JSONObject()
+                .element("calls", stats.get(ConditionStats.CALLS))
+                .element("true", stats.get(ConditionStats.TRUE))
+                .element("false", stats.get(ConditionStats.FALSE))
+                .element("exceptions", stats.get(ConditionStats.EXCEPTIONS))
+                .element("totalNanos", stats.get(ConditionStats.NANOS))
+                .element("histogram", histogram);
+    }
+}
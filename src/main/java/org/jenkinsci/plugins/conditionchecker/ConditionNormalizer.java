@@ -0,0 +1,418 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jenkinsci.plugins.conditionchecker.conditions.ThresholdGroupCheckCondition;
+import org.jenkinsci.plugins.conditionchecker.conditions.TimeoutCheckCondition;
+import org.kohsuke.stapler.StaplerRequest;
+
+/**
+ * Simplifies condition trees when they are saved, without changing their result:
+ * <ul>
+ * <li>groups nested in a group of the same type are flattened into it,</li>
+ * <li>a negated group nested in a group of the other type is replaced by its
+ *     negated conditions (De Morgan), when they can be negated without adding a group,</li>
+ * <li>groups with a single condition are replaced by it, negating it if needed,
+ *     which also removes double negation,</li>
+ * <li>True and False conditions that can not change the result of their group
+ *     are removed, and so are the conditions after one that decides its result,
+ *     the conditions before it are only removed if checking them has no effect
+ *     (see {@link #isPure}) so a group is then replaced by the constant,</li>
+ * <li>groups left empty or decided by a constant are replaced by a constant.</li>
+ * </ul>
+ * Only plain And, Or, True and False conditions are changed, the conditions
+ * of timeout groups are simplified but the groups are kept, and groups are only
+ * flattened into groups checked the same way (in parallel or reordered).
+ * The conditions of threshold groups are each simplified, but none are removed
+ * or merged, as every one of them counts towards the threshold.
+ *
+ * The changes made are counted so they can be shown on the configuration page.
+ *
+ * @author Chris Johnson
+ */
+public final class ConditionNormalizer {
+    private static final String ATTRIBUTE = ConditionNormalizer.class.getName();
+
+    private int flattened;
+    private int deMorgan;
+    private int singles;
+    private int constants;
+    private int removed;
+
+    /**
+     * Returns the normalizer of a form submission, so the changes made while
+     * binding the nested groups are reported with the checker.
+     *
+     * @param req - the request, may be null
+     */
+    public static ConditionNormalizer of(StaplerRequest req) {
+        if (req == null) {
+            return new ConditionNormalizer();
+        }
+        ConditionNormalizer n = (ConditionNormalizer) req.getAttribute(ATTRIBUTE);
+        if (n == null) {
+            n = new ConditionNormalizer();
+            req.setAttribute(ATTRIBUTE, n);
+        }
+        return n;
+    }
+
+    /**
+     * Ends the form submission, so the next one starts with no changes.
+     */
+    public static void done(StaplerRequest req) {
+        if (req != null) {
+            req.removeAttribute(ATTRIBUTE);
+        }
+    }
+
+    /**
+     * Returns a simplified copy of the checker.
+     */
+    public ConditionChecker normalize(ConditionChecker checker) {
+        ArrayList<CheckCondition> conditions = normalizeAll(checker.conditions, false, checker.parallel, false);
+        return new ConditionChecker(conditions, checker.negate, checker.parallel,
+                checker.timeBudget, checker.timeoutResult, checker.skipInQueue);
+    }
+
+    /**
+     * Returns a simplified condition with the same result, which may be a
+     * different condition (such as the only condition of a group).
+     */
+    public CheckCondition normalize(CheckCondition condition) {
+        if (condition == null) {
+            return null;
+        }
+        // simplify the contained conditions first, using an explicit stack so deep trees do not overflow
+        Map<CheckCondition, CheckCondition> done = new IdentityHashMap<CheckCondition, CheckCondition>();
+        List<CheckCondition> stack = new ArrayList<CheckCondition>();
+        stack.add(condition);
+        while (!stack.isEmpty()) {
+            CheckCondition c = stack.get(stack.size() - 1);
+            List<CheckCondition> children = childrenOf(c);
+            boolean ready = true;
+            if (children != null) {
+                for (CheckCondition child : children) {
+                    if (child != null && !done.containsKey(child)) {
+                        stack.add(child);
+                        ready = false;
+                    }
+                }
+            }
+            if (!ready) {
+                continue;
+            }
+            stack.remove(stack.size() - 1);
+            if (done.containsKey(c)) {
+                continue;
+            }
+            if (children == null) {
+                done.put(c, c);
+                continue;
+            }
+            List<CheckCondition> normalized = new ArrayList<CheckCondition>(children.size());
+            for (CheckCondition child : children) {
+                normalized.add(child == null ? null : done.get(child));
+            }
+            done.put(c, simplify(c, normalized));
+        }
+        return done.get(condition);
+    }
+
+    /**
+     * Returns the lines of the summary of the changes made, empty if there were none.
+     */
+    public List<String> getSummary() {
+        List<String> summary = new ArrayList<String>();
+        if (flattened > 0) {
+            summary.add("Flattened " + flattened + " group(s) into the group containing them");
+        }
+        if (deMorgan > 0) {
+            summary.add("Replaced " + deMorgan + " negated group(s) by their negated conditions");
+        }
+        if (singles > 0) {
+            summary.add("Replaced " + singles + " group(s) with a single condition by the condition");
+        }
+        if (constants > 0) {
+            summary.add("Replaced " + constants + " group(s) with a constant result by True or False");
+        }
+        if (removed > 0) {
+            summary.add("Removed " + removed + " condition(s) that could not change the result");
+        }
+        return Collections.unmodifiableList(summary);
+    }
+
+    private ArrayList<CheckCondition> normalizeAll(List<CheckCondition> conditions, boolean or,
+                    boolean parallel, boolean reorder) {
+        List<CheckCondition> normalized = new ArrayList<CheckCondition>();
+        if (conditions != null) {
+            for (CheckCondition c : conditions) {
+                normalized.add(normalize(c));
+            }
+        }
+        return simplifyList(normalized, or, parallel, reorder);
+    }
+
+    /**
+     * Simplifies a group whose conditions have already been simplified.
+     */
+    private CheckCondition simplify(CheckCondition c, List<CheckCondition> children) {
+        if (c.getClass() == TimeoutCheckCondition.class) {
+            TimeoutCheckCondition t = (TimeoutCheckCondition) c;
+            return new TimeoutCheckCondition(simplifyList(children, false, false, false),
+                    t.timeout, t.timeoutResult);
+        }
+        if (c.getClass() == ThresholdGroupCheckCondition.class) {
+            ThresholdGroupCheckCondition t = (ThresholdGroupCheckCondition) c;
+            return new ThresholdGroupCheckCondition(new ArrayList<CheckCondition>(children),
+                    t.threshold, t.negate);
+        }
+        boolean or = c.getClass() == OrGroupCheckCondition.class;
+        boolean negate = negateOf(c);
+        boolean parallel = parallelOf(c);
+        boolean reorder = reorderOf(c);
+
+        ArrayList<CheckCondition> list = simplifyList(children, or, parallel, reorder);
+        if (list.isEmpty()) {
+            // empty AND is true, empty OR is false
+            constants++;
+            return constant(!or != negate);
+        }
+        if (list.size() == 1) {
+            CheckCondition only = list.get(0);
+            if (isConstant(only)) {
+                constants++;
+                return constant(valueOf(only) != negate);
+            }
+            if (!negate) {
+                singles++;
+                return only;
+            }
+            CheckCondition negated = negated(only);
+            if (negated != null) {
+                singles++;
+                return negated;
+            }
+        }
+        return or ? new OrGroupCheckCondition(list, negate, parallel, reorder)
+                : new AndGroupCheckCondition(list, negate, parallel, reorder);
+    }
+
+    /**
+     * Simplifies the conditions of a group.
+     *
+     * @param or - true for an OR group, false for an AND group
+     */
+    private ArrayList<CheckCondition> simplifyList(List<CheckCondition> children, boolean or,
+                    boolean parallel, boolean reorder) {
+        ArrayList<CheckCondition> out = new ArrayList<CheckCondition>();
+        // conditions still to add, in order, including those taken from flattened groups
+        ArrayDeque<CheckCondition> pending = new ArrayDeque<CheckCondition>();
+        pushAll(pending, children);
+        while (!pending.isEmpty()) {
+            CheckCondition c = pending.pop();
+            if (isGroup(c) && sameChecking(c, parallel, reorder)) {
+                boolean sameType = (c.getClass() == OrGroupCheckCondition.class) == or;
+                if (sameType && !negateOf(c)) {
+                    pushAll(pending, childrenOf(c));
+                    flattened++;
+                    continue;
+                }
+                if (!sameType && negateOf(c)) {
+                    List<CheckCondition> negated = negatedAll(childrenOf(c));
+                    if (negated != null) {
+                        pushAll(pending, negated);
+                        deMorgan++;
+                        continue;
+                    }
+                }
+            }
+            if (isConstant(c)) {
+                if (valueOf(c) != or) {
+                    // true in an AND, false in an OR
+                    removed++;
+                    continue;
+                }
+                // decides the group whatever the later conditions are,
+                // the earlier ones are still checked first unless that can not be told apart
+                removed += pending.size();
+                if (isPure(out)) {
+                    removed += out.size();
+                    out.clear();
+                }
+                out.add(c);
+                return out;
+            }
+            out.add(c);
+        }
+        return out;
+    }
+
+    /**
+     * Adds the conditions to the front of the queue, keeping their order.
+     */
+    private static void pushAll(ArrayDeque<CheckCondition> pending, List<CheckCondition> conditions) {
+        for (int i = conditions.size() - 1; i >= 0; i--) {
+            if (conditions.get(i) != null) {
+                pending.push(conditions.get(i));
+            }
+        }
+    }
+
+    /**
+     * Returns the negation of each condition, or null if one of them can only
+     * be negated by wrapping it in a group.
+     */
+    private static List<CheckCondition> negatedAll(List<CheckCondition> conditions) {
+        List<CheckCondition> negated = new ArrayList<CheckCondition>(conditions.size());
+        for (CheckCondition c : conditions) {
+            CheckCondition n = c == null ? null : negated(c);
+            if (n == null) {
+                return null;
+            }
+            negated.add(n);
+        }
+        return negated;
+    }
+
+    /**
+     * Returns the negation of a group or constant, null for anything else.
+     */
+    private static CheckCondition negated(CheckCondition c) {
+        if (isConstant(c)) {
+            return constant(!valueOf(c));
+        }
+        if (isGroup(c) && negateOf(c) && childrenOf(c).size() == 1) {
+            // a group kept only to negate its condition
+            return childrenOf(c).get(0);
+        }
+        if (c.getClass() == AndGroupCheckCondition.class) {
+            AndGroupCheckCondition g = (AndGroupCheckCondition) c;
+            return new AndGroupCheckCondition(g.conditions, !g.negate, g.parallel, g.reorder);
+        }
+        if (c.getClass() == OrGroupCheckCondition.class) {
+            OrGroupCheckCondition g = (OrGroupCheckCondition) c;
+            return new OrGroupCheckCondition(g.conditions, !g.negate, g.parallel, g.reorder);
+        }
+        return null;
+    }
+
+    private static CheckCondition constant(boolean value) {
+        return value ? new TrueCheckCondition() : new FalseCheckCondition();
+    }
+
+    /**
+     * Returns true if checking the conditions can not change anything
+     * but their result: their descriptors report them cacheable and not
+     * order sensitive, or they are groups of such conditions.
+     * Removing them can not hide a side effect or an exception.
+     */
+    private static boolean isPure(List<CheckCondition> conditions) {
+        for (CheckCondition c : conditions) {
+            if (c == null) {
+                continue;
+            }
+            if (isGroup(c)) {
+                if (!isPure(childrenOf(c))) {
+                    return false;
+                }
+                continue;
+            }
+            CheckConditionDescriptor d = c.getDescriptor();
+            if (d == null || !d.isCacheable() || d.isOrderSensitive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isConstant(CheckCondition c) {
+        return c.getClass() == TrueCheckCondition.class || c.getClass() == FalseCheckCondition.class;
+    }
+
+    private static boolean valueOf(CheckCondition c) {
+        return c.getClass() == TrueCheckCondition.class;
+    }
+
+    private static boolean isGroup(CheckCondition c) {
+        return c.getClass() == AndGroupCheckCondition.class || c.getClass() == OrGroupCheckCondition.class;
+    }
+
+    /**
+     * Returns true if the group is checked the same way as the group containing it.
+     */
+    private static boolean sameChecking(CheckCondition c, boolean parallel, boolean reorder) {
+        return parallelOf(c) == parallel && reorderOf(c) == reorder;
+    }
+
+    /**
+     * Returns the conditions of a plain And, Or, timeout or threshold group, null for anything else.
+     */
+    private static List<CheckCondition> childrenOf(CheckCondition c) {
+        if (c.getClass() == AndGroupCheckCondition.class) {
+            List<CheckCondition> l = ((AndGroupCheckCondition) c).conditions;
+            return l != null ? l : Collections.<CheckCondition>emptyList();
+        }
+        if (c.getClass() == OrGroupCheckCondition.class) {
+            List<CheckCondition> l = ((OrGroupCheckCondition) c).conditions;
+            return l != null ? l : Collections.<CheckCondition>emptyList();
+        }
+        if (c.getClass() == TimeoutCheckCondition.class) {
+            List<CheckCondition> l = ((TimeoutCheckCondition) c).conditions;
+            return l != null ? l : Collections.<CheckCondition>emptyList();
+        }
+        if (c.getClass() == ThresholdGroupCheckCondition.class) {
+            List<CheckCondition> l = ((ThresholdGroupCheckCondition) c).conditions;
+            return l != null ? l : Collections.<CheckCondition>emptyList();
+        }
+        return null;
+    }
+
+    private static boolean negateOf(CheckCondition c) {
+        if (c instanceof AndGroupCheckCondition) {
+            return ((AndGroupCheckCondition) c).negate;
+        }
+        return c instanceof OrGroupCheckCondition && ((OrGroupCheckCondition) c).negate;
+    }
+
+    private static boolean parallelOf(CheckCondition c) {
+        if (c instanceof AndGroupCheckCondition) {
+            return ((AndGroupCheckCondition) c).parallel;
+        }
+        return c instanceof OrGroupCheckCondition && ((OrGroupCheckCondition) c).parallel;
+    }
+
+    private static boolean reorderOf(CheckCondition c) {
+        if (c instanceof AndGroupCheckCondition) {
+            return ((AndGroupCheckCondition) c).reorder;
+        }
+        return c instanceof OrGroupCheckCondition && ((OrGroupCheckCondition) c).reorder;
+    }
+}
@@ -0,0 +1,509 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import hudson.model.AbstractBuild;
+import hudson.Launcher;
+import hudson.model.BuildListener;
+import hudson.remoting.VirtualChannel;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A condition tree compiled into a flat list of instructions.
+ *
+ * Every leaf condition (and every empty group) becomes one instruction,
+ * laid out in the order the leaves appear in the configuration.
+ * Each instruction holds the index to jump to when its condition is true
+ * and the index to jump to when it is false, so the AND/OR short-circuiting
+ * and the negation of the groups are resolved when the program is compiled,
+ * not when it is evaluated.
+ *
+ * Neither compiling nor evaluating uses recursion, so trees of any depth
+ * can be handled, and evaluating does not allocate.
+ *
+ * @author Chris Johnson
+ */
+public final class ConditionProgram {
+    /**
+     * Jump target that ends the evaluation with a true result
+     */
+    static final int ACCEPT = -1;
+    /**
+     * Jump target that ends the evaluation with a false result
+     */
+    static final int REJECT = -2;
+
+    /**
+     * Condition to check for each instruction,
+     * null for the constant instructions of empty groups
+     */
+    private final CheckCondition[] leaves;
+    /**
+     * Next instruction when the condition is true
+     */
+    private final int[] onTrue;
+    /**
+     * Next instruction when the condition is false
+     */
+    private final int[] onFalse;
+    /**
+     * {@link StructuralHash} of each condition, used to share results within a build
+     */
+    private final long[] keys;
+    /**
+     * {@link StructuralHash} of the whole program
+     */
+    private final long rootKey;
+    /**
+     * End of the range to send to the node in one {@link RemoteBatch}
+     * for each instruction starting one, 0 for the others,
+     * null if the program has no such range
+     */
+    private final int[] batchEnd;
+
+    /**
+     * Marks an instruction range that could not be sent to the node
+     */
+    private static final int NOT_BATCHED = Integer.MIN_VALUE;
+
+    private ConditionProgram(CheckCondition[] leaves, int[] onTrue, int[] onFalse, long[] keys, long rootKey,
+                    int[] batchEnd) {
+        this.leaves = leaves;
+        this.onTrue = onTrue;
+        this.onFalse = onFalse;
+        this.keys = keys;
+        this.rootKey = rootKey;
+        this.batchEnd = batchEnd;
+    }
+
+    /**
+     * Number of instructions in the program.
+     */
+    public int size() {
+        return leaves.length;
+    }
+
+    /**
+     * Runs the program without any time limit.
+     *
+     * @see #evaluate(AbstractBuild, Launcher, BuildListener, EvaluationContext)
+     */
+    public boolean evaluate(AbstractBuild build, Launcher launcher,
+                    BuildListener listener) throws IOException, InterruptedException {
+        return evaluate(build, launcher, listener, EvaluationContext.none());
+    }
+
+    /**
+     * Runs the program, checking the conditions in configuration order
+     * and stopping as soon as the result is known.
+     * Results already known for the build are taken from its {@link BuildEvaluationCache}.
+     *
+     * @param build
+     * @param launcher
+     * @param listener
+     * @param context - state of the whole check
+     *
+     * @return
+     *      true if the condition is met,
+     *      false if condition is not met
+     */
+    public boolean evaluate(AbstractBuild build, Launcher launcher,
+                    BuildListener listener, EvaluationContext context) throws IOException, InterruptedException {
+        BuildEvaluationCache cache = BuildEvaluationCache.of(build);
+        if (cache != null && rootKey != StructuralHash.NONE) {
+            int cached = cache.get(rootKey);
+            // a traced check needs the result of each condition, not just the whole program
+            if (cached != BuildEvaluationCache.UNKNOWN && (!context.isTracing() || replay(cache, context) < 0)) {
+                return cached == BuildEvaluationCache.TRUE;
+            }
+        }
+
+        int pc = 0;
+        while (pc >= 0) {
+            if (batchEnd != null && batchEnd[pc] != 0) {
+                int exit = evaluateRemote(pc, batchEnd[pc], cache, build, launcher, listener, context);
+                if (exit != NOT_BATCHED) {
+                    pc = exit;
+                    continue;
+                }
+            }
+            CheckCondition leaf = leaves[pc];
+            boolean result = true;
+            if (leaf != null) {
+                long key = keys[pc];
+                int cached = cache == null ? BuildEvaluationCache.UNKNOWN : cache.get(leaf, key);
+                if (cached != BuildEvaluationCache.UNKNOWN) {
+                    result = cached == BuildEvaluationCache.TRUE;
+                } else {
+                    result = ConditionMetrics.isMet(leaf, build, launcher, listener, context);
+                    if (cache != null && key != StructuralHash.NONE) {
+                        cache.put(key, result);
+                    }
+                }
+                context.record(leaf, result);
+            }
+            pc = result ? onTrue[pc] : onFalse[pc];
+        }
+
+        boolean result = pc == ACCEPT;
+        if (cache != null && rootKey != StructuralHash.NONE) {
+            cache.put(rootKey, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the result of the program if every condition it needs has
+     * already been checked for the build, recording their results in the
+     * context, without checking any of them.
+     *
+     * @return the result, or null if a result is missing
+     */
+    public Boolean decide(AbstractBuild build, EvaluationContext context) {
+        BuildEvaluationCache cache = BuildEvaluationCache.of(build);
+        if (cache == null) {
+            return null;
+        }
+        int pc = replay(cache, context);
+        return pc < 0 ? Boolean.valueOf(pc == ACCEPT) : null;
+    }
+
+    /**
+     * Records the result of each condition of a program whose result is
+     * already known for the build, following the jumps through the results
+     * cached for its conditions, without checking any of them.
+     *
+     * @return the exit of the program, or 0 if a result is missing
+     */
+    private int replay(BuildEvaluationCache cache, EvaluationContext context) {
+        int pc = 0;
+        while (pc >= 0) {
+            CheckCondition leaf = leaves[pc];
+            boolean result = true;
+            if (leaf != null) {
+                int cached = cache.get(leaf, keys[pc]);
+                if (cached == BuildEvaluationCache.UNKNOWN) {
+                    return 0;
+                }
+                result = cached == BuildEvaluationCache.TRUE;
+            }
+            pc = result ? onTrue[pc] : onFalse[pc];
+        }
+        int exit = pc;
+        // only record once every result is known, so a partial replay leaves nothing behind
+        pc = 0;
+        while (pc >= 0) {
+            CheckCondition leaf = leaves[pc];
+            boolean result = true;
+            if (leaf != null) {
+                result = cache.get(leaf, keys[pc]) == BuildEvaluationCache.TRUE;
+                context.record(leaf, result);
+            }
+            pc = result ? onTrue[pc] : onFalse[pc];
+        }
+        return exit;
+    }
+
+    /**
+     * Runs a range of {@link RemoteCondition}s on the node of the build in one call.
+     * Results already known for the build are passed as constant jumps.
+     *
+     * @return the next instruction, or {@link #NOT_BATCHED} if the range could not be sent
+     *      and must be run here
+     */
+    private int evaluateRemote(int start, int end, BuildEvaluationCache cache, AbstractBuild build,
+                    Launcher launcher, BuildListener listener, EvaluationContext context)
+                    throws IOException, InterruptedException {
+        VirtualChannel channel = launcher == null ? null : launcher.getChannel();
+        // a time limit is enforced per condition, which a single call can not do
+        if (channel == null || context.getRemainingNanos() != Long.MAX_VALUE) {
+            return NOT_BATCHED;
+        }
+        int n = end - start;
+        RemoteCheck[] checks = new RemoteCheck[n];
+        int[] t = new int[n];
+        int[] f = new int[n];
+        byte[] known = new byte[n];
+        for (int i = 0; i < n; i++) {
+            int pc = start + i;
+            t[i] = onTrue[pc];
+            f[i] = onFalse[pc];
+            CheckCondition leaf = leaves[pc];
+            if (leaf == null) {
+                continue;
+            }
+            int cached = cache == null ? BuildEvaluationCache.UNKNOWN : cache.get(leaf, keys[pc]);
+            if (cached != BuildEvaluationCache.UNKNOWN) {
+                boolean result = cached == BuildEvaluationCache.TRUE;
+                known[i] = result ? RemoteBatch.TRUE : RemoteBatch.FALSE;
+                t[i] = result ? onTrue[pc] : onFalse[pc];
+                f[i] = t[i];
+                continue;
+            }
+            checks[i] = ((RemoteCondition) leaf).getRemoteCheck(build, listener);
+            if (checks[i] == null) {
+                return NOT_BATCHED;
+            }
+        }
+
+        RemoteBatch.Result r = channel.call(new RemoteBatch(start, checks, t, f));
+        for (int i = 0; i < n; i++) {
+            CheckCondition leaf = leaves[start + i];
+            byte result = r.results[i];
+            if (leaf == null || result == RemoteBatch.NOT_RUN) {
+                continue;
+            }
+            if (result == RemoteBatch.PASSED) {
+                // constant jump of a result already known
+                context.record(leaf, known[i] == RemoteBatch.TRUE);
+                continue;
+            }
+            boolean met = result == RemoteBatch.TRUE;
+            ConditionMetrics.record(leaf, r.nanos[i], met ? ConditionStats.TRUE : ConditionStats.FALSE);
+            if (cache != null && keys[start + i] != StructuralHash.NONE) {
+                cache.put(keys[start + i], met);
+            }
+            context.record(leaf, met);
+        }
+        return r.exit;
+    }
+
+    /**
+     * Returns a copy of the program with the conditions that do not depend on
+     * the build replaced by their result, for checking the same conditions
+     * against many builds.
+     *
+     * @param build - any of the builds, passed to the conditions being folded
+     * @param launcher
+     * @param listener
+     * @param context - state of the check
+     *
+     * @see CheckConditionDescriptor#isBuildIndependent()
+     */
+    public ConditionProgram fold(AbstractBuild build, Launcher launcher,
+                    BuildListener listener, EvaluationContext context) throws IOException, InterruptedException {
+        CheckCondition[] l = leaves.clone();
+        int[] t = onTrue.clone();
+        int[] f = onFalse.clone();
+        boolean folded = false;
+        for (int pc = 0; pc < l.length; pc++) {
+            CheckCondition leaf = l[pc];
+            CheckConditionDescriptor d = leaf == null ? null : leaf.getDescriptor();
+            if (d != null && d.isBuildIndependent()) {
+                int target = ConditionMetrics.isMet(leaf, build, launcher, listener, context) ? t[pc] : f[pc];
+                l[pc] = null;
+                t[pc] = target;
+                f[pc] = target;
+                folded = true;
+            }
+        }
+        return folded ? new ConditionProgram(l, t, f, keys, rootKey, batchEnd) : this;
+    }
+
+    /**
+     * Compiles a list of conditions that are ANDed together, as done by
+     * {@link ConditionChecker} and {@link AndGroupCheckCondition}.
+     *
+     * @param conditions - list of conditions, may be null
+     * @param negate - invert the result of the AND
+     */
+    public static ConditionProgram compileAnd(List<CheckCondition> conditions, boolean negate) {
+        return compile(new Node(Node.AND, null, negate, conditions),
+                StructuralHash.ofGroup(false, negate, conditions));
+    }
+
+    /**
+     * Compiles a list of conditions that are ORed together, as done by
+     * {@link OrGroupCheckCondition}.
+     *
+     * @param conditions - list of conditions, may be null
+     * @param negate - invert the result of the OR
+     */
+    public static ConditionProgram compileOr(List<CheckCondition> conditions, boolean negate) {
+        return compile(new Node(Node.OR, null, negate, conditions),
+                StructuralHash.ofGroup(true, negate, conditions));
+    }
+
+    /**
+     * Node of the tree being compiled.
+     */
+    private static final class Node {
+        static final int LEAF = 0;
+        static final int AND = 1;
+        static final int OR = 2;
+
+        final int kind;
+        final CheckCondition condition;
+        final boolean negate;
+        final List<CheckCondition> children;
+        final List<Node> nodes = new ArrayList<Node>();
+        /**
+         * first instruction of this node and number of instructions it uses
+         */
+        int start;
+        int count;
+        /**
+         * where this node jumps to once its result is known
+         */
+        int ifTrue;
+        int ifFalse;
+        /**
+         * true if every condition of this node is a {@link RemoteCondition}
+         */
+        boolean remote;
+
+        Node(int kind, CheckCondition condition, boolean negate, List<CheckCondition> children) {
+            this.kind = kind;
+            this.condition = condition;
+            this.negate = negate;
+            this.children = children;
+        }
+
+        /**
+         * Creates the node for a condition, only the plain And and Or groups
+         * are expanded, any other condition (including subclasses of the groups
+         * and groups checked in parallel or reordered) is treated as a leaf.
+         */
+        static Node of(CheckCondition condition) {
+            if (condition != null && condition.getClass() == AndGroupCheckCondition.class) {
+                AndGroupCheckCondition and = (AndGroupCheckCondition) condition;
+                if (!and.parallel && !and.reorder) {
+                    return new Node(AND, condition, and.negate, and.getSnapshot());
+                }
+            }
+            if (condition != null && condition.getClass() == OrGroupCheckCondition.class) {
+                OrGroupCheckCondition or = (OrGroupCheckCondition) condition;
+                if (!or.parallel && !or.reorder) {
+                    return new Node(OR, condition, or.negate, or.getSnapshot());
+                }
+            }
+            return new Node(LEAF, condition, false, null);
+        }
+
+        boolean isInstruction() {
+            return kind == LEAF || nodes.isEmpty();
+        }
+    }
+
+    private static ConditionProgram compile(Node root, long rootKey) {
+        /* flatten the tree in pre-order using an explicit stack,
+         * so that deep trees do not overflow the thread stack.
+         */
+        List<Node> order = new ArrayList<Node>();
+        List<Node> stack = new ArrayList<Node>();
+        stack.add(root);
+        while (!stack.isEmpty()) {
+            Node node = stack.remove(stack.size() - 1);
+            order.add(node);
+            if (node.kind != Node.LEAF && node.children != null) {
+                for (CheckCondition child : node.children) {
+                    node.nodes.add(Node.of(child));
+                }
+                for (int i = node.nodes.size() - 1; i >= 0; i--) {
+                    stack.add(node.nodes.get(i));
+                }
+            }
+        }
+
+        // children follow their parent in pre-order, so walk backwards to size the nodes
+        for (int i = order.size() - 1; i >= 0; i--) {
+            Node node = order.get(i);
+            if (node.isInstruction()) {
+                node.count = 1;
+                node.remote = node.kind != Node.LEAF || node.condition instanceof RemoteCondition;
+            } else {
+                node.remote = true;
+                for (Node child : node.nodes) {
+                    node.count += child.count;
+                    node.remote &= child.remote;
+                }
+            }
+        }
+
+        /* walk forwards to place the nodes and work out the jump targets,
+         * a negated group simply swaps its targets before passing them on.
+         */
+        root.start = 0;
+        root.ifTrue = ACCEPT;
+        root.ifFalse = REJECT;
+        int size = root.count;
+        CheckCondition[] leaves = new CheckCondition[size];
+        int[] onTrue = new int[size];
+        int[] onFalse = new int[size];
+        long[] keys = new long[size];
+
+        for (Node node : order) {
+            int ifTrue = node.negate ? node.ifFalse : node.ifTrue;
+            int ifFalse = node.negate ? node.ifTrue : node.ifFalse;
+
+            if (node.isInstruction()) {
+                if (node.kind == Node.LEAF) {
+                    leaves[node.start] = node.condition;
+                    keys[node.start] = StructuralHash.of(node.condition);
+                    onTrue[node.start] = ifTrue;
+                    onFalse[node.start] = ifFalse;
+                } else {
+                    // empty AND is true, empty OR is false
+                    int target = node.kind == Node.AND ? ifTrue : ifFalse;
+                    onTrue[node.start] = target;
+                    onFalse[node.start] = target;
+                }
+                continue;
+            }
+
+            int start = node.start;
+            int last = node.nodes.size() - 1;
+            for (int i = 0; i <= last; i++) {
+                Node child = node.nodes.get(i);
+                int next = start + child.count;
+                child.start = start;
+                if (node.kind == Node.AND) {
+                    child.ifTrue = i < last ? next : ifTrue;
+                    child.ifFalse = ifFalse;
+                } else {
+                    child.ifTrue = ifTrue;
+                    child.ifFalse = i < last ? next : ifFalse;
+                }
+                start = next;
+            }
+        }
+        /* the outermost groups of remote conditions are sent to the node
+         * in one call, pre-order puts each group before the groups inside it.
+         */
+        int[] batchEnd = null;
+        int claimed = 0;
+        for (Node node : order) {
+            if (node.start < claimed || node.isInstruction() || !node.remote || node.count < 2) {
+                continue;
+            }
+            if (batchEnd == null) {
+                batchEnd = new int[size];
+            }
+            claimed = node.start + node.count;
+            batchEnd[node.start] = claimed;
+        }
+        return new ConditionProgram(leaves, onTrue, onFalse, keys, rootKey, batchEnd);
+    }
+}
@@ -0,0 +1,446 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.Action;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jenkinsci.plugins.conditionchecker.conditions.TimeoutCheckCondition;
+
+/**
+ * Result of a {@link ConditionChecker} stored with the build,
+ * so it can be read back without checking the conditions again.
+ *
+ * Besides the overall result, it holds the result of every configured
+ * condition as two bitsets over the conditions in pre-order: one with the
+ * conditions that were met and one with the conditions that were skipped,
+ * either because the result was already known or because they gave no result
+ * (ran out of time, or were taken from the results shared within the build).
+ * Conditions are addressed by path, the index of each condition from the top
+ * of the checker separated by '/', with the empty path for the checker itself.
+ * The shape of the tree is stored too, so paths refer to the configuration
+ * used by the build even if it has changed since.
+ *
+ * A result can also be recorded before the checker runs, when it is already
+ * known at queue time or from the conditions checked early, see {@link #isEarly()}.
+ * Results are matched to their checker by its index among the checkers of the
+ * job, which is stored with the result and so still matches after a restart.
+ *
+ * @author Chris Johnson
+ */
+public class ConditionResultAction implements Action {
+    private static final byte SKIPPED = 0;
+    private static final byte FALSE = 1;
+    private static final byte TRUE = 2;
+
+    private final boolean result;
+    /**
+     * descriptions of the conditions that ran out of time
+     */
+    private final List<String> timeouts;
+    /**
+     * number of nodes in each subtree, in pre-order, the checker first
+     */
+    private final int[] sizes;
+    /**
+     * bit set for each node that was met
+     */
+    private final long[] met;
+    /**
+     * bit set for each node that was skipped
+     */
+    private final long[] skipped;
+    /**
+     * true if recorded before the checker ran, from the results known
+     * at queue time or checked early
+     */
+    private final boolean early;
+    /**
+     * index of the checker among the checkers of the job, -1 if not known,
+     * so the checker can replace an early result
+     */
+    private final int index;
+    /**
+     * the checker that recorded the result, null once loaded from disk
+     */
+    private transient ConditionChecker checker;
+
+    /**
+     * Records the result of every condition of a checker.
+     *
+     * @param checker - the checker that was checked
+     * @param result - its result
+     * @param context - the traced context it was checked with
+     */
+    public ConditionResultAction(ConditionChecker checker, boolean result, EvaluationContext context) {
+        this(checker, -1, result, context, false);
+    }
+
+    /**
+     * @param index - index of the checker among the checkers of the job, -1 if not known
+     * @param early - true if the result was known before the checker ran
+     */
+    ConditionResultAction(ConditionChecker checker, int index, boolean result, EvaluationContext context, boolean early) {
+        this.result = result;
+        this.early = early;
+        this.index = index;
+        this.checker = checker;
+        this.timeouts = context.getTimeouts();
+
+        List<CheckCondition> order = new ArrayList<CheckCondition>();
+        int[] parents = flatten(checker, order);
+        int n = order.size();
+        sizes = new int[n];
+        for (int i = n - 1; i >= 0; i--) {
+            sizes[i]++;
+            if (parents[i] >= 0) {
+                sizes[parents[i]] += sizes[i];
+            }
+        }
+
+        byte[] states = replay(checker, result, order, context);
+        met = new long[(n + 63) >> 6];
+        skipped = new long[met.length];
+        for (int i = 0; i < n; i++) {
+            if (states[i] == TRUE) {
+                met[i >> 6] |= 1L << i;
+            } else if (states[i] == SKIPPED) {
+                skipped[i >> 6] |= 1L << i;
+            }
+        }
+    }
+
+    public boolean getResult() {
+        return result;
+    }
+
+    /**
+     * Returns true if the result was recorded before the checker ran, from the
+     * results known at queue time or checked early. The conditions not known
+     * then are skipped. The checker replaces it with its own result when it runs.
+     */
+    public boolean isEarly() {
+        return early;
+    }
+
+    /**
+     * Returns the index of the checker among the checkers of the job, -1 if not known.
+     */
+    int getCheckerIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the index of a checker among the checkers of a job.
+     *
+     * @return the index, or -1 if the checker is not one of the job's
+     */
+    static int indexOf(AbstractProject<?,?> project, ConditionChecker checker) {
+        return project == null ? -1 : project.getPublishersList().getAll(ConditionChecker.class).indexOf(checker);
+    }
+
+    /**
+     * Returns the result recorded by a checker for a build, or null if there is none.
+     */
+    static ConditionResultAction of(AbstractBuild build, ConditionChecker checker) {
+        int index = indexOf(build.getProject(), checker);
+        for (Object a : build.getActions()) {
+            if (a instanceof ConditionResultAction && ((ConditionResultAction) a).isFrom(checker, index)) {
+                return (ConditionResultAction) a;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes the early results recorded by a checker for a build.
+     */
+    static void removeEarly(AbstractBuild build, ConditionChecker checker) {
+        int index = indexOf(build.getProject(), checker);
+        List<Object> early = new ArrayList<Object>();
+        for (Object a : build.getActions()) {
+            if (a instanceof ConditionResultAction && ((ConditionResultAction) a).early
+                    && ((ConditionResultAction) a).isFrom(checker, index)) {
+                early.add(a);
+            }
+        }
+        build.getActions().removeAll(early);
+    }
+
+    /**
+     * Returns true if the result was recorded by the checker, by its index
+     * if both are known, as the checker is not kept once loaded from disk.
+     */
+    private boolean isFrom(ConditionChecker checker, int index) {
+        return this.index >= 0 && index >= 0 ? this.index == index : this.checker == checker;
+    }
+
+    public List<String> getTimeouts() {
+        return timeouts == null ? Collections.<String>emptyList() : Collections.unmodifiableList(timeouts);
+    }
+
+    /**
+     * Returns the number of nodes recorded, the checker and every condition,
+     * or 0 if the results of the conditions were not recorded.
+     */
+    public int getNodeCount() {
+        return sizes == null ? 0 : sizes.length;
+    }
+
+    /**
+     * Returns the result of a condition.
+     *
+     * @param path - index of each condition from the top separated by '/', empty for the checker
+     * @return the result, or null if the condition was skipped or there is no such condition
+     */
+    public Boolean isMet(String path) {
+        int node = indexOf(path);
+        if (node < 0 || (skipped[node >> 6] & (1L << node)) != 0) {
+            return null;
+        }
+        return Boolean.valueOf((met[node >> 6] & (1L << node)) != 0);
+    }
+
+    /**
+     * Returns true if a condition was skipped or gave no result.
+     *
+     * @param path - index of each condition from the top separated by '/', empty for the checker
+     * @throws IllegalArgumentException if there is no such condition
+     */
+    public boolean isSkipped(String path) {
+        int node = indexOf(path);
+        if (node < 0) {
+            throw new IllegalArgumentException("No condition at " + path);
+        }
+        return (skipped[node >> 6] & (1L << node)) != 0;
+    }
+
+    /**
+     * Returns the bit set of the nodes that were met, by pre-order index, not to be modified.
+     */
+    long[] getMetBits() {
+        return met;
+    }
+
+    /**
+     * Returns the bit set of the nodes that were skipped, by pre-order index, not to be modified.
+     */
+    long[] getSkippedBits() {
+        return skipped;
+    }
+
+    /**
+     * Returns the pre-order index of the node at the path, or -1 if there is none.
+     */
+    int indexOf(String path) {
+        if (sizes == null || path == null) {
+            return -1;
+        }
+        int node = 0;
+        if (path.length() == 0) {
+            return node;
+        }
+        for (String part : path.split("/")) {
+            int child;
+            try {
+                child = Integer.parseInt(part);
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+            int end = node + sizes[node];
+            node++;
+            for (int i = 0; i < child && node < end; i++) {
+                node += sizes[node];
+            }
+            if (child < 0 || node >= end) {
+                return -1;
+            }
+        }
+        return node;
+    }
+
+    public String getIconFileName() {
+        // not shown in the side panel
+        return null;
+    }
+
+    public String getDisplayName() {
+        return null;
+    }
+
+    public String getUrlName() {
+        return null;
+    }
+
+    /**
+     * Lists the checker and its conditions in pre-order, the checker as null.
+     *
+     * @return the index of the parent of each node, -1 for the checker
+     */
+    private static int[] flatten(ConditionChecker checker, List<CheckCondition> order) {
+        List<Integer> parents = new ArrayList<Integer>();
+        List<CheckCondition> stack = new ArrayList<CheckCondition>();
+        List<Integer> stackParents = new ArrayList<Integer>();
+        order.add(null);
+        parents.add(Integer.valueOf(-1));
+        push(stack, stackParents, checker.getSnapshot(), 0);
+        while (!stack.isEmpty()) {
+            CheckCondition c = stack.remove(stack.size() - 1);
+            Integer parent = stackParents.remove(stackParents.size() - 1);
+            int index = order.size();
+            order.add(c);
+            parents.add(parent);
+            push(stack, stackParents, childrenOf(c), index);
+        }
+        int[] result = new int[parents.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = parents.get(i).intValue();
+        }
+        return result;
+    }
+
+    /**
+     * Pushes the conditions in reverse, so they are popped in configured order.
+     */
+    private static void push(List<CheckCondition> stack, List<Integer> parents,
+                    List<CheckCondition> conditions, int parent) {
+        if (conditions == null) {
+            return;
+        }
+        for (int i = conditions.size() - 1; i >= 0; i--) {
+            stack.add(conditions.get(i));
+            parents.add(Integer.valueOf(parent));
+        }
+    }
+
+    private static List<CheckCondition> childrenOf(CheckCondition c) {
+        return c == null ? null : ConditionMetrics.childrenOf(c);
+    }
+
+    /**
+     * Works out the result of each node from the results recorded in the context,
+     * following the short-circuiting of the groups checked one condition
+     * after another. Parallel and reordered groups (and other groups checked
+     * as a whole) only use the results that were recorded.
+     */
+    private byte[] replay(ConditionChecker checker, boolean result, List<CheckCondition> order,
+                    EvaluationContext context) {
+        int n = order.size();
+        byte[] states = new byte[n];
+        int[] frameNode = new int[n];
+        int[] frameNext = new int[n];
+        int[] frameLast = new int[n];
+        boolean[] frameDecided = new boolean[n];
+        boolean[] frameUnknown = new boolean[n];
+        int sp = 0;
+        frameNode[sp] = 0;
+        frameNext[sp] = 1;
+        frameLast[sp] = -1;
+        sp++;
+
+        while (sp > 0) {
+            int f = sp - 1;
+            int node = frameNode[f];
+            int end = node + sizes[node];
+            CheckCondition c = order.get(node);
+            boolean sequential = c == null ? !checker.parallel : isSequential(c);
+            boolean decisive = c instanceof OrGroupCheckCondition;
+
+            int last = frameLast[f];
+            if (last >= 0 && sequential && !frameDecided[f] && !frameUnknown[f]) {
+                if (states[last] == SKIPPED) {
+                    frameUnknown[f] = true;
+                } else if ((states[last] == TRUE) == decisive) {
+                    frameDecided[f] = true;
+                }
+            }
+            int next = frameNext[f];
+            if (!sequential) {
+                // only the conditions that were checked
+                while (next < end && context.getRecorded(order.get(next)) == null) {
+                    next += sizes[next];
+                }
+            }
+            if (frameDecided[f] || frameUnknown[f] || next >= end) {
+                Boolean recorded = c == null ? Boolean.valueOf(result) : context.getRecorded(c);
+                if (recorded != null) {
+                    states[node] = recorded.booleanValue() ? TRUE : FALSE;
+                } else if (!sequential || frameUnknown[f]) {
+                    states[node] = SKIPPED;
+                } else {
+                    boolean value = frameDecided[f] ? decisive : !decisive;
+                    boolean negate = c == null ? checker.negate : negateOf(c);
+                    states[node] = value != negate ? TRUE : FALSE;
+                }
+                sp--;
+                continue;
+            }
+
+            frameNext[f] = next + sizes[next];
+            frameLast[f] = next;
+            CheckCondition child = order.get(next);
+            if (childrenOf(child) != null) {
+                frameNode[sp] = next;
+                frameNext[sp] = next + 1;
+                frameLast[sp] = -1;
+                frameDecided[sp] = false;
+                frameUnknown[sp] = false;
+                sp++;
+            } else {
+                Boolean recorded = child == null ? null : context.getRecorded(child);
+                states[next] = recorded == null ? SKIPPED : recorded.booleanValue() ? TRUE : FALSE;
+            }
+        }
+        return states;
+    }
+
+    /**
+     * Returns true for groups that check their conditions one after another
+     * as part of the program of the checker.
+     */
+    private static boolean isSequential(CheckCondition c) {
+        if (c.getClass() == AndGroupCheckCondition.class) {
+            AndGroupCheckCondition g = (AndGroupCheckCondition) c;
+            return !g.parallel && !g.reorder;
+        }
+        if (c.getClass() == OrGroupCheckCondition.class) {
+            OrGroupCheckCondition g = (OrGroupCheckCondition) c;
+            return !g.parallel && !g.reorder;
+        }
+        return c.getClass() == TimeoutCheckCondition.class;
+    }
+
+    private static boolean negateOf(CheckCondition c) {
+        if (c instanceof AndGroupCheckCondition) {
+            return ((AndGroupCheckCondition) c).negate;
+        }
+        if (c instanceof OrGroupCheckCondition) {
+            return ((OrGroupCheckCondition) c).negate;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,96 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Unmodifiable copy of the conditions of a checker or group, taken the first
+ * time they are checked and then shared by every build checking them at the
+ * same time.
+ *
+ * The conditions are held in a final array, so a snapshot seen by any thread
+ * is complete without locking, and checks do not see later changes made to
+ * the configured list. Lists read by XStream keep their type, so the configured
+ * lists stay <tt>ArrayList</tt>s and the snapshot is taken from them.
+ *
+ * @author Chris Johnson
+ */
+public final class ConditionSnapshot extends AbstractList<CheckCondition> implements RandomAccess {
+    /**
+     * Snapshot of a missing or empty list
+     */
+    public static final ConditionSnapshot EMPTY = new ConditionSnapshot(new CheckCondition[0]);
+
+    private final CheckCondition[] conditions;
+
+    private ConditionSnapshot(CheckCondition[] conditions) {
+        this.conditions = conditions;
+    }
+
+    /**
+     * Returns a snapshot of the conditions.
+     *
+     * @param conditions - list of conditions, may be null
+     */
+    public static ConditionSnapshot of(List<CheckCondition> conditions) {
+        if (conditions instanceof ConditionSnapshot) {
+            return (ConditionSnapshot) conditions;
+        }
+        if (conditions == null || conditions.isEmpty()) {
+            return EMPTY;
+        }
+        return new ConditionSnapshot(conditions.toArray(new CheckCondition[conditions.size()]));
+    }
+
+    @Override
+    public CheckCondition get(int index) {
+        return conditions[index];
+    }
+
+    @Override
+    public int size() {
+        return conditions.length;
+    }
+
+    /**
+     * Returns true if the configured list still holds the same conditions,
+     * in the same order, as when the snapshot was taken.
+     *
+     * @param conditions - list of conditions, may be null
+     */
+    public boolean matches(List<CheckCondition> conditions) {
+        int size = conditions == null ? 0 : conditions.size();
+        if (size != this.conditions.length) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (conditions.get(i) != this.conditions[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
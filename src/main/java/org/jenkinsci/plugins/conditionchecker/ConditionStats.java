@@ -0,0 +1,126 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latency histogram for checks of a condition.
+ *
+ * The counters are split into stripes picked by thread, so that builds
+ * checking the same condition at the same time do not contend on the
+ * same memory; the stripes are summed when read.
+ *
+ * @author Chris Johnson
+ */
+public final class ConditionStats {
+    public static final int CALLS = 0;
+    public static final int TRUE = 1;
+    public static final int FALSE = 2;
+    public static final int EXCEPTIONS = 3;
+    public static final int NANOS = 4;
+    /**
+     * Number of latency buckets, bucket i counts checks taking
+     * less than 2^i microseconds, the last one counts everything longer
+     */
+    public static final int BUCKETS = 24;
+
+    private static final int FIRST_BUCKET = 5;
+    /**
+     * longs per stripe, padded to a multiple of a cache line
+     */
+    private static final int WIDTH = 32;
+
+    private final int mask;
+    private final AtomicLongArray cells;
+
+    /**
+     * @param stripes - number of stripes, rounded up to a power of two
+     */
+    public ConditionStats(int stripes) {
+        int n = 1;
+        while (n < stripes) {
+            n <<= 1;
+        }
+        mask = n - 1;
+        cells = new AtomicLongArray(n * WIDTH);
+    }
+
+    /**
+     * Records a check.
+     *
+     * @param nanos - time taken
+     * @param result - {@link #TRUE}, {@link #FALSE} or {@link #EXCEPTIONS}
+     */
+    public void record(long nanos, int result) {
+        int base = stripe() * WIDTH;
+        cells.incrementAndGet(base + CALLS);
+        cells.incrementAndGet(base + result);
+        cells.addAndGet(base + NANOS, nanos);
+        cells.incrementAndGet(base + FIRST_BUCKET + bucket(nanos));
+    }
+
+    /**
+     * Returns a counter summed over all stripes.
+     *
+     * @param field - {@link #CALLS}, {@link #TRUE}, {@link #FALSE}, {@link #EXCEPTIONS} or {@link #NANOS}
+     */
+    public long get(int field) {
+        long sum = 0;
+        for (int base = 0; base < cells.length(); base += WIDTH) {
+            sum += cells.get(base + field);
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the latency histogram, see {@link #BUCKETS}.
+     */
+    public long[] getHistogram() {
+        long[] histogram = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram[i] = get(FIRST_BUCKET + i);
+        }
+        return histogram;
+    }
+
+    /**
+     * Clears all the counters.
+     */
+    public void reset() {
+        for (int i = 0; i < cells.length(); i++) {
+            cells.set(i, 0);
+        }
+    }
+
+    static int bucket(long nanos) {
+        long micros = nanos / 1000;
+        int b = 64 - Long.numberOfLeadingZeros(micros);
+        return b < BUCKETS ? b : BUCKETS - 1;
+    }
+
+    private int stripe() {
+        long id = Thread.currentThread().getId();
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+    }
+}
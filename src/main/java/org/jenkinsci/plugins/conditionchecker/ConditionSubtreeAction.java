@@ -0,0 +1,309 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import hudson.Extension;
+import hudson.model.AbstractProject;
+import hudson.model.Action;
+import hudson.model.Descriptor;
+import hudson.model.Item;
+import hudson.model.TransientProjectActionFactory;
+import hudson.model.listeners.ItemListener;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import net.sf.json.JSONObject;
+
+import org.kohsuke.stapler.Stapler;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Serves the configuration of collapsed groups of conditions at
+ * <tt>/job/NAME/condition-subtree/ID/</tt>, so large trees only render the
+ * groups that are expanded.
+ *
+ * A group that contains conditions is shown collapsed on the configuration
+ * page, with a hidden <tt>collapsed</tt> field holding an ID for the group.
+ * Expanding it fetches the markup of its configuration, which shows the
+ * groups it contains collapsed in turn. When the form is saved, a group
+ * still collapsed is replaced by the configured group it was shown for,
+ * so its conditions never go through the form.
+ *
+ * The IDs are kept for the most recently shown groups, a form saved after its
+ * groups have been dropped is rejected and has to be reloaded. Only the name of
+ * the job and a weak reference to the group are kept, so neither stays in memory
+ * for the IDs, and the IDs of a job are dropped when it is deleted or renamed.
+ * Collapsing can be turned off with the
+ * <tt>org.jenkinsci.plugins.conditionchecker.ConditionSubtreeAction.disabled</tt> system property.
+ *
+ * Showing a group, and saving a form with it still collapsed, needs the
+ * configure permission of the job, and a collapsed group can only be saved
+ * into the job it was shown for.
+ *
+ * @author Chris Johnson
+ */
+public class ConditionSubtreeAction implements Action {
+    static final boolean DISABLED = Boolean.getBoolean(ConditionSubtreeAction.class.getName() + ".disabled");
+
+    /**
+     * Maximum number of collapsed groups remembered
+     */
+    static final int MAX_SUBTREES = Integer.getInteger(ConditionSubtreeAction.class.getName() + ".max", 10000);
+
+    /**
+     * collapsed groups by ID, least recently used first
+     */
+    private static final Map<String, Registered> SUBTREES = new LinkedHashMap<String, Registered>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Registered> eldest) {
+            return size() > MAX_SUBTREES;
+        }
+    };
+
+    private final AbstractProject<?,?> project;
+
+    public ConditionSubtreeAction(AbstractProject<?,?> project) {
+        this.project = project;
+    }
+
+    public String getIconFileName() {
+        // not shown in the side panel
+        return null;
+    }
+
+    public String getDisplayName() {
+        return "Condition subtree";
+    }
+
+    public String getUrlName() {
+        return "condition-subtree";
+    }
+
+    /**
+     * Returns the collapsed group with the ID, whose <tt>index.jelly</tt>
+     * renders its configuration.
+     */
+    public Subtree getDynamic(String id, StaplerRequest req, StaplerResponse rsp) {
+        project.checkPermission(Item.CONFIGURE);
+        CheckCondition instance = lookup(id, project.getFullName());
+        if (instance == null) {
+            return null;
+        }
+        return new Subtree(project, instance);
+    }
+
+    /**
+     * Returns true if the configuration of the condition is shown collapsed.
+     *
+     * @param it - object the configuration page is for, only the pages of projects collapse groups
+     * @param instance - the condition shown, null for a new one
+     */
+    static boolean isCollapsible(Object it, CheckCondition instance) {
+        if (DISABLED || !(it instanceof AbstractProject) || instance == null) {
+            return false;
+        }
+        List<CheckCondition> children = ConditionMetrics.childrenOf(instance);
+        return children != null && !children.isEmpty();
+    }
+
+    /**
+     * Remembers a collapsed group.
+     *
+     * @return the ID of the group
+     */
+    static String register(AbstractProject<?,?> project, CheckCondition instance) {
+        String id = UUID.randomUUID().toString();
+        synchronized (SUBTREES) {
+            SUBTREES.put(id, new Registered(project.getFullName(), instance));
+        }
+        return id;
+    }
+
+    /**
+     * Returns the group with the ID if it was shown for the job.
+     *
+     * @return the group, or null if it is not known
+     */
+    private static CheckCondition lookup(String id, String projectName) {
+        Registered r;
+        synchronized (SUBTREES) {
+            r = SUBTREES.get(id);
+        }
+        return r == null || !r.projectName.equals(projectName) ? null : r.instance.get();
+    }
+
+    /**
+     * Drops the groups shown for a job, and for the jobs inside it.
+     */
+    static void forget(String projectName) {
+        String prefix = projectName + "/";
+        synchronized (SUBTREES) {
+            for (Iterator<Registered> i = SUBTREES.values().iterator(); i.hasNext();) {
+                String name = i.next().projectName;
+                if (name.equals(projectName) || name.startsWith(prefix)) {
+                    i.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the configured group a collapsed group in the form was shown for.
+     * The form must be saved to the job the group was shown for, by a user
+     * allowed to configure it.
+     *
+     * @param req - the request saving the form, null for the current request
+     * @param formData - form data of a group
+     *
+     * @return the group, or null if it was expanded
+     */
+    public static CheckCondition restore(StaplerRequest req, JSONObject formData) throws Descriptor.FormException {
+        String id = formData == null ? null : formData.optString("collapsed");
+        if (id == null || id.length() == 0) {
+            return null;
+        }
+        Registered registered;
+        synchronized (SUBTREES) {
+            registered = SUBTREES.get(id);
+        }
+        CheckCondition instance = registered == null ? null : registered.instance.get();
+        if (instance == null) {
+            throw new Descriptor.FormException(
+                    "The configuration page is out of date, reload it and make the changes again", "collapsed");
+        }
+        if (req == null) {
+            req = Stapler.getCurrentRequest();
+        }
+        AbstractProject<?,?> project = req == null ? null : req.findAncestorObject(AbstractProject.class);
+        if (project == null || !registered.projectName.equals(project.getFullName())) {
+            throw new Descriptor.FormException(
+                    "The collapsed conditions belong to another job, reload the page and make the changes again",
+                    "collapsed");
+        }
+        project.checkPermission(Item.CONFIGURE);
+        return instance;
+    }
+
+    /**
+     * Returns a short description of the conditions in a group.
+     */
+    static String summarize(CheckCondition instance) {
+        List<CheckCondition> children = ConditionMetrics.childrenOf(instance);
+        int direct = children == null ? 0 : children.size();
+        int total = 0;
+        List<CheckCondition> stack = new ArrayList<CheckCondition>();
+        if (children != null) {
+            stack.addAll(children);
+        }
+        while (!stack.isEmpty()) {
+            CheckCondition c = stack.remove(stack.size() - 1);
+            total++;
+            List<CheckCondition> l = c == null ? null : ConditionMetrics.childrenOf(c);
+            if (l != null) {
+                stack.addAll(l);
+            }
+        }
+        return direct == total
+                ? direct + " condition(s)"
+                : direct + " condition(s), " + total + " in total";
+    }
+
+    /**
+     * A remembered collapsed group, held weakly so it does not outlive
+     * the configuration it was shown from.
+     */
+    private static final class Registered {
+        final String projectName;
+        final WeakReference<CheckCondition> instance;
+
+        Registered(String projectName, CheckCondition instance) {
+            this.projectName = projectName;
+            this.instance = new WeakReference<CheckCondition>(instance);
+        }
+    }
+
+    /**
+     * A collapsed group being shown, with what its configuration is rendered with.
+     */
+    public static final class Subtree {
+        private final AbstractProject<?,?> project;
+        private final CheckCondition instance;
+
+        Subtree(AbstractProject<?,?> project, CheckCondition instance) {
+            this.project = project;
+            this.instance = instance;
+        }
+
+        public AbstractProject<?,?> getProject() {
+            return project;
+        }
+
+        public CheckCondition getInstance() {
+            return instance;
+        }
+
+        public CheckConditionDescriptor getDescriptor() {
+            return instance.getDescriptor();
+        }
+    }
+
+    /**
+     * Drops the groups of jobs that are deleted or renamed.
+     */
+    @Extension
+    public static final class JobListener extends ItemListener {
+        @Override
+        public void onDeleted(Item item) {
+            forget(item.getFullName());
+        }
+
+        @Override
+        public void onRenamed(Item item, String oldName, String newName) {
+            String fullName = item.getFullName();
+            // the full name the job had, in the same folder
+            forget(fullName.substring(0, fullName.length() - newName.length()) + oldName);
+        }
+    }
+
+    /**
+     * Adds the action to jobs with a {@link ConditionChecker}.
+     */
+    @Extension
+    public static class Factory extends TransientProjectActionFactory {
+        @Override
+        public Collection<? extends Action> createFor(AbstractProject target) {
+            if (target.getPublishersList().get(ConditionChecker.class) == null) {
+                return Collections.emptyList();
+            }
+            return Collections.singletonList(new ConditionSubtreeAction(target));
+        }
+    }
+}
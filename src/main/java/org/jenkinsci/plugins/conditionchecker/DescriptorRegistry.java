@@ -0,0 +1,218 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import hudson.DescriptorExtensionList;
+import hudson.Extension;
+import hudson.model.AbstractProject;
+import hudson.model.Hudson;
+import hudson.model.listeners.ItemListener;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Caches the lookups of {@link CheckConditionDescriptor}s, so configuration
+ * pages with many nested groups do not scan the extension list again for
+ * every dropdown.
+ *
+ * The cache is thrown away whenever the registered descriptors change,
+ * which is noticed by the descriptor list being replaced or growing,
+ * and when Jenkins reloads its configuration.
+ * Whether the descriptors of this plugin are applicable is cached per type
+ * of project, as their {@link CheckConditionDescriptor#isApplicable(AbstractProject)}
+ * only depends on the type of the project. Descriptors from other plugins
+ * may look at the project itself, so they are asked every time.
+ *
+ * @author Chris Johnson
+ */
+public final class DescriptorRegistry {
+    private static volatile Snapshot snapshot;
+    private static volatile Snapshot standalone;
+
+    private DescriptorRegistry() {
+    }
+
+    /**
+     * Returns the descriptors applicable to the given project.
+     *
+     * @param p - the project, may be null
+     */
+    public static List<CheckConditionDescriptor> getApplicable(AbstractProject<?,?> p) {
+        Snapshot s = current();
+        if (s == null) {
+            return Collections.emptyList();
+        }
+        Class<?> key = p == null ? Void.class : p.getClass();
+        List<CheckConditionDescriptor> r = s.applicable.get(key);
+        if (r == null) {
+            // this plugin's descriptors, with the others left to be asked below
+            List<CheckConditionDescriptor> l = new ArrayList<CheckConditionDescriptor>();
+            for (int i = 0; i < s.all.length; i++) {
+                CheckConditionDescriptor t = s.all[i];
+                if(!s.own[i] || t.isApplicable(p))
+                    l.add(t);
+            }
+            r = Collections.unmodifiableList(l);
+            s.applicable.put(key, r);
+        }
+        if (!s.foreign) {
+            return r;
+        }
+        List<CheckConditionDescriptor> l = new ArrayList<CheckConditionDescriptor>(r.size());
+        for (CheckConditionDescriptor t : r) {
+            if(isOwn(t) || t.isApplicable(p))
+                l.add(t);
+        }
+        return Collections.unmodifiableList(l);
+    }
+
+    /**
+     * Returns true if the descriptor comes from this plugin.
+     */
+    private static boolean isOwn(CheckConditionDescriptor d) {
+        return d.getClass().getClassLoader() == DescriptorRegistry.class.getClassLoader();
+    }
+
+    /**
+     * Returns the descriptor of a type of condition.
+     *
+     * @return the descriptor, or null when Jenkins is not running
+     *         and no standalone descriptors were set
+     */
+    public static CheckConditionDescriptor get(Class<? extends CheckCondition> type) {
+        Snapshot s = current();
+        if (s == null) {
+            return null;
+        }
+        CheckConditionDescriptor d = s.byClass.get(type);
+        if (d == null) {
+            for (CheckConditionDescriptor t : s.all) {
+                if (t.clazz == type) {
+                    d = t;
+                    break;
+                }
+            }
+            if (d == null && s.hudson != null) {
+                d = (CheckConditionDescriptor) s.hudson.getDescriptor(type);
+            }
+            if (d != null) {
+                s.byClass.put(type, d);
+            }
+        }
+        return d;
+    }
+
+    /**
+     * Throws away the cache.
+     */
+    public static void invalidate() {
+        snapshot = null;
+    }
+
+    /**
+     * Sets the descriptors used when Jenkins is not running, so benchmarks
+     * and tests check conditions the way a running Jenkins would.
+     *
+     * @param descriptors - the descriptors, or null for none
+     */
+    public static void setStandalone(List<CheckConditionDescriptor> descriptors) {
+        standalone = descriptors == null ? null : new Snapshot(null, descriptors);
+    }
+
+    private static Snapshot current() {
+        Hudson hudson = Hudson.getInstance();
+        if (hudson == null) {
+            return standalone;
+        }
+        DescriptorExtensionList<CheckCondition,CheckConditionDescriptor> list =
+                hudson.<CheckCondition,CheckConditionDescriptor>getDescriptorList(CheckCondition.class);
+        Snapshot s = snapshot;
+        if (s == null || !s.isFor(hudson, list)) {
+            s = new Snapshot(hudson, list);
+            snapshot = s;
+        }
+        return s;
+    }
+
+    /**
+     * Lookups made from one set of registered descriptors.
+     */
+    private static final class Snapshot {
+        final Hudson hudson;
+        final List<CheckConditionDescriptor> list;
+        final CheckConditionDescriptor[] all;
+        /**
+         * true for the descriptors of this plugin
+         */
+        final boolean[] own;
+        /**
+         * true if any descriptor comes from another plugin
+         */
+        final boolean foreign;
+        /**
+         * per type of project, this plugin's applicable descriptors and
+         * all descriptors from other plugins
+         */
+        final ConcurrentMap<Class<?>, List<CheckConditionDescriptor>> applicable =
+                new ConcurrentHashMap<Class<?>, List<CheckConditionDescriptor>>();
+        final ConcurrentMap<Class<?>, CheckConditionDescriptor> byClass =
+                new ConcurrentHashMap<Class<?>, CheckConditionDescriptor>();
+
+        Snapshot(Hudson hudson, List<CheckConditionDescriptor> list) {
+            this.hudson = hudson;
+            this.list = list;
+            this.all = list.toArray(new CheckConditionDescriptor[list.size()]);
+            this.own = new boolean[all.length];
+            boolean f = false;
+            for (int i = 0; i < all.length; i++) {
+                own[i] = isOwn(all[i]);
+                f |= !own[i];
+            }
+            this.foreign = f;
+        }
+
+        /**
+         * Returns true if the descriptors are still the same ones. Jenkins
+         * keeps one list per type of extension and only adds to it, so
+         * comparing the list and its size is enough and does not depend on
+         * the number of descriptors.
+         */
+        boolean isFor(Hudson hudson, List<CheckConditionDescriptor> list) {
+            return this.hudson == hudson && this.list == list && list.size() == all.length;
+        }
+    }
+
+    /**
+     * Throws away the cache when Jenkins reloads its configuration.
+     */
+    @Extension
+    public static final class ReloadListener extends ItemListener {
+        @Override
+        public void onLoaded() {
+            invalidate();
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import hudson.Extension;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.RunListener;
+import hudson.model.listeners.SCMListener;
+import hudson.scm.ChangeLogSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jenkinsci.plugins.conditionchecker.conditions.TimeoutCheckCondition;
+
+/**
+ * Checks conditions before the {@link ConditionChecker} gets to them, as soon
+ * as the build events they depend on have happened.
+ *
+ * Conditions declare their dependencies through
+ * {@link CheckConditionDescriptor#getDependencies()}, which is enough to have
+ * them checked early. When a build event happens, every condition of the job's
+ * checkers whose dependencies have all happened is checked in the background,
+ * within the checker's time budget, and the result is stored in the
+ * {@link BuildEvaluationCache} of the build, so that the checker only has to
+ * read it. A condition that fails is simply left for the checker.
+ * Conditions inside a {@link TimeoutCheckCondition} are left for the checker too,
+ * as their time limit only starts when the group is checked.
+ * Once the results checked early decide a checker, its result is recorded as an
+ * early {@link ConditionResultAction}, see {@link ConditionChecker#recordEarly}.
+ * Early checks can be turned off with the
+ * <tt>org.jenkinsci.plugins.conditionchecker.EarlyEvaluation.disabled</tt> system property.
+ *
+ * @author Chris Johnson
+ */
+public final class EarlyEvaluation {
+    private static final Logger LOGGER = Logger.getLogger(EarlyEvaluation.class.getName());
+
+    static final boolean DISABLED = Boolean.getBoolean(EarlyEvaluation.class.getName() + ".disabled");
+
+    /**
+     * events that have happened for each running build
+     */
+    private static final Map<AbstractBuild, Set<BuildEvent>> EVENTS =
+            Collections.synchronizedMap(new WeakHashMap<AbstractBuild, Set<BuildEvent>>());
+
+    private EarlyEvaluation() {
+    }
+
+    /**
+     * Records a build event and starts checking the conditions it makes ready.
+     */
+    static void fire(final AbstractBuild build, BuildEvent event, TaskListener listener) {
+        if (DISABLED || build == null || build.getProject() == null || !(listener instanceof BuildListener)) {
+            return;
+        }
+        final Set<BuildEvent> happened;
+        synchronized (EVENTS) {
+            Set<BuildEvent> events = EVENTS.get(build);
+            if (events == null) {
+                events = EnumSet.noneOf(BuildEvent.class);
+                EVENTS.put(build, events);
+            }
+            events.add(event);
+            happened = EnumSet.copyOf(events);
+        }
+
+        final List<List<CheckCondition>> ready = new ArrayList<List<CheckCondition>>();
+        final List<ConditionChecker> checkers = new ArrayList<ConditionChecker>();
+        boolean any = false;
+        for (Object o : build.getProject().getPublishersList().getAll(ConditionChecker.class)) {
+            ConditionChecker checker = (ConditionChecker) o;
+            List<CheckCondition> r = new ArrayList<CheckCondition>();
+            collect(checker.getSnapshot(), event, happened, r);
+            checkers.add(checker);
+            ready.add(r);
+            any |= !r.isEmpty();
+        }
+        if (!any) {
+            return;
+        }
+        Node node = build.getBuiltOn();
+        if (node == null) {
+            return;
+        }
+        final BuildListener buildListener = (BuildListener) listener;
+        final Launcher launcher = node.createLauncher(listener);
+        ParallelEvaluator.execute(new Runnable() {
+            public void run() {
+                for (int i = 0; i < checkers.size(); i++) {
+                    EvaluationContext context = checkers.get(i).createContext();
+                    for (CheckCondition condition : ready.get(i)) {
+                        if (!build.isBuilding() || context.getRemainingNanos() <= 0) {
+                            break;
+                        }
+                        try {
+                            BuildEvaluationCache.isMetEarly(condition, build, launcher, buildListener, context);
+                        } catch (InterruptedException e) {
+                            return;
+                        } catch (Exception e) {
+                            LOGGER.log(Level.FINE, "Early check failed, left for the condition checker", e);
+                        }
+                    }
+                }
+                for (ConditionChecker checker : checkers) {
+                    if (!build.isBuilding()) {
+                        return;
+                    }
+                    checker.recordEarly(build);
+                }
+            }
+        });
+    }
+
+    /**
+     * Collects the leaf conditions that became ready with the event,
+     * those ready with an earlier event have already been checked.
+     */
+    private static void collect(List<CheckCondition> conditions, BuildEvent event,
+                    Set<BuildEvent> happened, List<CheckCondition> ready) {
+        if (conditions == null) {
+            return;
+        }
+        List<CheckCondition> stack = new ArrayList<CheckCondition>(conditions);
+        while (!stack.isEmpty()) {
+            CheckCondition c = stack.remove(stack.size() - 1);
+            if (c == null) {
+                continue;
+            }
+            if (c instanceof TimeoutCheckCondition) {
+                continue;
+            }
+            List<CheckCondition> children = ConditionMetrics.childrenOf(c);
+            if (children != null) {
+                stack.addAll(children);
+                continue;
+            }
+            CheckConditionDescriptor d = c.getDescriptor();
+            Set<BuildEvent> dependencies = d == null ? null : d.getDependencies();
+            if (dependencies == null || !happened.containsAll(dependencies)) {
+                continue;
+            }
+            // ready now if this event was the last one needed
+            if (dependencies.contains(event) || (dependencies.isEmpty() && event == BuildEvent.STARTED)) {
+                ready.add(c);
+            }
+        }
+    }
+
+    /**
+     * Fires {@link BuildEvent#STARTED}.
+     */
+    @Extension
+    public static final class StartedListener extends RunListener<AbstractBuild> {
+        public StartedListener() {
+            super(AbstractBuild.class);
+        }
+
+        @Override
+        public void onStarted(AbstractBuild build, TaskListener listener) {
+            fire(build, BuildEvent.STARTED, listener);
+        }
+
+        @Override
+        public void onCompleted(AbstractBuild build, TaskListener listener) {
+            EVENTS.remove(build);
+        }
+    }
+
+    /**
+     * Fires {@link BuildEvent#CHECKOUT}.
+     */
+    static final class CheckoutListener extends SCMListener {
+        @Override
+        public void onChangeLogParsed(AbstractBuild<?,?> build, BuildListener listener, ChangeLogSet<?> changelog) {
+            fire(build, BuildEvent.CHECKOUT, listener);
+        }
+    }
+
+    /**
+     * Registers the {@link CheckoutListener}, as SCM listeners
+     * are not picked up through {@link Extension}.
+     */
+    @Extension
+    public static final class Registration extends ItemListener {
+        private static final AtomicBoolean REGISTERED = new AtomicBoolean();
+
+        @Override
+        public void onLoaded() {
+            if (REGISTERED.compareAndSet(false, true)) {
+                new CheckoutListener().register();
+            }
+        }
+    }
+}
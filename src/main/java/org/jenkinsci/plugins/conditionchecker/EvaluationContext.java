@@ -0,0 +1,427 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import hudson.model.AbstractBuild;
+import hudson.Launcher;
+import hudson.model.BuildListener;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jenkinsci.plugins.conditionchecker.conditions.ThresholdGroupCheckCondition;
+import org.jenkinsci.plugins.conditionchecker.conditions.TimeoutCheckCondition;
+
+/**
+ * State of a single check of a condition tree, passed down from the
+ * {@link ConditionChecker} through the groups to every condition.
+ *
+ * It carries the time limits: the time budget of the checker and
+ * the timeouts set by {@link TimeoutCheckCondition}s, each one creating
+ * a nested context with its own limit. When a limit is set, conditions are
+ * checked on a separate thread so that one running past the limit can be
+ * interrupted and left behind.
+ *
+ * It also carries the {@link BuildFacts} shared by the conditions,
+ * so facts such as the environment are only worked out once per check.
+ *
+ * @author Chris Johnson
+ */
+public final class EvaluationContext {
+    /**
+     * Threads for checks with a time limit, not bounded so a hung
+     * check can never hold up the others
+     */
+    private static final ExecutorService TIMED = Executors.newCachedThreadPool(
+            ParallelEvaluator.threadFactory("ConditionChecker timed check #"));
+    /**
+     * Timer that fails asynchronous checks running past their limit
+     */
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(
+            ParallelEvaluator.threadFactory("ConditionChecker timeout #"));
+
+    /**
+     * Context of checks made on their own, see {@link #none()}
+     */
+    private static final EvaluationContext NONE = new EvaluationContext(true);
+
+    /**
+     * true for {@link #NONE}, which keeps nothing between checks
+     */
+    private final boolean shared;
+    /**
+     * context with the earliest deadline, this one or one of the parents,
+     * null if there is no limit
+     */
+    private final EvaluationContext limit;
+    private final long deadline;
+    private final long nanos;
+    private final TimeoutResult timeoutResult;
+    private final String limitName;
+    /**
+     * timeouts of the whole check, shared by the nested contexts
+     */
+    private final List<String> timeouts;
+    /**
+     * result of each condition checked, by identity, null unless tracing
+     */
+    private Map<CheckCondition, Boolean> trace;
+    /**
+     * facts of the build being checked, shared by the nested contexts,
+     * null for {@link #NONE}
+     */
+    private final AtomicReference<BuildFacts> facts;
+
+    /**
+     * Creates the context for a check without a time limit.
+     */
+    public EvaluationContext() {
+        this(false);
+    }
+
+    private EvaluationContext(boolean shared) {
+        this.shared = shared;
+        this.limit = null;
+        this.deadline = 0;
+        this.nanos = 0;
+        this.timeoutResult = null;
+        this.limitName = null;
+        this.timeouts = Collections.synchronizedList(new ArrayList<String>());
+        this.facts = shared ? null : new AtomicReference<BuildFacts>();
+    }
+
+    /**
+     * Returns the context for a condition checked on its own, outside of a
+     * {@link ConditionChecker}, without a time limit. It is shared, so checking
+     * a condition this way does not allocate a context; facts are not shared
+     * between the conditions and {@link #trace()} returns a new context.
+     */
+    public static EvaluationContext none() {
+        return NONE;
+    }
+
+    /**
+     * Creates the context for a check with a time limit.
+     *
+     * @param nanos - time allowed for the check
+     * @param timeoutResult - what to do when the time runs out
+     * @param limitName - description of the limit for the build log
+     */
+    public EvaluationContext(long nanos, TimeoutResult timeoutResult, String limitName) {
+        this(null, nanos, timeoutResult, limitName);
+    }
+
+    private EvaluationContext(EvaluationContext parent, long nanos, TimeoutResult timeoutResult, String limitName) {
+        if (parent != null && parent.shared) {
+            parent = null;
+        }
+        this.shared = false;
+        this.deadline = System.nanoTime() + nanos;
+        this.nanos = nanos;
+        this.timeoutResult = timeoutResult;
+        this.limitName = limitName;
+        this.timeouts = parent != null ? parent.timeouts : Collections.synchronizedList(new ArrayList<String>());
+        this.trace = parent != null ? parent.trace : null;
+        this.facts = parent != null ? parent.facts : new AtomicReference<BuildFacts>();
+        EvaluationContext outer = parent != null ? parent.limit : null;
+        this.limit = outer != null && outer.deadline - deadline < 0 ? outer : this;
+    }
+
+    /**
+     * Returns a nested context with an extra time limit,
+     * the earlier of it and the limits of this context applies.
+     */
+    public EvaluationContext withTimeout(long nanos, TimeoutResult timeoutResult, String limitName) {
+        return new EvaluationContext(this, nanos, timeoutResult, limitName);
+    }
+
+    /**
+     * Returns the time left before the earliest limit, or {@link Long#MAX_VALUE} if there is none.
+     */
+    public long getRemainingNanos() {
+        return limit == null ? Long.MAX_VALUE : limit.deadline - System.nanoTime();
+    }
+
+    /**
+     * Returns what to do when the limit set by this context is exceeded.
+     */
+    public TimeoutResult getTimeoutResult() {
+        return timeoutResult;
+    }
+
+    /**
+     * Returns the descriptions of the conditions that ran out of time.
+     */
+    public List<String> getTimeouts() {
+        synchronized (timeouts) {
+            return new ArrayList<String>(timeouts);
+        }
+    }
+
+    /**
+     * Returns the facts of the build being checked, shared by every condition
+     * of the check so each one is only worked out once.
+     *
+     * @param build - the build being checked
+     * @param listener - listener of the check
+     */
+    public BuildFacts facts(AbstractBuild build, BuildListener listener) {
+        if (facts == null) {
+            return new BuildFacts(build, listener);
+        }
+        BuildFacts f = facts.get();
+        if (f == null) {
+            facts.compareAndSet(null, new BuildFacts(build, listener));
+            f = facts.get();
+        }
+        if (f.getBuild() != build) {
+            // not the build this context is checking, do not share
+            return new BuildFacts(build, listener);
+        }
+        return f;
+    }
+
+    /**
+     * Turns on recording of the result of every condition checked,
+     * must be called before the check starts.
+     *
+     * @return this context, or a new one for {@link #none()}
+     */
+    public EvaluationContext trace() {
+        if (shared) {
+            return new EvaluationContext().trace();
+        }
+        if (trace == null) {
+            trace = Collections.synchronizedMap(new IdentityHashMap<CheckCondition, Boolean>());
+        }
+        return this;
+    }
+
+    /**
+     * Returns true if the result of every condition checked is recorded.
+     */
+    public boolean isTracing() {
+        return trace != null;
+    }
+
+    /**
+     * Records the result of a condition, if tracing.
+     */
+    public void record(CheckCondition condition, boolean result) {
+        if (trace != null) {
+            trace.put(condition, Boolean.valueOf(result));
+        }
+    }
+
+    /**
+     * Returns the recorded result of a condition, or null if it was not checked
+     * or the context is not tracing.
+     */
+    public Boolean getRecorded(CheckCondition condition) {
+        return trace == null ? null : trace.get(condition);
+    }
+
+    /**
+     * Checks a condition within the time limit.
+     *
+     * Groups are checked on the calling thread, as they pass the limit on
+     * to their own conditions, and so are conditions that do not depend on
+     * the build, see {@link #isInline}. Anything else is checked on a separate
+     * thread and interrupted when it runs past the limit.
+     *
+     * @throws ConditionTimeoutException if the limit was exceeded
+     */
+    public boolean isMet(final CheckCondition condition, final AbstractBuild build, final Launcher launcher,
+                    final BuildListener listener) throws IOException, InterruptedException {
+        EvaluationContext l = limit;
+        if (l == null || isInline(condition)) {
+            return condition.isMet(build, launcher, listener, this);
+        }
+        long remaining = l.deadline - System.nanoTime();
+        if (remaining <= 0) {
+            throw l.timedOut(condition, listener);
+        }
+        Future<Boolean> future = TIMED.submit(new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                return condition.isMet(build, launcher, listener, EvaluationContext.this);
+            }
+        });
+        try {
+            return future.get(remaining, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw l.timedOut(condition, listener);
+        } catch (ExecutionException e) {
+            throw ParallelEvaluator.rethrow(e);
+        } finally {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * Checks a condition through {@link CheckCondition#isMetAsync} within the time limit.
+     *
+     * The returned future fails with a {@link ConditionTimeoutException}
+     * when the condition runs past the limit, and the condition is cancelled.
+     */
+    public ConditionFuture isMetAsync(final CheckCondition condition, AbstractBuild build, Launcher launcher,
+                    final BuildListener listener) {
+        final EvaluationContext l = limit;
+        if (l == null || isInline(condition)) {
+            return condition.isMetAsync(build, launcher, listener, this);
+        }
+        long remaining = l.deadline - System.nanoTime();
+        if (remaining <= 0) {
+            return ConditionFuture.failed(l.timedOut(condition, listener));
+        }
+        final ConditionFuture future = condition.isMetAsync(build, launcher, listener, this);
+        if (future.isDone()) {
+            return future;
+        }
+        final ScheduledFuture<?> timer = TIMER.schedule(new Runnable() {
+            public void run() {
+                if (!future.isDone()) {
+                    future.abort(l.timedOut(condition, listener));
+                }
+            }
+        }, remaining, TimeUnit.NANOSECONDS);
+        future.addCallback(new ConditionFuture.Callback() {
+            public void done(ConditionFuture f) {
+                timer.cancel(false);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Adapts the blocking {@link CheckCondition#isMet} to a future, used by
+     * conditions that do not implement {@link CheckCondition#isMetAsync}.
+     *
+     * Without a time limit, or for conditions checked inline, the condition
+     * is checked on the calling thread, otherwise it is checked on a separate
+     * thread so it can be interrupted.
+     */
+    public ConditionFuture adapt(final CheckCondition condition, final AbstractBuild build,
+                    final Launcher launcher, final BuildListener listener) {
+        if (limit == null || isInline(condition)) {
+            try {
+                return ConditionFuture.completed(condition.isMet(build, launcher, listener, this));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return ConditionFuture.failed(e);
+            } catch (Exception e) {
+                return ConditionFuture.failed(e);
+            }
+        }
+        final ConditionFuture future = new ConditionFuture();
+        future.attach(TIMED.submit(new Runnable() {
+            public void run() {
+                try {
+                    future.complete(condition.isMet(build, launcher, listener, EvaluationContext.this));
+                } catch (Throwable t) {
+                    future.fail(t);
+                }
+            }
+        }));
+        return future;
+    }
+
+    /**
+     * Returns a future that replaces a timeout of the limit set by this
+     * context with the configured result, unless the build should fail.
+     */
+    public ConditionFuture recover(final ConditionFuture future) {
+        final ConditionFuture recovered = new ConditionFuture();
+        future.addCallback(new ConditionFuture.Callback() {
+            public void done(ConditionFuture f) {
+                Throwable failure = f.getFailure();
+                if (failure instanceof ConditionTimeoutException
+                        && ((ConditionTimeoutException) failure).getLimit() == EvaluationContext.this
+                        && timeoutResult != TimeoutResult.FAIL) {
+                    recovered.complete(timeoutResult == TimeoutResult.TRUE);
+                } else {
+                    recovered.copy(f);
+                }
+            }
+        });
+        recovered.addCallback(new ConditionFuture.Callback() {
+            public void done(ConditionFuture f) {
+                if (f.isCancelled()) {
+                    future.cancel(true);
+                }
+            }
+        });
+        return recovered;
+    }
+
+    /**
+     * Records a timeout of the limit set by this context.
+     */
+    private ConditionTimeoutException timedOut(CheckCondition condition, BuildListener listener) {
+        CheckConditionDescriptor d = condition.getDescriptor();
+        String message = (d != null ? d.getDisplayName() : condition.getClass().getName())
+                + " stopped after the " + limitName + " of "
+                + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms ran out";
+        timeouts.add(message);
+        listener.getLogger().println(message);
+        return new ConditionTimeoutException(message, this);
+    }
+
+    /**
+     * Returns true for conditions checked on the calling thread even with a
+     * time limit: groups, which pass the limit on, and conditions whose result
+     * does not depend on the build, which cannot run past any limit and would
+     * only pay for the hand off to another thread.
+     */
+    static boolean isInline(CheckCondition condition) {
+        if (isContainer(condition)) {
+            return true;
+        }
+        CheckConditionDescriptor d = condition.getDescriptor();
+        return d != null && d.isBuildIndependent();
+    }
+
+    /**
+     * Returns true for conditions that pass the context on to the
+     * conditions they contain.
+     */
+    static boolean isContainer(CheckCondition condition) {
+        Class<?> type = condition.getClass();
+        return type == AndGroupCheckCondition.class
+                || type == OrGroupCheckCondition.class
+                || type == ThresholdGroupCheckCondition.class
+                || type == TimeoutCheckCondition.class;
+    }
+}
@@ -0,0 +1,832 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import hudson.Extension;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.listeners.ItemListener;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only journal of the checks made by the {@link ConditionChecker}s of a job,
+ * kept in <tt>condition-journal.bin</tt> in the job's directory, so the results can
+ * be analysed over months without loading any builds.
+ *
+ * Every check appends a record of {@link #RECORD_SIZE} bytes holding the build
+ * number, the index of the checker in the job, the time the check started,
+ * how long it took, the result, and the met and skipped bits of the first
+ * {@link #MAX_NODES} nodes, numbered as by {@link ConditionResultAction}.
+ * Results known before the checker ran are recorded too, flagged as early,
+ * and those of builds that were not queued are recorded with a build number
+ * of {@link #NO_BUILD}, flagged as queued, as such builds never get a number.
+ * Records are written through a memory mapped region of the file, and the
+ * number of records in the header is only updated once a record is complete,
+ * so readers never see part of a record.
+ *
+ * Once a journal holds <tt>org.jenkinsci.plugins.conditionchecker.EvaluationJournal.records</tt>
+ * records (100000 by default) it is rotated to <tt>condition-journal.1.bin</tt>,
+ * keeping <tt>org.jenkinsci.plugins.conditionchecker.EvaluationJournal.files</tt>
+ * old files (4 by default). {@link #compact} merges the files into one,
+ * dropping old records and all but the last check of a build by each checker.
+ * The file of a journal is closed once no check has been appended for
+ * <tt>org.jenkinsci.plugins.conditionchecker.EvaluationJournal.idleSeconds</tt>
+ * (300 by default), and when its job is deleted or renamed.
+ * The journal can be turned off with the
+ * <tt>org.jenkinsci.plugins.conditionchecker.EvaluationJournal.disabled</tt> system property.
+ *
+ * @author Chris Johnson
+ */
+public final class EvaluationJournal {
+    private static final Logger LOGGER = Logger.getLogger(EvaluationJournal.class.getName());
+
+    static final boolean DISABLED = Boolean.getBoolean(EvaluationJournal.class.getName() + ".disabled");
+
+    /**
+     * Number of records in a journal file before it is rotated
+     */
+    static final int ROTATE_RECORDS = Math.max(1, Math.min(10000000,
+            Integer.getInteger(EvaluationJournal.class.getName() + ".records", 100000)));
+
+    /**
+     * Number of rotated files kept
+     */
+    static final int KEEP_FILES = Math.max(0, Integer.getInteger(EvaluationJournal.class.getName() + ".files", 4));
+
+    /**
+     * Time after the last record before the file of a journal is closed
+     */
+    static final long IDLE_NANOS = TimeUnit.SECONDS.toNanos(Math.max(1,
+            Integer.getInteger(EvaluationJournal.class.getName() + ".idleSeconds", 300)));
+
+    /**
+     * Number of nodes whose results are kept in each record
+     */
+    public static final int MAX_NODES = 512;
+
+    /**
+     * Size of each record in bytes
+     */
+    public static final int RECORD_SIZE = 32 + 2 * (MAX_NODES / 8);
+
+    /**
+     * Build number of the records of builds that were not queued
+     */
+    public static final int NO_BUILD = -1;
+
+    static final String FILE_NAME = "condition-journal";
+
+    private static final int MAGIC = 0x43434a31; // "CCJ1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int COUNT_OFFSET = 16;
+
+    // offsets within a record
+    private static final int BUILD = 0;
+    private static final int CHECKER = 4;
+    private static final int OUTCOME = 6;
+    private static final int FLAGS = 7;
+    private static final int TIMESTAMP = 8;
+    private static final int DURATION = 16;
+    private static final int NODES = 24;
+    private static final int MET = 32;
+    private static final int SKIPPED = MET + MAX_NODES / 8;
+
+    private static final byte NOT_MET = 0;
+    private static final byte MET_RESULT = 1;
+    private static final byte FAILED = 2;
+    private static final byte TRUNCATED = 1;
+    private static final byte EARLY = 2;
+    private static final byte QUEUED = 4;
+
+    /**
+     * Number of records mapped at a time when appending
+     */
+    private static final int REGION_RECORDS = 4096;
+
+    private static final ConcurrentMap<File, EvaluationJournal> JOURNALS =
+            new ConcurrentHashMap<File, EvaluationJournal>();
+
+    /**
+     * Timer that closes the files of idle journals
+     */
+    private static final ScheduledExecutorService IDLE_TIMER = Executors.newSingleThreadScheduledExecutor(
+            ParallelEvaluator.threadFactory("ConditionChecker journal closer #"));
+
+    static {
+        IDLE_TIMER.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                closeIdle(System.nanoTime());
+            }
+        }, IDLE_NANOS, IDLE_NANOS / 2, TimeUnit.NANOSECONDS);
+    }
+
+    private final File dir;
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private MappedByteBuffer header;
+    private MappedByteBuffer region;
+    private long regionStart;
+    private long count;
+    /**
+     * time of the last record appended
+     */
+    private long lastUsed;
+    /**
+     * true once dropped from {@link #JOURNALS}, the journal registered since is used instead
+     */
+    private boolean dropped;
+
+    private EvaluationJournal(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Returns the journal of a job.
+     */
+    public static EvaluationJournal of(Job<?,?> job) {
+        return of(job.getRootDir());
+    }
+
+    /**
+     * Returns the journal kept in a directory.
+     */
+    static EvaluationJournal of(File dir) {
+        EvaluationJournal journal = JOURNALS.get(dir);
+        if (journal == null) {
+            journal = new EvaluationJournal(dir);
+            EvaluationJournal existing = JOURNALS.putIfAbsent(dir, journal);
+            if (existing != null) {
+                journal = existing;
+            }
+        }
+        return journal;
+    }
+
+    /**
+     * Closes and forgets the journal kept in a directory, so a new one
+     * is used if the directory is used again.
+     */
+    static void forget(File dir) {
+        EvaluationJournal journal = JOURNALS.get(dir);
+        if (journal != null) {
+            journal.drop();
+        }
+    }
+
+    /**
+     * Closes and forgets the journals whose directory no longer exists,
+     * as the job was deleted or renamed.
+     */
+    static void forgetMissing() {
+        for (EvaluationJournal journal : JOURNALS.values()) {
+            if (!journal.dir.exists()) {
+                journal.drop();
+            }
+        }
+    }
+
+    /**
+     * Closes the files of the journals not used since the idle time.
+     */
+    static void closeIdle(long now) {
+        for (EvaluationJournal journal : JOURNALS.values()) {
+            journal.closeIfIdle(now);
+        }
+    }
+
+    private synchronized void closeIfIdle(long now) {
+        if (channel != null && now - lastUsed > IDLE_NANOS) {
+            try {
+                close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Could not close the condition journal in " + dir, e);
+            }
+        }
+    }
+
+    private synchronized void drop() {
+        dropped = true;
+        JOURNALS.remove(dir, this);
+        try {
+            close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not close the condition journal in " + dir, e);
+        }
+    }
+
+    /**
+     * Appends the check of a build to the journal of its job, logging any failure
+     * as the journal must not fail the build.
+     *
+     * @param build - the build checked
+     * @param checker - the checker
+     * @param action - the results of the check
+     * @param failed - true if the check failed the build
+     * @param nanos - time taken by the check
+     */
+    static void record(AbstractBuild build, ConditionChecker checker, ConditionResultAction action,
+                    boolean failed, long nanos) {
+        if (DISABLED || build == null || build.getProject() == null) {
+            return;
+        }
+        try {
+            int index = ConditionResultAction.indexOf(build.getProject(), checker);
+            of(build.getProject()).append(build.getNumber(), index, action.getResult(), failed,
+                    build.getTimeInMillis(), nanos,
+                    action.getNodeCount(), action.getMetBits(), action.getSkippedBits(),
+                    action.isEarly() ? EARLY : 0);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not write the condition journal of " + build.getFullDisplayName(), e);
+        }
+    }
+
+    /**
+     * Appends the queue time check of a build that was not queued to the
+     * journal of its job, under {@link #NO_BUILD}.
+     *
+     * @param project - the project of the build
+     * @param action - the results known at queue time
+     */
+    static void recordQueued(AbstractProject<?,?> project, ConditionResultAction action) {
+        if (DISABLED) {
+            return;
+        }
+        try {
+            of(project).append(NO_BUILD, action.getCheckerIndex(), action.getResult(), false,
+                    System.currentTimeMillis(), 0,
+                    action.getNodeCount(), action.getMetBits(), action.getSkippedBits(), EARLY | QUEUED);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not write the condition journal of " + project.getFullName(), e);
+        }
+    }
+
+    /**
+     * Appends a record.
+     *
+     * @param build - build number
+     * @param checker - index of the checker in the job, -1 if not known
+     * @param result - result of the check
+     * @param failed - true if the check failed the build
+     * @param timestamp - time the build started, in milliseconds
+     * @param nanos - time taken by the check
+     * @param nodes - number of nodes checked
+     * @param met - bits of the nodes that were met, may be null
+     * @param skipped - bits of the nodes that were skipped, may be null
+     */
+    public void append(int build, int checker, boolean result, boolean failed,
+                    long timestamp, long nanos, int nodes, long[] met, long[] skipped) throws IOException {
+        append(build, checker, result, failed, timestamp, nanos, nodes, met, skipped, 0);
+    }
+
+    /**
+     * Appends a record with flags, {@link #EARLY} and {@link #QUEUED}.
+     */
+    synchronized void append(int build, int checker, boolean result, boolean failed,
+                    long timestamp, long nanos, int nodes, long[] met, long[] skipped, int flags) throws IOException {
+        if (dropped) {
+            of(dir).append(build, checker, result, failed, timestamp, nanos, nodes, met, skipped, flags);
+            return;
+        }
+        lastUsed = System.nanoTime();
+        open();
+        if (count >= ROTATE_RECORDS) {
+            rotate();
+            open();
+        }
+        long position = HEADER_SIZE + count * RECORD_SIZE;
+        if (region == null || position + RECORD_SIZE > regionStart + region.capacity()) {
+            region = channel.map(FileChannel.MapMode.READ_WRITE, position, (long) REGION_RECORDS * RECORD_SIZE);
+            regionStart = position;
+        }
+        int offset = (int) (position - regionStart);
+        region.putInt(offset + BUILD, build);
+        region.putShort(offset + CHECKER, (short) checker);
+        region.put(offset + OUTCOME, failed ? FAILED : result ? MET_RESULT : NOT_MET);
+        region.put(offset + FLAGS, (byte) (flags | (nodes > MAX_NODES ? TRUNCATED : 0)));
+        region.putLong(offset + TIMESTAMP, timestamp);
+        region.putLong(offset + DURATION, nanos);
+        region.putInt(offset + NODES, Math.min(nodes, MAX_NODES));
+        region.putInt(offset + NODES + 4, 0);
+        putBits(region, offset + MET, met);
+        putBits(region, offset + SKIPPED, skipped);
+        // the record is complete, make it visible
+        count++;
+        header.putLong(COUNT_OFFSET, count);
+    }
+
+    private static void putBits(ByteBuffer buffer, int offset, long[] bits) {
+        for (int i = 0; i < MAX_NODES / 64; i++) {
+            buffer.putLong(offset + i * 8, bits != null && i < bits.length ? bits[i] : 0L);
+        }
+    }
+
+    /**
+     * Returns the number of records in the current file.
+     */
+    public synchronized long size() throws IOException {
+        if (dropped) {
+            return of(dir).size();
+        }
+        open();
+        return count;
+    }
+
+    /**
+     * Moves the current file to <tt>condition-journal.1.bin</tt>, shifting the
+     * older files and deleting the oldest, and starts an empty file.
+     */
+    public synchronized void rotate() throws IOException {
+        if (dropped) {
+            of(dir).rotate();
+            return;
+        }
+        // unmaps the file, so it can be truncated and renamed
+        close();
+        File current = fileOf(dir, 0);
+        if (!current.exists()) {
+            return;
+        }
+        trim(current);
+        File oldest = fileOf(dir, KEEP_FILES);
+        if (oldest.exists() && !oldest.delete()) {
+            throw new IOException("Could not delete " + oldest);
+        }
+        for (int i = KEEP_FILES - 1; i >= 0; i--) {
+            File from = fileOf(dir, i);
+            if (from.exists() && !from.renameTo(fileOf(dir, i + 1))) {
+                throw new IOException("Could not rename " + from);
+            }
+        }
+    }
+
+    /**
+     * Merges the current and rotated files into a single file, keeping only the
+     * records of checks made since the cutoff, and for each build only the last
+     * record of each checker. Every record of a build that was not queued is
+     * kept, as they belong to different builds.
+     *
+     * @param cutoff - time in milliseconds of the oldest build to keep, 0 to keep all
+     *
+     * @return the number of records kept
+     */
+    public synchronized long compact(final long cutoff) throws IOException {
+        if (dropped) {
+            return of(dir).compact(cutoff);
+        }
+        // unmaps the file, so it can be replaced
+        close();
+        // the last record of each build and checker, by position in the files
+        final Map<Long, Long> last = new HashMap<Long, Long>();
+        final long[] position = new long[1];
+        final long[] queued = new long[1];
+        scanFiles(new Visitor() {
+            public boolean record(Record r) {
+                if (r.getTimestamp() < cutoff) {
+                    // too old
+                } else if (r.isQueued()) {
+                    queued[0]++;
+                } else {
+                    last.put(Long.valueOf(keyOf(r)), Long.valueOf(position[0]));
+                }
+                position[0]++;
+                return true;
+            }
+        });
+
+        File tmp = new File(dir, FILE_NAME + ".tmp");
+        final RandomAccessFile out = new RandomAccessFile(tmp, "rw");
+        final long[] kept = new long[1];
+        try {
+            out.setLength(0);
+            final FileChannel outChannel = out.getChannel();
+            ByteBuffer head = ByteBuffer.allocate(HEADER_SIZE);
+            writeHeader(head, last.size() + queued[0]);
+            head.flip();
+            outChannel.write(head, 0);
+            position[0] = 0;
+            final IOException[] failure = new IOException[1];
+            scanFiles(new Visitor() {
+                public boolean record(Record r) {
+                    Long at = r.isQueued() ? null : last.get(Long.valueOf(keyOf(r)));
+                    if (r.isQueued() ? r.getTimestamp() >= cutoff : at != null && at.longValue() == position[0]) {
+                        try {
+                            outChannel.write(r.copy(), HEADER_SIZE + kept[0] * RECORD_SIZE);
+                        } catch (IOException e) {
+                            failure[0] = e;
+                            return false;
+                        }
+                        kept[0]++;
+                    }
+                    position[0]++;
+                    return true;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            outChannel.force(true);
+        } finally {
+            out.close();
+        }
+
+        for (int i = KEEP_FILES; i > 0; i--) {
+            File f = fileOf(dir, i);
+            if (f.exists() && !f.delete()) {
+                throw new IOException("Could not delete " + f);
+            }
+        }
+        File current = fileOf(dir, 0);
+        if (current.exists() && !current.delete()) {
+            throw new IOException("Could not delete " + current);
+        }
+        if (!tmp.renameTo(current)) {
+            throw new IOException("Could not rename " + tmp);
+        }
+        return kept[0];
+    }
+
+    private static long keyOf(Record r) {
+        return ((long) r.getBuildNumber() << 16) | (r.getChecker() & 0xffff);
+    }
+
+    /**
+     * Reads the records, oldest first, from the rotated files and the
+     * current file, without blocking checks that append to the journal.
+     */
+    public void scan(Visitor visitor) throws IOException {
+        List<FileChannel> channels = new ArrayList<FileChannel>();
+        List<Long> counts = new ArrayList<Long>();
+        List<RandomAccessFile> files = new ArrayList<RandomAccessFile>();
+        try {
+            // open every file at once, so rotation while reading does not skip records
+            synchronized (this) {
+                for (int i = KEEP_FILES; i >= 0; i--) {
+                    File f = fileOf(dir, i);
+                    if (!f.exists()) {
+                        continue;
+                    }
+                    RandomAccessFile raf = new RandomAccessFile(f, "r");
+                    files.add(raf);
+                    channels.add(raf.getChannel());
+                    counts.add(Long.valueOf(i == 0 && header != null ? count : countOf(raf.getChannel())));
+                }
+            }
+            Record record = new Record();
+            for (int i = 0; i < channels.size(); i++) {
+                if (!scan(channels.get(i), counts.get(i).longValue(), record, visitor)) {
+                    return;
+                }
+            }
+        } finally {
+            for (RandomAccessFile raf : files) {
+                raf.close();
+            }
+        }
+    }
+
+    private void scanFiles(Visitor visitor) throws IOException {
+        Record record = new Record();
+        for (int i = KEEP_FILES; i >= 0; i--) {
+            File f = fileOf(dir, i);
+            if (!f.exists()) {
+                continue;
+            }
+            RandomAccessFile raf = new RandomAccessFile(f, "r");
+            try {
+                if (!scan(raf.getChannel(), countOf(raf.getChannel()), record, visitor)) {
+                    return;
+                }
+            } finally {
+                raf.close();
+            }
+        }
+    }
+
+    private static boolean scan(FileChannel channel, long records, Record record, Visitor visitor)
+                    throws IOException {
+        // map a bounded number of records at a time
+        long batch = Integer.MAX_VALUE / RECORD_SIZE;
+        for (long start = 0; start < records; start += batch) {
+            long n = Math.min(batch, records - start);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                    HEADER_SIZE + start * RECORD_SIZE, n * RECORD_SIZE);
+            record.buffer = buffer;
+            try {
+                for (int i = 0; i < n; i++) {
+                    record.offset = i * RECORD_SIZE;
+                    if (!visitor.record(record)) {
+                        return false;
+                    }
+                }
+            } finally {
+                record.buffer = null;
+                unmap(buffer);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of complete records of a file, from its header.
+     */
+    private static long countOf(FileChannel channel) throws IOException {
+        if (channel.size() < HEADER_SIZE) {
+            return 0;
+        }
+        ByteBuffer head = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(head, 0);
+        checkHeader(head);
+        long records = head.getLong(COUNT_OFFSET);
+        return Math.max(0, Math.min(records, (channel.size() - HEADER_SIZE) / RECORD_SIZE));
+    }
+
+    private static void checkHeader(ByteBuffer head) throws IOException {
+        if (head.getInt(0) != MAGIC || head.getInt(4) != VERSION || head.getInt(8) != RECORD_SIZE) {
+            throw new IOException("Not a condition journal of this version");
+        }
+    }
+
+    private static void writeHeader(ByteBuffer head, long records) {
+        head.putInt(0, MAGIC);
+        head.putInt(4, VERSION);
+        head.putInt(8, RECORD_SIZE);
+        head.putLong(COUNT_OFFSET, records);
+        head.position(HEADER_SIZE);
+    }
+
+    private void open() throws IOException {
+        if (channel != null) {
+            return;
+        }
+        File f = fileOf(dir, 0);
+        file = new RandomAccessFile(f, "rw");
+        try {
+            channel = file.getChannel();
+            boolean created = channel.size() < HEADER_SIZE;
+            header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            if (created) {
+                writeHeader(header, 0);
+            } else {
+                checkHeader(header);
+            }
+            count = header.getLong(COUNT_OFFSET);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Closes the current file, it is opened again by the next record.
+     */
+    public synchronized void close() throws IOException {
+        unmap(header);
+        unmap(region);
+        header = null;
+        region = null;
+        channel = null;
+        if (file != null) {
+            RandomAccessFile f = file;
+            file = null;
+            f.close();
+        }
+    }
+
+    /**
+     * Releases a mapping straight away instead of when it is collected, as
+     * a mapped file can not be truncated, renamed or deleted on some systems.
+     * The buffer must not be used afterwards. Where the JVM does not allow
+     * this, the mapping is left to be released when it is collected.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner;
+            try {
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (NoSuchMethodException e) {
+                invokeCleaner = null;
+            }
+            if (invokeCleaner != null) {
+                // Java 9 and later
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                invokeCleaner.invoke(theUnsafe.get(null), buffer);
+                return;
+            }
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Could not unmap a condition journal, left for the garbage collector", e);
+        }
+    }
+
+    /**
+     * Drops the space mapped beyond the last record.
+     */
+    private static void trim(File f) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        try {
+            FileChannel c = raf.getChannel();
+            c.truncate(HEADER_SIZE + countOf(c) * RECORD_SIZE);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static File fileOf(File dir, int index) {
+        return new File(dir, index == 0 ? FILE_NAME + ".bin" : FILE_NAME + "." + index + ".bin");
+    }
+
+    /**
+     * Receives the records read from a journal.
+     */
+    public interface Visitor {
+        /**
+         * @param record - the record, only valid during the call
+         * @return true to read the next record, false to stop
+         */
+        boolean record(Record record);
+    }
+
+    /**
+     * A record read from a journal, reused for each record so reading
+     * a journal does not allocate.
+     */
+    public static final class Record {
+        private ByteBuffer buffer;
+        private int offset;
+
+        Record() {
+        }
+
+        /**
+         * Returns the number of the build, {@link #NO_BUILD} if it was not queued.
+         */
+        public int getBuildNumber() {
+            return buffer.getInt(offset + BUILD);
+        }
+
+        /**
+         * Returns the index of the checker in the job, -1 if it was not known.
+         */
+        public int getChecker() {
+            return buffer.getShort(offset + CHECKER);
+        }
+
+        /**
+         * Returns the result of the check.
+         */
+        public boolean getResult() {
+            return buffer.get(offset + OUTCOME) == MET_RESULT;
+        }
+
+        /**
+         * Returns true if the check failed the build, as its time budget ran out.
+         */
+        public boolean isFailed() {
+            return buffer.get(offset + OUTCOME) == FAILED;
+        }
+
+        /**
+         * Returns the time the build started, in milliseconds.
+         */
+        public long getTimestamp() {
+            return buffer.getLong(offset + TIMESTAMP);
+        }
+
+        /**
+         * Returns the time taken by the check, in nanoseconds.
+         */
+        public long getDuration() {
+            return buffer.getLong(offset + DURATION);
+        }
+
+        /**
+         * Returns the number of nodes whose results were kept.
+         */
+        public int getNodeCount() {
+            return buffer.getInt(offset + NODES);
+        }
+
+        /**
+         * Returns true if the checker had more than {@link #MAX_NODES} nodes.
+         */
+        public boolean isTruncated() {
+            return (buffer.get(offset + FLAGS) & TRUNCATED) != 0;
+        }
+
+        /**
+         * Returns true if the result was known before the checker ran,
+         * see {@link ConditionResultAction#isEarly()}.
+         */
+        public boolean isEarly() {
+            return (buffer.get(offset + FLAGS) & EARLY) != 0;
+        }
+
+        /**
+         * Returns true if the build was not queued as its conditions were known
+         * not to be met, the build number is then {@link #NO_BUILD}.
+         */
+        public boolean isQueued() {
+            return (buffer.get(offset + FLAGS) & QUEUED) != 0;
+        }
+
+        /**
+         * Returns the result of a node, by pre-order index as in {@link ConditionResultAction}.
+         *
+         * @return the result, or null if the node was skipped or was not kept
+         */
+        public Boolean isMet(int node) {
+            if (node < 0 || node >= getNodeCount()) {
+                return null;
+            }
+            int word = (node >> 6) * 8;
+            long bit = 1L << node;
+            if ((buffer.getLong(offset + SKIPPED + word) & bit) != 0) {
+                return null;
+            }
+            return Boolean.valueOf((buffer.getLong(offset + MET + word) & bit) != 0);
+        }
+
+        /**
+         * Returns a copy of the bytes of the record.
+         */
+        ByteBuffer copy() {
+            ByteBuffer copy = ByteBuffer.allocate(RECORD_SIZE);
+            for (int i = 0; i < RECORD_SIZE; i++) {
+                copy.put(buffer.get(offset + i));
+            }
+            copy.flip();
+            return copy;
+        }
+    }
+
+    /**
+     * Closes the journals of jobs that are deleted or renamed.
+     */
+    @Extension
+    public static final class JobListener extends ItemListener {
+        @Override
+        public void onDeleted(Item item) {
+            if (item instanceof Job) {
+                forget(item.getRootDir());
+            }
+            forgetMissing();
+        }
+
+        @Override
+        public void onRenamed(Item item, String oldName, String newName) {
+            // the journal is found again under the new directory
+            forgetMissing();
+        }
+    }
+}
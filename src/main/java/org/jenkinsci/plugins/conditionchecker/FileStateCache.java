@@ -0,0 +1,302 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Recently seen state of files on the master, shared by every build so that
+ * file conditions checked by many builds do not each go to the file system,
+ * which is often a shared network drive.
+ *
+ * Before a state is reused, the modification time of the file is read again
+ * and the state is only reused if it has not changed, as writing a file or
+ * adding or removing a file in a directory changes it. That single stat
+ * replaces listing the directory or reading the rest of the state. As some
+ * file systems only keep whole seconds, a state probed less than two seconds
+ * after the file was modified is only reused for
+ * <tt>org.jenkinsci.plugins.conditionchecker.FileStateCache.ttl</tt>
+ * milliseconds (2000 by default, 0 turns the cache off). At most
+ * <tt>org.jenkinsci.plugins.conditionchecker.FileStateCache.size</tt> states
+ * (1024 by default) are kept, dropping the least recently used.
+ *
+ * Builds asking for the same path at the same time wait for a single probe.
+ *
+ * @author Chris Johnson
+ */
+public final class FileStateCache {
+    /**
+     * Time a state of a recently modified file is reused, in nanoseconds
+     */
+    static final long TTL = TimeUnit.MILLISECONDS.toNanos(
+            Math.max(0, Long.getLong(FileStateCache.class.getName() + ".ttl", 2000L).longValue()));
+
+    /**
+     * Maximum number of states kept
+     */
+    static final int SIZE = Math.max(1, Integer.getInteger(FileStateCache.class.getName() + ".size", 1024));
+
+    /**
+     * Time since a directory was modified after which its modification time
+     * is trusted to show any change, as some file systems only keep whole seconds
+     */
+    private static final long SETTLED_MILLIS = 2000L;
+
+    private static final Map<String, Slot> ENTRIES = new LinkedHashMap<String, Slot>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Slot> eldest) {
+            return size() > SIZE;
+        }
+    };
+
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong PROBES = new AtomicLong();
+
+    private FileStateCache() {
+    }
+
+    /**
+     * Returns the state of a file on the master, probing it if the state
+     * kept is too old.
+     *
+     * @param file - the file or directory
+     * @param glob - pattern of the names to count in the directory, null to not count
+     */
+    public static State get(File file, String glob) {
+        if (TTL == 0) {
+            PROBES.incrementAndGet();
+            return State.probe(file, glob);
+        }
+        String key = glob == null ? file.getAbsolutePath() : file.getAbsolutePath() + '\0' + glob;
+        Slot entry;
+        synchronized (ENTRIES) {
+            entry = ENTRIES.get(key);
+            if (entry == null) {
+                entry = new Slot();
+                ENTRIES.put(key, entry);
+            }
+        }
+        synchronized (entry) {
+            long now = System.nanoTime();
+            State state = entry.state;
+            if (state != null && isCurrent(state, file.lastModified(), now - entry.probed < TTL)) {
+                HITS.incrementAndGet();
+                return state;
+            }
+            PROBES.incrementAndGet();
+            state = State.probe(file, glob);
+            entry.state = state;
+            entry.probed = now;
+            return state;
+        }
+    }
+
+    /**
+     * Returns true if a state is still the state of the file,
+     * given the modification time the file has now.
+     *
+     * @param fresh - the state was probed within the time to live
+     */
+    private static boolean isCurrent(State state, long modified, boolean fresh) {
+        if (!state.exists()) {
+            return modified == 0;
+        }
+        if (modified != state.getModified()) {
+            return false;
+        }
+        return fresh || state.getProbed() - modified > SETTLED_MILLIS;
+    }
+
+    /**
+     * Drops every state kept.
+     */
+    public static void clear() {
+        synchronized (ENTRIES) {
+            ENTRIES.clear();
+        }
+    }
+
+    /**
+     * Returns the number of states kept.
+     */
+    public static int size() {
+        synchronized (ENTRIES) {
+            return ENTRIES.size();
+        }
+    }
+
+    /**
+     * Returns the number of times a state was reused after only reading
+     * the modification time.
+     */
+    public static long getHits() {
+        return HITS.get();
+    }
+
+    /**
+     * Returns the number of times the file system was probed.
+     */
+    public static long getProbes() {
+        return PROBES.get();
+    }
+
+    /**
+     * Converts a pattern using <tt>*</tt>, <tt>?</tt> and <tt>[...]</tt> into
+     * a regular expression matching whole names.
+     */
+    public static Pattern compileGlob(String glob) {
+        StringBuilder regex = new StringBuilder();
+        boolean inClass = false;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (inClass) {
+                if (c == ']') {
+                    inClass = false;
+                    regex.append(c);
+                } else if (c == '\\' || c == '[' || c == '&') {
+                    regex.append('\\').append(c);
+                } else if (c == '!' && glob.charAt(i - 1) == '[') {
+                    regex.append('^');
+                } else {
+                    regex.append(c);
+                }
+                continue;
+            }
+            switch (c) {
+                case '*':
+                    regex.append(".*");
+                    break;
+                case '?':
+                    regex.append('.');
+                    break;
+                case '[':
+                    if (glob.indexOf(']', i + 1) > i + 1) {
+                        inClass = true;
+                        regex.append(c);
+                    } else {
+                        regex.append("\\[");
+                    }
+                    break;
+                default:
+                    regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    private static final class Slot {
+        State state;
+        long probed;
+    }
+
+    /**
+     * State of a file, or of a directory and the number of its entries matching a pattern.
+     */
+    public static final class State implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final boolean exists;
+        private final boolean directory;
+        private final long size;
+        private final long modified;
+        private final int matches;
+        private final long probed;
+
+        State(boolean exists, boolean directory, long size, long modified, int matches) {
+            this.exists = exists;
+            this.directory = directory;
+            this.size = size;
+            this.modified = modified;
+            this.matches = matches;
+            this.probed = System.currentTimeMillis();
+        }
+
+        /**
+         * Probes a file on the machine this runs on.
+         *
+         * @param file - the file or directory
+         * @param glob - pattern of the names to count in the directory, null to not count
+         */
+        public static State probe(File file, String glob) {
+            long modified = file.lastModified();
+            if (modified == 0 && !file.exists()) {
+                return new State(false, false, 0, 0, 0);
+            }
+            boolean directory = file.isDirectory();
+            int matches = 0;
+            if (directory && glob != null) {
+                final Pattern pattern = compileGlob(glob);
+                String[] names = file.list(new FilenameFilter() {
+                    public boolean accept(File dir, String name) {
+                        return pattern.matcher(name).matches();
+                    }
+                });
+                matches = names == null ? 0 : names.length;
+            }
+            return new State(true, directory, directory ? 0 : file.length(), modified, matches);
+        }
+
+        public boolean exists() {
+            return exists;
+        }
+
+        public boolean isDirectory() {
+            return directory;
+        }
+
+        /**
+         * Returns the size in bytes, 0 for a directory.
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Returns the modification time in milliseconds.
+         */
+        public long getModified() {
+            return modified;
+        }
+
+        /**
+         * Returns the number of entries of the directory matching the pattern.
+         */
+        public int getMatches() {
+            return matches;
+        }
+
+        /**
+         * Returns the time the state was probed in milliseconds.
+         */
+        public long getProbed() {
+            return probed;
+        }
+    }
+}
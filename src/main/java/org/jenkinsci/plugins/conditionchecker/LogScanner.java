@@ -0,0 +1,331 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Finds many patterns in a file, such as a build log, in a single pass.
+ *
+ * Literal patterns are found by an Aho-Corasick automaton over the bytes of
+ * the file, so the cost does not depend on the number of literals. Regular
+ * expressions are matched against each line, and lines are only decoded while
+ * a regular expression has not been found yet. The file is read in chunks of
+ * fixed size, so the memory used does not depend on the size of the file;
+ * lines longer than {@link #MAX_LINE} bytes are cut short for regular expressions.
+ *
+ * A scanner is immutable once compiled and can be used by many threads.
+ *
+ * @author Chris Johnson
+ */
+public final class LogScanner {
+    /**
+     * Size of the chunks the file is read in
+     */
+    static final int CHUNK = 64 * 1024;
+
+    /**
+     * Longest line matched against the regular expressions
+     */
+    static final int MAX_LINE = 64 * 1024;
+
+    /**
+     * Told about each pattern the first time it is found.
+     */
+    public interface Listener {
+        /**
+         * @param pattern - index of the pattern found
+         * @param found - every pattern found so far, including this one
+         * @return true to stop scanning, as the result is decided
+         */
+        boolean found(int pattern, BitSet found);
+    }
+
+    private final int count;
+    private final Charset charset;
+
+    // automaton over classes of bytes, bytes in no literal are class 0
+    private final int[] classOf = new int[256];
+    private final int classes;
+    private final int[] next;
+    // patterns ending in each state, and the next state with patterns on the fail path
+    private final int[][] outputs;
+    private final int[] outputLink;
+    // states where any pattern ends
+    private final boolean[] reports;
+
+    private final Pattern[] regexes;
+    private final int[] regexIds;
+
+    private LogScanner(int count, Charset charset, List<byte[]> literals, List<Integer> literalIds,
+                    List<Pattern> regexes, List<Integer> regexIds) {
+        this.count = count;
+        this.charset = charset;
+        this.regexes = regexes.toArray(new Pattern[regexes.size()]);
+        this.regexIds = new int[regexIds.size()];
+        for (int i = 0; i < this.regexIds.length; i++) {
+            this.regexIds[i] = regexIds.get(i).intValue();
+        }
+
+        int c = 1;
+        int states = 1;
+        for (byte[] literal : literals) {
+            states += literal.length;
+            for (byte b : literal) {
+                if (classOf[b & 0xff] == 0) {
+                    classOf[b & 0xff] = c++;
+                }
+            }
+        }
+        classes = c;
+
+        // trie
+        int[] trie = new int[states * classes];
+        Arrays.fill(trie, -1);
+        int[][] out = new int[states][];
+        int used = 1;
+        for (int i = 0; i < literals.size(); i++) {
+            int s = 0;
+            for (byte b : literals.get(i)) {
+                int t = s * classes + classOf[b & 0xff];
+                if (trie[t] < 0) {
+                    trie[t] = used++;
+                }
+                s = trie[t];
+            }
+            out[s] = append(out[s], literalIds.get(i).intValue());
+        }
+
+        // breadth first, filling in the missing moves from the fail state
+        int[] fail = new int[used];
+        int[] link = new int[used];
+        int[] queue = new int[used];
+        int head = 0;
+        int tail = 0;
+        for (int k = 0; k < classes; k++) {
+            int t = trie[k];
+            if (t < 0) {
+                trie[k] = 0;
+            } else {
+                fail[t] = 0;
+                queue[tail++] = t;
+            }
+        }
+        while (head < tail) {
+            int s = queue[head++];
+            link[s] = out[fail[s]] != null ? fail[s] : link[fail[s]];
+            for (int k = 0; k < classes; k++) {
+                int t = trie[s * classes + k];
+                int f = trie[fail[s] * classes + k];
+                if (t < 0) {
+                    trie[s * classes + k] = f;
+                } else {
+                    fail[t] = f;
+                    queue[tail++] = t;
+                }
+            }
+        }
+        next = used == states ? trie : Arrays.copyOf(trie, used * classes);
+        outputs = used == states ? out : Arrays.copyOf(out, used);
+        outputLink = link;
+        reports = new boolean[used];
+        for (int s = 1; s < used; s++) {
+            reports[s] = out[s] != null || link[s] != 0;
+        }
+    }
+
+    private static int[] append(int[] ids, int id) {
+        if (ids == null) {
+            return new int[] { id };
+        }
+        int[] n = Arrays.copyOf(ids, ids.length + 1);
+        n[ids.length] = id;
+        return n;
+    }
+
+    /**
+     * Compiles the patterns, each is a literal string unless it is written
+     * as <tt>/regular expression/</tt>.
+     *
+     * @param patterns - the patterns, numbered by their position in the list
+     * @param charset - encoding of the files scanned
+     *
+     * @throws PatternSyntaxException if a regular expression is not valid
+     */
+    public static LogScanner compile(List<String> patterns, Charset charset) {
+        List<byte[]> literals = new ArrayList<byte[]>();
+        List<Integer> literalIds = new ArrayList<Integer>();
+        List<Pattern> regexes = new ArrayList<Pattern>();
+        List<Integer> regexIds = new ArrayList<Integer>();
+        for (int i = 0; i < patterns.size(); i++) {
+            String p = patterns.get(i);
+            if (isRegex(p)) {
+                regexes.add(Pattern.compile(p.substring(1, p.length() - 1)));
+                regexIds.add(Integer.valueOf(i));
+            } else if (p.length() > 0) {
+                literals.add(p.getBytes(charset));
+                literalIds.add(Integer.valueOf(i));
+            }
+        }
+        return new LogScanner(patterns.size(), charset, literals, literalIds, regexes, regexIds);
+    }
+
+    /**
+     * Returns true if a pattern is a regular expression, written as <tt>/regular expression/</tt>.
+     */
+    public static boolean isRegex(String pattern) {
+        return pattern.length() >= 2 && pattern.startsWith("/") && pattern.endsWith("/");
+    }
+
+    /**
+     * Returns the number of patterns.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Scans a file, stopping at its end or when the listener decides the result.
+     * Empty patterns are never found.
+     *
+     * @return the patterns found
+     */
+    public BitSet scan(File file, Listener listener) throws IOException {
+        BitSet found = new BitSet(count);
+        if (!file.exists()) {
+            return found;
+        }
+        FileInputStream in = new FileInputStream(file);
+        try {
+            scan(in.getChannel(), listener, found);
+        } finally {
+            in.close();
+        }
+        return found;
+    }
+
+    private void scan(FileChannel channel, Listener listener, BitSet found) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK);
+        byte[] chunk = buffer.array();
+        int pendingRegexes = regexes.length;
+        byte[] line = pendingRegexes > 0 ? new byte[MAX_LINE] : null;
+        int lineLength = 0;
+        int state = 0;
+
+        int n;
+        while ((n = channel.read(buffer)) >= 0) {
+            if (n == 0) {
+                continue;
+            }
+            for (int i = 0; i < n; i++) {
+                byte b = chunk[i];
+                state = next[state * classes + classOf[b & 0xff]];
+                if (reports[state]) {
+                    if (report(state, found, listener)) {
+                        return;
+                    }
+                }
+                if (pendingRegexes > 0) {
+                    if (b == '\n') {
+                        int matched = matchLine(line, lineLength, found, listener);
+                        if (matched < 0) {
+                            return;
+                        }
+                        pendingRegexes -= matched;
+                        lineLength = 0;
+                    } else if (lineLength < MAX_LINE) {
+                        line[lineLength++] = b;
+                    }
+                }
+            }
+            buffer.clear();
+        }
+        if (pendingRegexes > 0 && lineLength > 0) {
+            matchLine(line, lineLength, found, listener);
+        }
+    }
+
+    /**
+     * Reports the literals ending in a state.
+     *
+     * @return true to stop scanning
+     */
+    private boolean report(int state, BitSet found, Listener listener) {
+        for (int s = state; s != 0; s = outputLink[s]) {
+            int[] ids = outputs[s];
+            if (ids == null) {
+                continue;
+            }
+            for (int id : ids) {
+                if (!found.get(id)) {
+                    found.set(id);
+                    if (listener != null && listener.found(id, found)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Matches a line against the regular expressions not found yet.
+     *
+     * @return the number of regular expressions found, or -1 to stop scanning
+     */
+    private int matchLine(byte[] line, int length, BitSet found, Listener listener) {
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        String text = null;
+        int matched = 0;
+        for (int r = 0; r < regexes.length; r++) {
+            int id = regexIds[r];
+            if (found.get(id)) {
+                continue;
+            }
+            if (text == null) {
+                text = new String(line, 0, length, charset);
+            }
+            if (regexes[r].matcher(text).find()) {
+                found.set(id);
+                matched++;
+                if (listener != null && listener.found(id, found)) {
+                    return -1;
+                }
+            }
+        }
+        return matched;
+    }
+}
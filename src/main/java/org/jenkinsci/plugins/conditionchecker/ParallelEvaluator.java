@@ -0,0 +1,246 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import hudson.model.AbstractBuild;
+import hudson.Launcher;
+import hudson.model.BuildListener;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Checks the conditions of a group at the same time on a shared, bounded pool
+ * of threads, cancelling the remaining conditions as soon as one of them
+ * decides the result of the group.
+ *
+ * The pool uses virtual threads when the JVM supports them, and the size is
+ * set with the <tt>org.jenkinsci.plugins.conditionchecker.ParallelEvaluator.threads</tt>
+ * system property.
+ * The checking thread runs any condition that has not been picked up by the pool
+ * itself, so nested parallel groups can not starve the pool.
+ *
+ * The result is the same as checking the conditions one after another:
+ * it is decided by the first condition, in configured order, that throws
+ * or returns the deciding value, so a condition that finishes early only
+ * decides the group once every condition before it has finished.
+ *
+ * @author Chris Johnson
+ */
+public final class ParallelEvaluator {
+    private static final Logger LOGGER = Logger.getLogger(ParallelEvaluator.class.getName());
+
+    /**
+     * Maximum number of conditions checked at the same time
+     */
+    static final int THREADS = Integer.getInteger(ParallelEvaluator.class.getName() + ".threads", 16);
+
+    private static final Executor EXECUTOR = createExecutor();
+
+    private ParallelEvaluator() {
+    }
+
+    /**
+     * Checks the conditions in parallel.
+     *
+     * @param conditions - list of conditions to check, may be null
+     * @param decisive - result of a condition that decides the group,
+     *      false for an AND group and true for an OR group
+     * @param build
+     * @param launcher
+     * @param listener
+     * @param context - state of the whole check
+     *
+     * @return
+     *      decisive if any of the conditions returned it,
+     *      otherwise !decisive, not negated
+     */
+    public static boolean evaluate(List<CheckCondition> conditions, boolean decisive,
+                    final AbstractBuild build, final Launcher launcher,
+                    final BuildListener listener, final EvaluationContext context) throws IOException, InterruptedException {
+        if (conditions == null || conditions.isEmpty()) {
+            return !decisive;
+        }
+        if (conditions.size() == 1) {
+            return BuildEvaluationCache.isMet(conditions.get(0), build, launcher, listener, context);
+        }
+
+        final BlockingQueue<Task> done = new LinkedBlockingQueue<Task>();
+        Task[] tasks = new Task[conditions.size()];
+        for (int i = 0; i < tasks.length; i++) {
+            final CheckCondition condition = conditions.get(i);
+            tasks[i] = new Task(done, new Callable<Boolean>() {
+                public Boolean call() throws Exception {
+                    return BuildEvaluationCache.isMet(condition, build, launcher, listener, context);
+                }
+            });
+            EXECUTOR.execute(tasks[i]);
+        }
+
+        /* the result is decided by the first condition, in configured order,
+         * that threw or returned the decisive value, as when checking them
+         * one after another, so wait for every condition before it.
+         */
+        int settled = 0;
+        int next = 0;
+        try {
+            while (true) {
+                while (settled < tasks.length && tasks[settled].isDone()) {
+                    if (tasks[settled].get().booleanValue() == decisive) {
+                        return decisive;
+                    }
+                    settled++;
+                }
+                if (settled == tasks.length) {
+                    return !decisive;
+                }
+                if (done.poll() != null) {
+                    continue;
+                }
+                /* nothing finished yet, help out by running a condition
+                 * the pool has not started, or wait if they are all started.
+                 */
+                if (next < tasks.length) {
+                    tasks[next++].run();
+                    continue;
+                }
+                done.take();
+            }
+        } catch (ExecutionException e) {
+            throw rethrow(e);
+        } finally {
+            for (Task task : tasks) {
+                task.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Runs a task on the shared pool.
+     */
+    static void execute(Runnable task) {
+        EXECUTOR.execute(task);
+    }
+
+    /**
+     * Condition check that reports itself to the waiting thread when done.
+     */
+    private static final class Task extends FutureTask<Boolean> {
+        private final BlockingQueue<Task> done;
+
+        Task(BlockingQueue<Task> done, Callable<Boolean> callable) {
+            super(callable);
+            this.done = done;
+        }
+
+        @Override
+        protected void done() {
+            done.add(this);
+        }
+    }
+
+    /**
+     * Unwraps the exception thrown by a condition checked on another thread,
+     * throwing it if it is unchecked or an {@link InterruptedException}.
+     *
+     * @return the exception to throw
+     */
+    static IOException rethrow(ExecutionException e) throws InterruptedException {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        if (cause instanceof InterruptedException) {
+            throw (InterruptedException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        IOException io = new IOException("Condition check failed: " + cause);
+        io.initCause(cause);
+        return io;
+    }
+
+    private static Executor createExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS, THREADS, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), threadFactory("ConditionChecker parallel check #"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Returns a factory of virtual threads where the JVM supports them,
+     * otherwise of daemon threads.
+     *
+     * @param name - prefix of the thread names
+     */
+    static ThreadFactory threadFactory(final String name) {
+        ThreadFactory factory = virtualThreadFactory(name);
+        if (factory == null) {
+            final AtomicInteger count = new AtomicInteger();
+            factory = new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, name + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            };
+        }
+        return factory;
+    }
+
+    /**
+     * Looks up the virtual thread factory by reflection, as it is only
+     * available on newer JVMs.
+     *
+     * @return the factory, or null if virtual threads are not supported
+     */
+    private static ThreadFactory virtualThreadFactory(String name) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> type = Class.forName("java.lang.Thread$Builder");
+            builder = type.getMethod("name", String.class, long.class)
+                    .invoke(builder, name, 1L);
+            return (ThreadFactory) type.getMethod("factory").invoke(builder);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Virtual threads not available", e);
+            return null;
+        }
+    }
+}
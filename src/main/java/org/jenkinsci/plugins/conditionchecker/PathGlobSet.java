@@ -0,0 +1,275 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * A set of include and exclude globs over <tt>/</tt> separated paths,
+ * compiled into a trie of path segments so that a path is matched against
+ * every glob in one walk, however many globs there are.
+ *
+ * Globs use the Ant syntax: <tt>*</tt> and <tt>?</tt> match within a segment,
+ * <tt>**</tt> matches any number of segments, and a glob ending with
+ * <tt>/</tt> matches everything below it. Globs sharing leading segments share
+ * the nodes of the trie, and a {@link Matcher} remembers the nodes reached for
+ * each directory it has seen, so the files of a directory only walk the
+ * segments below it.
+ *
+ * A compiled set is immutable and can be used by many threads, each
+ * with its own {@link Matcher}.
+ *
+ * @author Chris Johnson
+ */
+public final class PathGlobSet {
+    /**
+     * Bit set by {@link Matcher#match} when an include glob matches
+     */
+    public static final int INCLUDED = 1;
+    /**
+     * Bit set by {@link Matcher#match} when an exclude glob matches
+     */
+    public static final int EXCLUDED = 2;
+
+    private final Node root = new Node(null, false);
+    private final boolean includeAll;
+    private final int size;
+
+    private PathGlobSet(List<String> includes, List<String> excludes) {
+        for (String glob : includes) {
+            add(glob, INCLUDED);
+        }
+        for (String glob : excludes) {
+            add(glob, EXCLUDED);
+        }
+        includeAll = includes.isEmpty();
+        size = includes.size() + excludes.size();
+    }
+
+    /**
+     * Compiles the globs, separated by new lines or commas.
+     *
+     * @param includes - globs selecting paths, nothing to select every path
+     * @param excludes - globs of paths not selected even if included
+     */
+    public static PathGlobSet compile(String includes, String excludes) {
+        return new PathGlobSet(split(includes), split(excludes));
+    }
+
+    private static List<String> split(String globs) {
+        List<String> list = new ArrayList<String>();
+        if (globs != null) {
+            for (String glob : globs.split("[,\r\n]")) {
+                glob = glob.trim();
+                if (glob.length() > 0) {
+                    list.add(glob);
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Returns the number of globs.
+     */
+    public int size() {
+        return size;
+    }
+
+    private void add(String glob, int kind) {
+        String path = normalize(glob);
+        if (glob.endsWith("/") || glob.endsWith("\\")) {
+            path = path.length() == 0 ? "**" : path + "/**";
+        }
+        Node node = root;
+        for (String segment : path.split("/")) {
+            if (segment.length() == 0) {
+                continue;
+            }
+            node = node.child(segment);
+        }
+        node.accept |= kind;
+    }
+
+    /**
+     * Returns a path with <tt>/</tt> separators and no leading or trailing separator.
+     */
+    static String normalize(String path) {
+        String p = path.replace('\\', '/');
+        int start = 0;
+        int end = p.length();
+        while (start < end && p.charAt(start) == '/') {
+            start++;
+        }
+        while (end > start && p.charAt(end - 1) == '/') {
+            end--;
+        }
+        return p.substring(start, end);
+    }
+
+    /**
+     * Returns a matcher, which must only be used by one thread.
+     */
+    public Matcher matcher() {
+        return new Matcher();
+    }
+
+    /**
+     * A node of the trie, reached by matching a segment.
+     */
+    private static final class Node {
+        /**
+         * pattern of the segment, null when it has no wildcards
+         */
+        final Pattern segment;
+        /**
+         * true for <tt>**</tt>, which stays reached on any segment
+         */
+        final boolean deep;
+        Map<String, Node> literals;
+        List<Node> wildcards;
+        Node anyDepth;
+        int accept;
+
+        Node(Pattern segment, boolean deep) {
+            this.segment = segment;
+            this.deep = deep;
+        }
+
+        Node child(String segment) {
+            if (segment.equals("**")) {
+                if (anyDepth == null) {
+                    anyDepth = new Node(null, true);
+                }
+                return anyDepth;
+            }
+            if (segment.indexOf('*') < 0 && segment.indexOf('?') < 0 && segment.indexOf('[') < 0) {
+                if (literals == null) {
+                    literals = new HashMap<String, Node>();
+                }
+                Node n = literals.get(segment);
+                if (n == null) {
+                    n = new Node(null, false);
+                    literals.put(segment, n);
+                }
+                return n;
+            }
+            if (wildcards == null) {
+                wildcards = new ArrayList<Node>();
+            }
+            String pattern = FileStateCache.compileGlob(segment).pattern();
+            for (Node n : wildcards) {
+                if (n.segment.pattern().equals(pattern)) {
+                    return n;
+                }
+            }
+            Node n = new Node(Pattern.compile(pattern), false);
+            wildcards.add(n);
+            return n;
+        }
+    }
+
+    /**
+     * Adds a node reached, and the <tt>**</tt> below it as that matches no segments.
+     */
+    private static void reach(Node node, Set<Node> reached) {
+        while (node != null && reached.add(node)) {
+            node = node.anyDepth;
+        }
+    }
+
+    private static Set<Node> step(Set<Node> from, String segment) {
+        Set<Node> to = new LinkedHashSet<Node>();
+        for (Node node : from) {
+            if (node.deep) {
+                reach(node, to);
+            }
+            if (node.literals != null) {
+                reach(node.literals.get(segment), to);
+            }
+            if (node.wildcards != null) {
+                for (Node w : node.wildcards) {
+                    if (w.segment.matcher(segment).matches()) {
+                        reach(w, to);
+                    }
+                }
+            }
+        }
+        return to;
+    }
+
+    /**
+     * Matches paths against the set, remembering the nodes reached for each directory.
+     */
+    public final class Matcher {
+        private final Map<String, Set<Node>> directories = new HashMap<String, Set<Node>>();
+
+        private Matcher() {
+            Set<Node> start = new LinkedHashSet<Node>();
+            reach(root, start);
+            directories.put("", start);
+        }
+
+        /**
+         * Returns the kinds of globs matching a path.
+         *
+         * @return {@link #INCLUDED} and/or {@link #EXCLUDED}, or 0
+         */
+        public int match(String path) {
+            String p = normalize(path);
+            int slash = p.lastIndexOf('/');
+            Set<Node> reached = step(directory(slash < 0 ? "" : p.substring(0, slash)), p.substring(slash + 1));
+            int kinds = 0;
+            for (Node node : reached) {
+                kinds |= node.accept;
+            }
+            return kinds;
+        }
+
+        /**
+         * Returns true if a path is included and not excluded.
+         */
+        public boolean isSelected(String path) {
+            int kinds = match(path);
+            return (includeAll || (kinds & INCLUDED) != 0) && (kinds & EXCLUDED) == 0;
+        }
+
+        private Set<Node> directory(String dir) {
+            Set<Node> reached = directories.get(dir);
+            if (reached == null) {
+                int slash = dir.lastIndexOf('/');
+                Set<Node> parent = directory(slash < 0 ? "" : dir.substring(0, slash));
+                reached = parent.isEmpty() ? Collections.<Node>emptySet() : step(parent, dir.substring(slash + 1));
+                directories.put(dir, reached);
+            }
+            return reached;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import hudson.Extension;
+import hudson.model.AbstractProject;
+import hudson.model.Action;
+import hudson.model.Queue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Drops builds before they are queued when a {@link ConditionChecker} of the
+ * project is set to skip them and its conditions are already known not to be
+ * met, so they never take an executor.
+ *
+ * Only conditions that can be decided from the parameters and causes of the
+ * build take part, see {@link CheckCondition#isMetInQueue}, a build is queued
+ * as usual whenever the result is not known.
+ * Known results are recorded as early {@link ConditionResultAction}s: with the
+ * build when it is queued, until its checkers replace them, and in the
+ * {@link EvaluationJournal} of the job, under the number the build would have
+ * had, when it is not.
+ * Queue time checks can be turned off with the
+ * <tt>org.jenkinsci.plugins.conditionchecker.QueueEvaluation.disabled</tt> system property.
+ *
+ * @author Chris Johnson
+ */
+@Extension
+public final class QueueEvaluation extends Queue.QueueDecisionHandler {
+    private static final Logger LOGGER = Logger.getLogger(QueueEvaluation.class.getName());
+
+    static final boolean DISABLED = Boolean.getBoolean(QueueEvaluation.class.getName() + ".disabled");
+
+    @Override
+    public boolean shouldSchedule(Queue.Task p, List<Action> actions) {
+        if (DISABLED || !(p instanceof AbstractProject)) {
+            return true;
+        }
+        AbstractProject project = (AbstractProject) p;
+        QueuedBuild item = null;
+        List<ConditionResultAction> known = new ArrayList<ConditionResultAction>();
+        boolean schedule = true;
+        int index = -1;
+        for (Object o : project.getPublishersList().getAll(ConditionChecker.class)) {
+            ConditionChecker checker = (ConditionChecker) o;
+            index++;
+            if (!checker.skipInQueue) {
+                continue;
+            }
+            if (item == null) {
+                item = new QueuedBuild(project, actions);
+            }
+            EvaluationContext context = new EvaluationContext().trace();
+            item.setContext(context);
+            try {
+                Boolean result = checker.isMetInQueue(item);
+                if (result != null) {
+                    known.add(new ConditionResultAction(checker, index, result.booleanValue(), context, true));
+                }
+                if (Boolean.FALSE.equals(result)) {
+                    LOGGER.info("Not scheduling " + project.getFullName() + ", its conditions are not met");
+                    schedule = false;
+                    break;
+                }
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Queue time check of " + project.getFullName()
+                        + " failed, scheduling the build", e);
+            }
+        }
+        record(project, actions, known, schedule);
+        return schedule;
+    }
+
+    /**
+     * Records the results known at queue time.
+     */
+    private static void record(AbstractProject project, List<Action> actions,
+                    List<ConditionResultAction> known, boolean scheduled) {
+        for (ConditionResultAction action : known) {
+            if (!scheduled) {
+                EvaluationJournal.recordQueued(project, action);
+                continue;
+            }
+            try {
+                // the actions of the queue item are added to the build
+                actions.add(action);
+            } catch (UnsupportedOperationException e) {
+                // scheduled with a fixed list, the checker records its result when it runs
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import hudson.model.AbstractProject;
+import hudson.model.Action;
+import hudson.model.Cause;
+import hudson.model.CauseAction;
+import hudson.model.ParameterValue;
+import hudson.model.ParametersAction;
+import hudson.util.VariableResolver;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A build that is about to be queued, as seen by
+ * {@link CheckCondition#isMetInQueue}: the project with the parameters and
+ * causes of the build, but no workspace, node or log yet.
+ *
+ * @author Chris Johnson
+ */
+public final class QueuedBuild {
+    private final AbstractProject<?,?> project;
+    private final List<Action> actions;
+    private Map<String, String> parameters;
+    /**
+     * context the results are recorded in, null if they are not
+     */
+    private EvaluationContext context;
+
+    /**
+     * @param project - project of the build
+     * @param actions - actions the build is scheduled with, may be null
+     */
+    public QueuedBuild(AbstractProject<?,?> project, List<Action> actions) {
+        this.project = project;
+        this.actions = actions == null ? Collections.<Action>emptyList() : actions;
+    }
+
+    public AbstractProject<?,?> getProject() {
+        return project;
+    }
+
+    /**
+     * Sets the traced context the results of the conditions are recorded in.
+     *
+     * @param context - the context, null to stop recording
+     */
+    void setContext(EvaluationContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Records the queue time result of a condition, if recording.
+     * Groups call this for each of their conditions.
+     *
+     * @param result - the result, null if not known
+     */
+    public void record(CheckCondition condition, Boolean result) {
+        if (context != null && result != null) {
+            context.record(condition, result.booleanValue());
+        }
+    }
+
+    /**
+     * Returns the actions the build is scheduled with.
+     */
+    public List<Action> getActions() {
+        return actions;
+    }
+
+    /**
+     * Returns the first action of the given type, or null if there is none.
+     */
+    public <T extends Action> T getAction(Class<T> type) {
+        for (Action a : actions) {
+            if (type.isInstance(a)) {
+                return type.cast(a);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the value of a build parameter as a string,
+     * or null if the parameter is not set or has no string value.
+     */
+    public String getParameter(String name) {
+        return getParameters().get(name);
+    }
+
+    /**
+     * Returns the string values of the build parameters.
+     */
+    public Map<String, String> getParameters() {
+        Map<String, String> p = parameters;
+        if (p == null) {
+            p = new HashMap<String, String>();
+            for (Action a : actions) {
+                if (!(a instanceof ParametersAction) || ((ParametersAction) a).getParameters() == null) {
+                    continue;
+                }
+                for (ParameterValue value : ((ParametersAction) a).getParameters()) {
+                    String s = resolve(value);
+                    if (s != null) {
+                        p.put(value.getName(), s);
+                    }
+                }
+            }
+            parameters = p;
+        }
+        return p;
+    }
+
+    /**
+     * Returns the causes of the build.
+     */
+    public List<Cause> getCauses() {
+        List<Cause> causes = new ArrayList<Cause>();
+        for (Action a : actions) {
+            if (a instanceof CauseAction && ((CauseAction) a).getCauses() != null) {
+                causes.addAll(((CauseAction) a).getCauses());
+            }
+        }
+        return causes;
+    }
+
+    /**
+     * Returns true if the build is caused by a cause of the given type.
+     */
+    public boolean hasCause(Class<? extends Cause> type) {
+        for (Cause c : getCauses()) {
+            if (type.isInstance(c)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String resolve(ParameterValue value) {
+        try {
+            // parameters that need the build to resolve their value are left out
+            VariableResolver<String> resolver = value.createVariableResolver(null);
+            return resolver == null ? null : resolver.resolve(value.getName());
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Checks a group of conditions at queue time.
+     *
+     * @param conditions - list of conditions to check, may be null
+     * @param decisive - result of a condition that decides the group,
+     *      false for an AND group and true for an OR group
+     * @param negate - invert the result of the group
+     * @param item - the build about to be queued
+     *
+     * @return
+     *      decisive if any of the conditions is known to return it,
+     *      !decisive if all of them are known not to, negated if asked,
+     *      otherwise null
+     */
+    public static Boolean isMet(List<CheckCondition> conditions, boolean decisive, boolean negate,
+                    QueuedBuild item) {
+        boolean known = true;
+        if (conditions != null) {
+            for (CheckCondition c : conditions) {
+                Boolean result = c.isMetInQueue(item);
+                item.record(c, result);
+                if (result == null) {
+                    known = false;
+                } else if (result.booleanValue() == decisive) {
+                    return Boolean.valueOf(decisive != negate);
+                }
+            }
+        }
+        return known ? Boolean.valueOf(!decisive != negate) : null;
+    }
+
+    /**
+     * Returns the queue time result of conditions checked with a time limit,
+     * which is only known if running out of time would give the same result.
+     *
+     * @param result - result of the conditions, null if not known
+     * @param onTimeout - what happens when the time runs out
+     */
+    public static Boolean withTimeout(Boolean result, TimeoutResult onTimeout) {
+        if (result == null || onTimeout == TimeoutResult.FAIL) {
+            return null;
+        }
+        return result.booleanValue() == (onTimeout == TimeoutResult.TRUE) ? result : null;
+    }
+}
@@ -0,0 +1,123 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import hudson.remoting.Callable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Serializable;
+
+/**
+ * A range of a {@link ConditionProgram} sent to the node of the build in one call.
+ *
+ * The range holds the instructions of a group whose conditions are all
+ * {@link RemoteCondition}s, so every jump either stays inside the range or
+ * leaves the group. The node runs the instructions from the start of the range
+ * until a jump leaves it, and returns where it left along with the result of
+ * each condition it checked.
+ *
+ * Running it on a local channel simply calls it in the same JVM.
+ *
+ * @author Chris Johnson
+ */
+final class RemoteBatch implements Callable<RemoteBatch.Result, IOException> {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * result of an instruction that was not reached
+     */
+    static final byte NOT_RUN = 0;
+    static final byte FALSE = 1;
+    static final byte TRUE = 2;
+    /**
+     * result of a constant instruction that was reached
+     */
+    static final byte PASSED = 3;
+
+    private final int start;
+    /**
+     * check for each instruction, null for constant instructions
+     */
+    private final RemoteCheck[] checks;
+    private final int[] onTrue;
+    private final int[] onFalse;
+
+    RemoteBatch(int start, RemoteCheck[] checks, int[] onTrue, int[] onFalse) {
+        this.start = start;
+        this.checks = checks;
+        this.onTrue = onTrue;
+        this.onFalse = onFalse;
+    }
+
+    public Result call() throws IOException {
+        byte[] results = new byte[checks.length];
+        long[] nanos = new long[checks.length];
+        int pc = start;
+        while (pc >= start && pc < start + checks.length) {
+            int i = pc - start;
+            boolean result = true;
+            if (checks[i] != null) {
+                long begin = System.nanoTime();
+                try {
+                    result = checks[i].check();
+                } catch (InterruptedException e) {
+                    InterruptedIOException io = new InterruptedIOException("Interrupted while checking conditions");
+                    io.initCause(e);
+                    throw io;
+                }
+                nanos[i] = System.nanoTime() - begin;
+                results[i] = result ? TRUE : FALSE;
+            } else {
+                results[i] = PASSED;
+            }
+            pc = result ? onTrue[i] : onFalse[i];
+        }
+        return new Result(pc, results, nanos);
+    }
+
+    /**
+     * Where the program left the range and what was checked on the way.
+     */
+    static final class Result implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * next instruction of the program
+         */
+        final int exit;
+        /**
+         * {@link #NOT_RUN}, {@link #FALSE}, {@link #TRUE} or {@link #PASSED} for each instruction
+         */
+        final byte[] results;
+        /**
+         * time taken by each check
+         */
+        final long[] nanos;
+
+        Result(int exit, byte[] results, long[] nanos) {
+            this.exit = exit;
+            this.results = results;
+            this.nanos = nanos;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import java.io.IOException;
+
+/**
+ * Implemented by conditions whose work is done on the node of the build,
+ * so that a group of them can be checked with a single remote call instead
+ * of one call (or more) per condition.
+ *
+ * When every condition of an And or Or group (or of the whole checker)
+ * implements this, the checks of the group are sent to the node together
+ * and the group is short-circuited there, see {@link RemoteBatch}.
+ *
+ * @author Chris Johnson
+ */
+public interface RemoteCondition {
+    /**
+     * Returns the work of this condition to run on the node of the build.
+     *
+     * @param build
+     * @param listener
+     *
+     * @return the check, or null to check this condition with {@link CheckCondition#isMet} instead
+     */
+    RemoteCheck getRemoteCheck(AbstractBuild build, BuildListener listener) throws IOException, InterruptedException;
+}
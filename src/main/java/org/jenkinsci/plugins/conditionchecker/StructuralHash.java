@@ -0,0 +1,201 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import hudson.model.Items;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jenkinsci.plugins.conditionchecker.conditions.ThresholdGroupCheckCondition;
+
+/**
+ * Works out a 64 bit hash of the structure of a condition tree,
+ * so that equal trees configured in different places can share results.
+ *
+ * Plain And, Or and threshold groups are hashed from their type, negation,
+ * threshold and the hashes of their conditions, how they are checked
+ * (in parallel or reordered) does not change the result so is not included.
+ * Any other condition is hashed from its class and its configuration.
+ *
+ * A hash of 0 means the condition can not be cached, see
+ * {@link CheckConditionDescriptor#isCacheable()}, and any group containing
+ * such a condition can not be cached either.
+ *
+ * @author Chris Johnson
+ */
+public final class StructuralHash {
+    /**
+     * Hash of conditions that can not be cached
+     */
+    public static final long NONE = 0;
+
+    private static final long AND = 0x6a09e667f3bcc908L;
+    private static final long OR = 0xbb67ae8584caa73bL;
+    private static final long THRESHOLD = 0x3c6ef372fe94f82bL;
+
+    private StructuralHash() {
+    }
+
+    /**
+     * Returns the hash of the condition, worked out on first use and
+     * then kept on the condition.
+     */
+    public static long of(CheckCondition condition) {
+        if (condition == null) {
+            return NONE;
+        }
+        if (condition.structuralHashed) {
+            return condition.structuralHash;
+        }
+        /* work out the hashes of the contained conditions first,
+         * using an explicit stack so deep trees do not overflow.
+         */
+        List<CheckCondition> stack = new ArrayList<CheckCondition>();
+        stack.add(condition);
+        while (!stack.isEmpty()) {
+            CheckCondition c = stack.get(stack.size() - 1);
+            List<CheckCondition> children = childrenOf(c);
+            boolean ready = true;
+            if (children != null) {
+                for (CheckCondition child : children) {
+                    if (child != null && !child.structuralHashed) {
+                        stack.add(child);
+                        ready = false;
+                    }
+                }
+            }
+            if (ready) {
+                stack.remove(stack.size() - 1);
+                if (!c.structuralHashed) {
+                    if (children == null) {
+                        c.structuralHash = ofLeaf(c);
+                    } else if (c instanceof ThresholdGroupCheckCondition) {
+                        c.structuralHash = ofThreshold(((ThresholdGroupCheckCondition) c).threshold,
+                                negateOf(c), children);
+                    } else {
+                        c.structuralHash = ofGroup(c instanceof OrGroupCheckCondition, negateOf(c), children);
+                    }
+                    c.structuralHashed = true;
+                }
+            }
+        }
+        return condition.structuralHash;
+    }
+
+    /**
+     * Returns the hash of a group of conditions.
+     *
+     * @param or - true for an OR group, false for an AND group
+     * @param negate - true if the group is negated
+     * @param conditions - conditions of the group, may be null
+     */
+    public static long ofGroup(boolean or, boolean negate, List<CheckCondition> conditions) {
+        long h = or ? OR : AND;
+        if (negate) {
+            h = ~h;
+        }
+        if (conditions != null) {
+            for (CheckCondition child : conditions) {
+                long c = of(child);
+                if (c == NONE) {
+                    return NONE;
+                }
+                h = mix(h * 31 + c);
+            }
+        }
+        return h == NONE ? 1 : h;
+    }
+
+    /**
+     * Returns the hash of a threshold group, from the hash of its conditions
+     * ANDed together and the number of them that must be met.
+     */
+    private static long ofThreshold(int threshold, boolean negate, List<CheckCondition> conditions) {
+        long h = ofGroup(false, negate, conditions);
+        if (h == NONE) {
+            return NONE;
+        }
+        h = mix((h ^ THRESHOLD) * 31 + threshold);
+        return h == NONE ? 1 : h;
+    }
+
+    private static long ofLeaf(CheckCondition condition) {
+        CheckConditionDescriptor d = condition.getDescriptor();
+        if (d == null || !d.isCacheable()) {
+            return NONE;
+        }
+        long h = hash(condition.getClass().getName());
+        h = mix(h * 31 + hash(Items.XSTREAM.toXML(condition)));
+        return h == NONE ? 1 : h;
+    }
+
+    /**
+     * Returns the conditions of a plain And, Or or threshold group, null for anything else.
+     */
+    private static List<CheckCondition> childrenOf(CheckCondition c) {
+        if (c.getClass() == ThresholdGroupCheckCondition.class) {
+            List<CheckCondition> l = ((ThresholdGroupCheckCondition) c).conditions;
+            return l != null ? l : new ArrayList<CheckCondition>();
+        }
+        if (c.getClass() == AndGroupCheckCondition.class) {
+            List<CheckCondition> l = ((AndGroupCheckCondition) c).conditions;
+            return l != null ? l : new ArrayList<CheckCondition>();
+        }
+        if (c.getClass() == OrGroupCheckCondition.class) {
+            List<CheckCondition> l = ((OrGroupCheckCondition) c).conditions;
+            return l != null ? l : new ArrayList<CheckCondition>();
+        }
+        return null;
+    }
+
+    private static boolean negateOf(CheckCondition c) {
+        if (c instanceof ThresholdGroupCheckCondition) {
+            return ((ThresholdGroupCheckCondition) c).negate;
+        }
+        if (c instanceof AndGroupCheckCondition) {
+            return ((AndGroupCheckCondition) c).negate;
+        }
+        return ((OrGroupCheckCondition) c).negate;
+    }
+
+    /**
+     * 64 bit FNV-1a hash of a string.
+     */
+    static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /**
+     * Final mixing step of SplitMix64, spreads the bits of a combined hash.
+     */
+    static long mix(long h) {
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+}
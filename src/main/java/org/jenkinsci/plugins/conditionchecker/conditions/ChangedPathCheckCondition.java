@@ -0,0 +1,175 @@
+package org.jenkinsci.plugins.conditionchecker.conditions;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import hudson.Extension;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.BuildListener;
+import hudson.scm.ChangeLogSet;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import org.jenkinsci.plugins.conditionchecker.BuildEvent;
+import org.jenkinsci.plugins.conditionchecker.CheckCondition;
+import org.jenkinsci.plugins.conditionchecker.CheckConditionDescriptor;
+import org.jenkinsci.plugins.conditionchecker.ConditionInterner;
+import org.jenkinsci.plugins.conditionchecker.EvaluationContext;
+import org.jenkinsci.plugins.conditionchecker.PathGlobSet;
+
+/**
+ * Checks that the SCM changes of the build touch a path selected by
+ * include and exclude globs, stopping at the first such path.
+ *
+ * The globs are compiled once into a {@link PathGlobSet}, so each changed
+ * path is matched against all of them in one walk.
+ *
+ * @author Chris Johnson
+ */
+public class ChangedPathCheckCondition extends CheckCondition {
+    /**
+     * globs of the paths selected, all paths when empty
+     */
+    public final String includes;
+    /**
+     * globs of the paths not selected even if included
+     */
+    public final String excludes;
+    /**
+     * Compiled globs, not persisted
+     */
+    private transient volatile PathGlobSet globs;
+
+    /**
+     * Constructor taking the globs of the paths to look for
+     *
+     * @param includes - globs of the paths selected, separated by new lines or commas
+     * @param excludes - globs of the paths not selected even if included
+     */
+    @DataBoundConstructor
+    public ChangedPathCheckCondition(String includes, String excludes) {
+        this.includes = includes;
+        this.excludes = excludes;
+    }
+
+    /**
+     * Checks if the check criteria is met.
+     *
+     * @param build
+     * @param launcher
+     * @param listener
+     *
+     * @return
+     *      true if the condition is met,
+     *      false if condition is not met
+     */
+    public boolean isMet(AbstractBuild build, Launcher launcher,
+                    BuildListener listener) throws IOException, InterruptedException {
+        return isMet(build, launcher, listener, EvaluationContext.none());
+    }
+
+    /**
+     * Checks if the check criteria is met, as part of a larger check,
+     * sharing the changes with the other conditions of the check.
+     *
+     * @param build
+     * @param launcher
+     * @param listener
+     * @param context - state of the whole check
+     *
+     * @return
+     *      true if the condition is met,
+     *      false if condition is not met
+     */
+    @Override
+    public boolean isMet(AbstractBuild build, Launcher launcher, BuildListener listener,
+                    EvaluationContext context) throws IOException, InterruptedException {
+        ChangeLogSet<? extends ChangeLogSet.Entry> changes = context.facts(build, listener).getChangeSet();
+        if (changes == null) {
+            return false;
+        }
+        PathGlobSet.Matcher matcher = getGlobs().matcher();
+        for (ChangeLogSet.Entry entry : changes) {
+            Collection<String> paths = entry.getAffectedPaths();
+            if (paths == null) {
+                continue;
+            }
+            for (String path : paths) {
+                if (matcher.isSelected(path)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the compiled globs.
+     */
+    public PathGlobSet getGlobs() {
+        PathGlobSet g = globs;
+        if (g == null) {
+            g = ConditionInterner.share(Arrays.<Object>asList(PathGlobSet.class, includes, excludes),
+                    PathGlobSet.compile(includes, excludes));
+            globs = g;
+        }
+        return g;
+    }
+
+    @Extension
+    public static final class DescriptorImpl extends CheckConditionDescriptor {
+
+            /**
+             * This human readable name is used in the configuration screen.
+             */
+            @Override
+            public String getDisplayName() {
+                    return "Check the paths changed by the build";
+            }
+
+            /**
+             * The changes of a build are fixed once they are known.
+             */
+            @Override
+            public boolean isCacheable() {
+                return true;
+            }
+
+            /**
+             * The result is known once the changes are.
+             */
+            @Override
+            public Set<BuildEvent> getDependencies() {
+                return EnumSet.of(BuildEvent.CHECKOUT);
+            }
+
+            public boolean isApplicable(AbstractProject<?,?> item){
+                return true;
+            }
+    }
+}
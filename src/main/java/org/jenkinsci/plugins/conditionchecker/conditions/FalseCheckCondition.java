@@ -33,9 +33,13 @@ import hudson.model.BuildListener;
 import org.kohsuke.stapler.DataBoundConstructor;
 import hudson.Extension;
 import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Set;
 
+import org.jenkinsci.plugins.conditionchecker.BuildEvent;
 import org.jenkinsci.plugins.conditionchecker.CheckCondition;
 import org.jenkinsci.plugins.conditionchecker.CheckConditionDescriptor;
+import org.jenkinsci.plugins.conditionchecker.QueuedBuild;
 /**
  * Extension point for defining a check criteria
  * Before extending this in a seperate plugin
@@ -51,6 +55,7 @@ public class FalseCheckCondition extends CheckCondition {
     @DataBoundConstructor
     public FalseCheckCondition(){
     }
+
     /**
      * Checks if the check criteria is met.
      *
@@ -66,6 +71,14 @@ public class FalseCheckCondition extends CheckCondition {
         return false;
     }
 
+    /**
+     * The result is always known.
+     */
+    @Override
+    public Boolean isMetInQueue(QueuedBuild item) {
+        return Boolean.FALSE;
+    }
+
     @Extension
     public static final class DescriptorImpl extends CheckConditionDescriptor {
 
@@ -77,6 +90,30 @@ public class FalseCheckCondition extends CheckCondition {
                     return "Return False for all checks";
             }
 
+            /**
+             * The result is the same for every build.
+             */
+            @Override
+            public boolean isBuildIndependent() {
+                return true;
+            }
+
+            /**
+             * The result never changes.
+             */
+            @Override
+            public boolean isCacheable() {
+                return true;
+            }
+
+            /**
+             * The result is known as soon as the build starts.
+             */
+            @Override
+            public Set<BuildEvent> getDependencies() {
+                return EnumSet.noneOf(BuildEvent.class);
+            }
+
             public boolean isApplicable(AbstractProject item){
                 return true;
             }
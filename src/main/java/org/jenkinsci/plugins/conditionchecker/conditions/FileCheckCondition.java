@@ -0,0 +1,261 @@
+package org.jenkinsci.plugins.conditionchecker.conditions;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.BuildListener;
+import hudson.remoting.VirtualChannel;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import org.jenkinsci.plugins.conditionchecker.CheckCondition;
+import org.jenkinsci.plugins.conditionchecker.CheckConditionDescriptor;
+import org.jenkinsci.plugins.conditionchecker.FileStateCache;
+import org.jenkinsci.plugins.conditionchecker.RemoteCheck;
+import org.jenkinsci.plugins.conditionchecker.RemoteCondition;
+
+/**
+ * Checks a file or directory of the build, such as a marker file.
+ *
+ * Relative paths are in the workspace of the build. When the workspace is on
+ * the master the answer comes from the {@link FileStateCache}, shared by
+ * every build; on other nodes the file is probed directly, together with the
+ * other conditions checked on that node.
+ *
+ * @author Chris Johnson
+ */
+public class FileCheckCondition extends CheckCondition implements RemoteCondition {
+    /**
+     * What is checked about the file
+     */
+    public enum FileTest {
+        EXISTS("Exists"),
+        LARGER_THAN("Is larger than the given number of bytes"),
+        MODIFIED_WITHIN("Was modified within the given number of seconds, 0 for since the build started"),
+        MATCHES("Is a directory with at least the given number of entries matching the pattern");
+
+        private final String displayName;
+
+        FileTest(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    /**
+     * the file or directory, relative to the workspace
+     */
+    public final String path;
+    /**
+     * what is checked
+     */
+    public final FileTest test;
+    /**
+     * pattern of the names counted in a directory
+     */
+    public final String pattern;
+    /**
+     * bytes, seconds or number of matches, depending on the test
+     */
+    public final long value;
+
+    /**
+     * Constructor taking the file to check
+     *
+     * @param path - the file or directory, relative to the workspace
+     * @param test - what is checked
+     * @param pattern - pattern of the names counted in a directory
+     * @param value - bytes, seconds or number of matches, depending on the test
+     */
+    @DataBoundConstructor
+    public FileCheckCondition(String path, FileTest test, String pattern, long value) {
+        this.path = path;
+        this.test = test;
+        this.pattern = pattern;
+        this.value = value;
+    }
+
+    /**
+     * Checks if the check criteria is met.
+     *
+     * @param build
+     * @param launcher
+     * @param listener
+     *
+     * @return
+     *      true if the condition is met,
+     *      false if condition is not met
+     */
+    public boolean isMet(AbstractBuild build, Launcher launcher,
+                    BuildListener listener) throws IOException, InterruptedException {
+        String glob = getGlob();
+        FilePath workspace = build.getWorkspace();
+        FileStateCache.State state;
+        if (workspace == null) {
+            File file = new File(path);
+            if (!file.isAbsolute()) {
+                listener.getLogger().println("No workspace to find " + path + " in");
+                return false;
+            }
+            state = FileStateCache.get(file, glob);
+        } else if (!workspace.isRemote()) {
+            state = FileStateCache.get(resolve(new File(workspace.getRemote()), path), glob);
+        } else {
+            state = workspace.act(new Probe(path, glob));
+        }
+        return test(getTest(), value, cutoffOf(build), state);
+    }
+
+    /**
+     * Probes the file on the node of the build when the workspace is not
+     * on the master, otherwise the cache is used.
+     */
+    public RemoteCheck getRemoteCheck(AbstractBuild build, BuildListener listener) {
+        FilePath workspace = build.getWorkspace();
+        if (workspace == null || !workspace.isRemote()) {
+            return null;
+        }
+        return new Check(workspace.getRemote(), path, getGlob(), getTest(), value, cutoffOf(build));
+    }
+
+    public FileTest getTest() {
+        return test == null ? FileTest.EXISTS : test;
+    }
+
+    private String getGlob() {
+        return getTest() == FileTest.MATCHES ? (pattern == null || pattern.length() == 0 ? "*" : pattern) : null;
+    }
+
+    /**
+     * Returns the oldest modification time met by {@link FileTest#MODIFIED_WITHIN}.
+     */
+    private long cutoffOf(AbstractBuild build) {
+        if (value > 0) {
+            return System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(value);
+        }
+        return build.getTimeInMillis();
+    }
+
+    private static File resolve(File workspace, String path) {
+        File file = new File(path);
+        return file.isAbsolute() ? file : new File(workspace, path);
+    }
+
+    private static boolean test(FileTest test, long value, long cutoff, FileStateCache.State state) {
+        if (!state.exists()) {
+            return false;
+        }
+        switch (test) {
+            case LARGER_THAN:
+                return !state.isDirectory() && state.getSize() > value;
+            case MODIFIED_WITHIN:
+                return state.getModified() >= cutoff;
+            case MATCHES:
+                return state.isDirectory() && state.getMatches() >= Math.max(1, value);
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Probes the file in the workspace on the node of the build.
+     */
+    private static final class Probe implements FilePath.FileCallable<FileStateCache.State> {
+        private static final long serialVersionUID = 1L;
+        private final String path;
+        private final String glob;
+
+        Probe(String path, String glob) {
+            this.path = path;
+            this.glob = glob;
+        }
+
+        public FileStateCache.State invoke(File workspace, VirtualChannel channel) {
+            return FileStateCache.State.probe(resolve(workspace, path), glob);
+        }
+    }
+
+    /**
+     * Probes and tests the file on the node of the build.
+     */
+    private static final class Check implements RemoteCheck {
+        private static final long serialVersionUID = 1L;
+        private final String workspace;
+        private final String path;
+        private final String glob;
+        private final FileTest test;
+        private final long value;
+        private final long cutoff;
+
+        Check(String workspace, String path, String glob, FileTest test, long value, long cutoff) {
+            this.workspace = workspace;
+            this.path = path;
+            this.glob = glob;
+            this.test = test;
+            this.value = value;
+            this.cutoff = cutoff;
+        }
+
+        public boolean check() {
+            return test(test, value, cutoff, FileStateCache.State.probe(resolve(new File(workspace), path), glob));
+        }
+    }
+
+    @Extension
+    public static final class DescriptorImpl extends CheckConditionDescriptor {
+
+            /**
+             * This human readable name is used in the configuration screen.
+             */
+            @Override
+            public String getDisplayName() {
+                    return "Check a file or directory";
+            }
+
+            /**
+             * The file may change while the build runs, so the
+             * result is not kept for the build.
+             */
+            @Override
+            public boolean isCacheable() {
+                return false;
+            }
+
+            public boolean isApplicable(AbstractProject<?,?> item){
+                return true;
+            }
+
+            public FileTest[] getTests() {
+                return FileTest.values();
+            }
+    }
+}
@@ -0,0 +1,235 @@
+package org.jenkinsci.plugins.conditionchecker.conditions;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import hudson.Extension;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.BuildListener;
+import hudson.model.Result;
+import hudson.util.FormValidation;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+
+import org.jenkinsci.plugins.conditionchecker.BuildEvent;
+import org.jenkinsci.plugins.conditionchecker.BuildHistoryIndex;
+import org.jenkinsci.plugins.conditionchecker.CheckCondition;
+import org.jenkinsci.plugins.conditionchecker.CheckConditionDescriptor;
+import org.jenkinsci.plugins.conditionchecker.QueuedBuild;
+
+/**
+ * Checks the results, start times or durations of the builds before
+ * the build, using the {@link BuildHistoryIndex} of the job so no
+ * builds are loaded.
+ *
+ * @author Chris Johnson
+ */
+public class HistoryCheckCondition extends CheckCondition {
+    /**
+     * Results that can be compared to, from best to worst
+     */
+    private static final Result[] RESULTS = {
+        Result.SUCCESS, Result.UNSTABLE, Result.FAILURE, Result.NOT_BUILT, Result.ABORTED };
+
+    /**
+     * What is checked about the previous builds
+     */
+    public enum HistoryTest {
+        WORSE_THAN("The last given number of builds were worse than the result"),
+        NOT_SINCE("No build at least as good as the result started within the given number of seconds"),
+        SLOWER_THAN("The last given number of builds took longer than the given number of seconds on average");
+
+        private final String displayName;
+
+        HistoryTest(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    /**
+     * what is checked
+     */
+    public final HistoryTest test;
+    /**
+     * name of the result compared to
+     */
+    public final String result;
+    /**
+     * number of builds looked at
+     */
+    public final int builds;
+    /**
+     * time in seconds
+     */
+    public final long seconds;
+
+    /**
+     * Constructor taking what to check about the previous builds
+     *
+     * @param test - what is checked
+     * @param result - name of the result compared to, such as SUCCESS
+     * @param builds - number of builds looked at
+     * @param seconds - time in seconds
+     */
+    @DataBoundConstructor
+    public HistoryCheckCondition(HistoryTest test, String result, int builds, long seconds) {
+        this.test = test;
+        this.result = result;
+        this.builds = builds;
+        this.seconds = seconds;
+    }
+
+    /**
+     * Checks if the check criteria is met.
+     *
+     * @param build
+     * @param launcher
+     * @param listener
+     *
+     * @return
+     *      true if the condition is met,
+     *      false if condition is not met
+     */
+    public boolean isMet(AbstractBuild build, Launcher launcher, BuildListener listener) {
+        return isMet(BuildHistoryIndex.of(build.getProject()), build.getNumber());
+    }
+
+    /**
+     * The history is known before the build starts, once the index of the
+     * job is loaded. It is loaded in the background rather than on the queue.
+     */
+    @Override
+    public Boolean isMetInQueue(QueuedBuild item) {
+        BuildHistoryIndex index = BuildHistoryIndex.peek(item.getProject());
+        if (index == null) {
+            BuildHistoryIndex.loadLater(item.getProject());
+            return null;
+        }
+        return Boolean.valueOf(isMet(index, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Checks the builds before a build.
+     */
+    private boolean isMet(BuildHistoryIndex index, int before) {
+        int count = Math.max(1, builds);
+        switch (getTest()) {
+            case NOT_SINCE:
+                long last = index.lastAtLeast(before, getResult());
+                return last < 0 || System.currentTimeMillis() - last > TimeUnit.SECONDS.toMillis(seconds);
+            case SLOWER_THAN:
+                long average = index.averageDuration(before, count);
+                return average >= 0 && average > TimeUnit.SECONDS.toMillis(seconds);
+            default:
+                return index.countWorseThan(before, getResult(), count) >= count;
+        }
+    }
+
+    public HistoryTest getTest() {
+        return test == null ? HistoryTest.WORSE_THAN : test;
+    }
+
+    /**
+     * Returns the result compared to, {@link Result#SUCCESS} if none is set.
+     * {@link Result#fromString} is not used as it turns any unknown name into
+     * {@link Result#FAILURE}, an unknown name is also taken as success and
+     * reported when the configuration is checked.
+     */
+    public Result getResult() {
+        Result r = resultOf(result);
+        return r == null ? Result.SUCCESS : r;
+    }
+
+    /**
+     * Returns the result with a name, or null if the name is blank or unknown.
+     */
+    static Result resultOf(String name) {
+        if (name == null) {
+            return null;
+        }
+        String trimmed = name.trim();
+        for (Result r : RESULTS) {
+            if (r.toString().equalsIgnoreCase(trimmed)) {
+                return r;
+            }
+        }
+        return null;
+    }
+
+    @Extension
+    public static final class DescriptorImpl extends CheckConditionDescriptor {
+
+            /**
+             * This human readable name is used in the configuration screen.
+             */
+            @Override
+            public String getDisplayName() {
+                    return "Check the previous builds";
+            }
+
+            /**
+             * The result is known as soon as the build starts.
+             */
+            @Override
+            public Set<BuildEvent> getDependencies() {
+                return EnumSet.noneOf(BuildEvent.class);
+            }
+
+            public boolean isApplicable(AbstractProject<?,?> item){
+                return true;
+            }
+
+            public HistoryTest[] getTests() {
+                return HistoryTest.values();
+            }
+
+            public String[] getResults() {
+                String[] names = new String[RESULTS.length];
+                for (int i = 0; i < names.length; i++) {
+                    names[i] = RESULTS[i].toString();
+                }
+                return names;
+            }
+
+            /**
+             * Reports a result that is not known, which would be taken as success.
+             */
+            public FormValidation doCheckResult(@QueryParameter String value) {
+                if (value == null || value.trim().length() == 0) {
+                    return FormValidation.ok();
+                }
+                if (resultOf(value) == null) {
+                    return FormValidation.error("Unknown result " + value + ", SUCCESS is used instead");
+                }
+                return FormValidation.ok();
+            }
+    }
+}
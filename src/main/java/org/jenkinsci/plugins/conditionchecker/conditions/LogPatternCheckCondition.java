@@ -0,0 +1,189 @@
+package org.jenkinsci.plugins.conditionchecker.conditions;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import hudson.Extension;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.BuildListener;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import org.jenkinsci.plugins.conditionchecker.CheckCondition;
+import org.jenkinsci.plugins.conditionchecker.CheckConditionDescriptor;
+import org.jenkinsci.plugins.conditionchecker.ConditionInterner;
+import org.jenkinsci.plugins.conditionchecker.LogScanner;
+
+/**
+ * Checks that the log of the build contains every one of a set of patterns
+ * and none of another, reading the log once with a {@link LogScanner}
+ * and stopping as soon as the result is known.
+ *
+ * @author Chris Johnson
+ */
+public class LogPatternCheckCondition extends CheckCondition {
+    /**
+     * patterns that must all be in the log, one per line
+     */
+    public final String required;
+    /**
+     * patterns that must not be in the log, one per line
+     */
+    public final String forbidden;
+    /**
+     * Compiled patterns, the required ones first, not persisted
+     */
+    private transient volatile Compiled compiled;
+
+    /**
+     * Constructor taking the patterns to look for, each line is a
+     * literal string unless it is written as <tt>/regular expression/</tt>
+     *
+     * @param required - patterns that must all be in the log
+     * @param forbidden - patterns that must not be in the log
+     */
+    @DataBoundConstructor
+    public LogPatternCheckCondition(String required, String forbidden) {
+        this.required = required;
+        this.forbidden = forbidden;
+    }
+
+    /**
+     * Checks if the check criteria is met.
+     *
+     * @param build
+     * @param launcher
+     * @param listener
+     *
+     * @return
+     *      true if the condition is met,
+     *      false if condition is not met
+     */
+    public boolean isMet(AbstractBuild build, Launcher launcher,
+                    BuildListener listener) throws IOException, InterruptedException {
+        Compiled c = getCompiled(build.getCharset());
+        final int requiredCount = c.requiredCount;
+        final boolean anyForbidden = c.scanner.size() > requiredCount;
+        BitSet found = c.scanner.scan(build.getLogFile(), new LogScanner.Listener() {
+            public boolean found(int pattern, BitSet found) {
+                if (pattern >= requiredCount) {
+                    return true;
+                }
+                // with nothing forbidden, stop once everything required is found
+                return !anyForbidden && found.nextClearBit(0) >= requiredCount;
+            }
+        });
+        // patterns are given by number, printing one would make the log match it
+        int forbiddenFound = found.nextSetBit(requiredCount);
+        if (forbiddenFound >= 0) {
+            listener.getLogger().println("Log contains forbidden pattern #" + (forbiddenFound - requiredCount + 1));
+            return false;
+        }
+        int missing = found.nextClearBit(0);
+        if (missing < requiredCount) {
+            listener.getLogger().println("Log does not contain required pattern #" + (missing + 1));
+            return false;
+        }
+        return true;
+    }
+
+    private Compiled getCompiled(Charset charset) throws IOException {
+        Compiled c = compiled;
+        if (c == null || !c.charset.equals(charset)) {
+            List<String> patterns = linesOf(required);
+            int requiredCount = patterns.size();
+            patterns.addAll(linesOf(forbidden));
+            try {
+                LogScanner scanner = ConditionInterner.share(
+                        Arrays.<Object>asList(LogScanner.class, charset, patterns),
+                        LogScanner.compile(patterns, charset));
+                c = new Compiled(scanner, charset, requiredCount);
+            } catch (PatternSyntaxException e) {
+                IOException io = new IOException("Not a valid regular expression: " + e.getPattern());
+                io.initCause(e);
+                throw io;
+            }
+            compiled = c;
+        }
+        return c;
+    }
+
+    /**
+     * Returns the non empty lines of a list of patterns.
+     */
+    static List<String> linesOf(String patterns) {
+        List<String> lines = new ArrayList<String>();
+        if (patterns != null) {
+            for (String line : patterns.split("\r?\n")) {
+                if (line.length() > 0) {
+                    lines.add(line);
+                }
+            }
+        }
+        return lines;
+    }
+
+    private static final class Compiled {
+        final LogScanner scanner;
+        final Charset charset;
+        final int requiredCount;
+
+        Compiled(LogScanner scanner, Charset charset, int requiredCount) {
+            this.scanner = scanner;
+            this.charset = charset;
+            this.requiredCount = requiredCount;
+        }
+    }
+
+    @Extension
+    public static final class DescriptorImpl extends CheckConditionDescriptor {
+
+            /**
+             * This human readable name is used in the configuration screen.
+             */
+            @Override
+            public String getDisplayName() {
+                    return "Check the build log for patterns";
+            }
+
+            /**
+             * The log grows while the build runs, so the
+             * result is not kept for the build.
+             */
+            @Override
+            public boolean isCacheable() {
+                return false;
+            }
+
+            public boolean isApplicable(AbstractProject<?,?> item){
+                return true;
+            }
+    }
+}
@@ -32,14 +32,26 @@ import hudson.model.Describable;
 import hudson.model.Hudson;
 import hudson.model.BuildListener;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.StaplerRequest;
+import net.sf.json.JSONObject;
 import hudson.Extension;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Iterator;
 import java.io.IOException;
 
+import org.jenkinsci.plugins.conditionchecker.AdaptiveOrder;
+import org.jenkinsci.plugins.conditionchecker.AsyncEvaluator;
 import org.jenkinsci.plugins.conditionchecker.CheckCondition;
 import org.jenkinsci.plugins.conditionchecker.CheckConditionDescriptor;
+import org.jenkinsci.plugins.conditionchecker.ConditionChecker;
+import org.jenkinsci.plugins.conditionchecker.ConditionFuture;
+import org.jenkinsci.plugins.conditionchecker.ConditionNormalizer;
+import org.jenkinsci.plugins.conditionchecker.ConditionProgram;
+import org.jenkinsci.plugins.conditionchecker.ConditionSnapshot;
+import org.jenkinsci.plugins.conditionchecker.ConditionSubtreeAction;
+import org.jenkinsci.plugins.conditionchecker.EvaluationContext;
+import org.jenkinsci.plugins.conditionchecker.ParallelEvaluator;
+import org.jenkinsci.plugins.conditionchecker.QueuedBuild;
 /**
  * Extension point for defining a check criteria
  * Before extending this in a seperate plugin
@@ -56,16 +68,50 @@ public class OrGroupCheckCondition extends CheckCondition {
      * negate the result of the OR
      */
     public final boolean negate;
+    /**
+     * check the contained conditions at the same time
+     */
+    public final boolean parallel;
+    /**
+     * check the contained conditions in the order measured to be cheapest
+     */
+    public final boolean reorder;
+    /**
+     * Conditions as they are checked, not persisted
+     */
+    private transient volatile ConditionSnapshot snapshot;
+    /**
+     * Compiled form of the conditions, not persisted
+     */
+    private transient volatile ConditionProgram program;
+    /**
+     * Measured order of the conditions, not persisted
+     */
+    private transient volatile AdaptiveOrder adaptiveOrder;
     /**
      * Constructor taking a list of conditions that need to be checked
      *
      * @param conditions - list of conditions that need to be checked
      * @param negate - invert the result of the OR
+     * @param parallel - check the conditions at the same time
+     * @param reorder - check the conditions in the order measured to be cheapest
      */
     @DataBoundConstructor
-    public OrGroupCheckCondition(ArrayList<CheckCondition>conditions, boolean negate){
+    public OrGroupCheckCondition(ArrayList<CheckCondition> conditions, boolean negate, boolean parallel, boolean reorder){
         this.conditions = conditions;
         this.negate = negate;
+        this.parallel = parallel;
+        this.reorder = reorder;
+    }
+
+    /**
+     * Constructor for groups that check their conditions one after another
+     *
+     * @param conditions - list of conditions that need to be checked
+     * @param negate - invert the result of the OR
+     */
+    public OrGroupCheckCondition(ArrayList<CheckCondition> conditions, boolean negate){
+        this(conditions, negate, false, false);
     }
 
     /**
@@ -81,19 +127,97 @@ public class OrGroupCheckCondition extends CheckCondition {
      */
     public boolean isMet(AbstractBuild build, Launcher launcher,
                     BuildListener listener) throws IOException, InterruptedException {
+        return isMet(build, launcher, listener, EvaluationContext.none());
+    }
 
-        boolean result = false;
+    /**
+     * Checks if the check criteria is met, as part of a larger check.
+     *
+     * @param build
+     * @param launcher
+     * @param listener
+     * @param context - state of the whole check
+     *
+     * @return
+     *      true if the condition is met,
+     *      false if condition is not met
+     */
+    @Override
+    public boolean isMet(AbstractBuild build, Launcher launcher, BuildListener listener,
+                    EvaluationContext context) throws IOException, InterruptedException {
 
-        Iterator<CheckCondition> iterator = conditions.iterator();
         /*  work through the conditions
          * Behave as OR implementation so return
          * so stop checking as soon as we hit a true result.
          */
-        while (!result && iterator.hasNext()) {
-                result = iterator.next().isMet(build, launcher, listener);
+        if (parallel) {
+            boolean result = ParallelEvaluator.evaluate(getSnapshot(), true, build, launcher, listener, context);
+            return negate ? !result : result;
         }
+        if (reorder) {
+            boolean result = getAdaptiveOrder().evaluate(true, build, launcher, listener, context);
+            return negate ? !result : result;
+        }
+        return getProgram().evaluate(build, launcher, listener, context);
+    }
+
+    /**
+     * Starts checking the contained conditions, starting each one once the
+     * previous one completes, or all of them at once if checked in parallel.
+     * The conditions are checked in the configured order even if reordering is on.
+     */
+    @Override
+    public ConditionFuture isMetAsync(AbstractBuild build, Launcher launcher, BuildListener listener,
+                    EvaluationContext context) {
+        return AsyncEvaluator.evaluate(getSnapshot(), true, parallel, negate, build, launcher, listener, context);
+    }
+
+    /**
+     * Returns an unmodifiable snapshot of the conditions, taken the first time
+     * they are checked and used by every later check.
+     */
+    public ConditionSnapshot getSnapshot() {
+        ConditionSnapshot s = snapshot;
+        if (s == null) {
+            s = ConditionSnapshot.of(conditions);
+            snapshot = s;
+        }
+        return s;
+    }
+
+    /**
+     * Known if any contained condition is known to decide the group,
+     * or all of them are known.
+     */
+    @Override
+    public Boolean isMetInQueue(QueuedBuild item) {
+        return QueuedBuild.isMet(getSnapshot(), true, negate, item);
+    }
 
-        return negate ? !result : result;
+    /**
+     * Returns the contained conditions compiled into a {@link ConditionProgram},
+     * this is only used when the group is checked on its own, when nested inside
+     * another group or a {@link ConditionChecker} it is compiled into that program.
+     */
+    public ConditionProgram getProgram() {
+        ConditionProgram p = program;
+        if (p == null) {
+            p = ConditionProgram.compileOr(getSnapshot(), negate);
+            program = p;
+        }
+        return p;
+    }
+
+    /**
+     * Returns the measurements used to reorder the contained conditions.
+     */
+    public AdaptiveOrder getAdaptiveOrder() {
+        AdaptiveOrder o = adaptiveOrder;
+        if (o == null) {
+            o = new AdaptiveOrder(getSnapshot());
+            adaptiveOrder = o;
+        }
+        return o;
     }
     @Extension
     public static final class DescriptorImpl extends CheckConditionDescriptor {
@@ -109,6 +233,19 @@ public class OrGroupCheckCondition extends CheckCondition {
             public boolean isApplicable(AbstractProject<?,?> item){
                 return true;
             }
+
+            /**
+             * Simplifies the contained conditions before they are saved,
+             * keeping them as they are if they were not expanded.
+             */
+            @Override
+            public CheckCondition newInstance(StaplerRequest req, JSONObject formData) throws FormException {
+                CheckCondition collapsed = ConditionSubtreeAction.restore(req, formData);
+                if (collapsed != null) {
+                    return collapsed;
+                }
+                return ConditionNormalizer.of(req).normalize(super.newInstance(req, formData));
+            }
     }
 }
 
@@ -0,0 +1,213 @@
+package org.jenkinsci.plugins.conditionchecker.conditions;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import hudson.Extension;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.BuildListener;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.StaplerRequest;
+import net.sf.json.JSONObject;
+
+import org.jenkinsci.plugins.conditionchecker.AsyncEvaluator;
+import org.jenkinsci.plugins.conditionchecker.BuildEvaluationCache;
+import org.jenkinsci.plugins.conditionchecker.CheckCondition;
+import org.jenkinsci.plugins.conditionchecker.CheckConditionDescriptor;
+import org.jenkinsci.plugins.conditionchecker.ConditionFuture;
+import org.jenkinsci.plugins.conditionchecker.ConditionNormalizer;
+import org.jenkinsci.plugins.conditionchecker.ConditionSnapshot;
+import org.jenkinsci.plugins.conditionchecker.ConditionSubtreeAction;
+import org.jenkinsci.plugins.conditionchecker.EvaluationContext;
+import org.jenkinsci.plugins.conditionchecker.QueuedBuild;
+
+/**
+ * Checks that at least a number of the contained conditions are met,
+ * replacing the nested And and Or groups needed to say "any 3 of these 7".
+ *
+ * The conditions are checked in order, stopping as soon as enough of them
+ * are met or too few are left for enough of them to be met.
+ *
+ * @author Chris Johnson
+ */
+public class ThresholdGroupCheckCondition extends CheckCondition {
+    /**
+     * List of conditions in this group
+     */
+    public final ArrayList<CheckCondition> conditions;
+    /**
+     * number of conditions that must be met
+     */
+    public final int threshold;
+    /**
+     * negate the result of the group
+     */
+    public final boolean negate;
+    /**
+     * Conditions as they are checked, not persisted
+     */
+    private transient volatile ConditionSnapshot snapshot;
+
+    /**
+     * Constructor taking a list of conditions that need to be checked
+     *
+     * @param conditions - list of conditions that need to be checked
+     * @param threshold - number of conditions that must be met
+     * @param negate - invert the result of the group
+     */
+    @DataBoundConstructor
+    public ThresholdGroupCheckCondition(ArrayList<CheckCondition> conditions, int threshold, boolean negate) {
+        this.conditions = conditions;
+        this.threshold = threshold;
+        this.negate = negate;
+    }
+
+    /**
+     * Checks if the check criteria is met.
+     *
+     * @param build
+     * @param launcher
+     * @param listener
+     *
+     * @return
+     *      true if the condition is met,
+     *      false if condition is not met
+     */
+    public boolean isMet(AbstractBuild build, Launcher launcher,
+                    BuildListener listener) throws IOException, InterruptedException {
+        return isMet(build, launcher, listener, EvaluationContext.none());
+    }
+
+    /**
+     * Checks if the check criteria is met, as part of a larger check.
+     *
+     * @param build
+     * @param launcher
+     * @param listener
+     * @param context - state of the whole check
+     *
+     * @return
+     *      true if the condition is met,
+     *      false if condition is not met
+     */
+    @Override
+    public boolean isMet(AbstractBuild build, Launcher launcher, BuildListener listener,
+                    EvaluationContext context) throws IOException, InterruptedException {
+        List<CheckCondition> list = getSnapshot();
+        int met = 0;
+        int left = list.size();
+        boolean result = threshold <= 0;
+        // stop once enough are met, or once the rest can not make up the difference
+        while (!result && met + left >= threshold) {
+            CheckCondition c = list.get(list.size() - left);
+            left--;
+            if (BuildEvaluationCache.isMet(c, build, launcher, listener, context)) {
+                met++;
+                result = met >= threshold;
+            }
+        }
+        return negate ? !result : result;
+    }
+
+    /**
+     * Checks the conditions one after another through
+     * {@link CheckCondition#isMetAsync}, stopping as {@link #isMet} does.
+     */
+    @Override
+    public ConditionFuture isMetAsync(AbstractBuild build, Launcher launcher, BuildListener listener,
+                    EvaluationContext context) {
+        return AsyncEvaluator.evaluateThreshold(getSnapshot(), threshold, negate, build, launcher, listener, context);
+    }
+
+    /**
+     * Known once enough conditions are known to be met,
+     * or too few are left that might be met.
+     */
+    @Override
+    public Boolean isMetInQueue(QueuedBuild item) {
+        List<CheckCondition> list = getSnapshot();
+        int met = 0;
+        int possible = list.size();
+        for (CheckCondition c : list) {
+            Boolean result = c.isMetInQueue(item);
+            item.record(c, result);
+            if (Boolean.TRUE.equals(result)) {
+                met++;
+            } else if (Boolean.FALSE.equals(result)) {
+                possible--;
+            }
+        }
+        if (met >= threshold) {
+            return Boolean.valueOf(!negate);
+        }
+        if (possible < threshold) {
+            return Boolean.valueOf(negate);
+        }
+        return null;
+    }
+
+    /**
+     * Returns an unmodifiable snapshot of the conditions, taken the first time
+     * they are checked and used by every later check.
+     */
+    public ConditionSnapshot getSnapshot() {
+        ConditionSnapshot s = snapshot;
+        if (s == null) {
+            s = ConditionSnapshot.of(conditions);
+            snapshot = s;
+        }
+        return s;
+    }
+
+    @Extension
+    public static final class DescriptorImpl extends CheckConditionDescriptor {
+
+            /**
+             * This human readable name is used in the configuration screen.
+             */
+            @Override
+            public String getDisplayName() {
+                    return "At least a number of the contained conditions";
+            }
+
+            public boolean isApplicable(AbstractProject<?,?> item){
+                return true;
+            }
+
+            /**
+             * Keeps the contained conditions as they are if they were not expanded.
+             */
+            @Override
+            public CheckCondition newInstance(StaplerRequest req, JSONObject formData) throws FormException {
+                CheckCondition collapsed = ConditionSubtreeAction.restore(req, formData);
+                if (collapsed != null) {
+                    return collapsed;
+                }
+                return ConditionNormalizer.of(req).normalize(super.newInstance(req, formData));
+            }
+    }
+}
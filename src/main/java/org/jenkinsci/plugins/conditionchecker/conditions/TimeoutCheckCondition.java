@@ -0,0 +1,243 @@
+package org.jenkinsci.plugins.conditionchecker.conditions;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import hudson.Extension;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.BuildListener;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.StaplerRequest;
+import net.sf.json.JSONObject;
+
+import org.jenkinsci.plugins.conditionchecker.AsyncEvaluator;
+import org.jenkinsci.plugins.conditionchecker.CheckCondition;
+import org.jenkinsci.plugins.conditionchecker.CheckConditionDescriptor;
+import org.jenkinsci.plugins.conditionchecker.ConditionFuture;
+import org.jenkinsci.plugins.conditionchecker.ConditionNormalizer;
+import org.jenkinsci.plugins.conditionchecker.ConditionProgram;
+import org.jenkinsci.plugins.conditionchecker.ConditionSnapshot;
+import org.jenkinsci.plugins.conditionchecker.ConditionSubtreeAction;
+import org.jenkinsci.plugins.conditionchecker.ConditionTimeoutException;
+import org.jenkinsci.plugins.conditionchecker.EvaluationContext;
+import org.jenkinsci.plugins.conditionchecker.QueuedBuild;
+import org.jenkinsci.plugins.conditionchecker.TimeoutResult;
+
+/**
+ * Checks the contained conditions ANDed together, giving up on them
+ * when they take longer than the timeout.
+ *
+ * A condition still running when the time runs out is interrupted and
+ * the result chosen in the configuration is used instead.
+ *
+ * @author Chris Johnson
+ */
+public class TimeoutCheckCondition extends CheckCondition {
+    /**
+     * List of conditions in this group
+     */
+    public final ArrayList<CheckCondition> conditions;
+    /**
+     * time allowed in seconds
+     */
+    public final int timeout;
+    /**
+     * what to do when the time runs out
+     */
+    public final TimeoutResult timeoutResult;
+    /**
+     * Conditions as they are checked, not persisted
+     */
+    private transient volatile ConditionSnapshot snapshot;
+    /**
+     * Compiled form of the conditions, not persisted
+     */
+    private transient volatile ConditionProgram program;
+
+    /**
+     * Constructor taking a list of conditions that need to be checked
+     *
+     * @param conditions - list of conditions that need to be checked
+     * @param timeout - seconds allowed for the check
+     * @param timeoutResult - what to do when the time runs out
+     */
+    @DataBoundConstructor
+    public TimeoutCheckCondition(ArrayList<CheckCondition> conditions, int timeout, TimeoutResult timeoutResult) {
+        this.conditions = conditions;
+        this.timeout = timeout;
+        this.timeoutResult = timeoutResult;
+    }
+
+    /**
+     * Checks if the check criteria is met.
+     *
+     * @param build
+     * @param launcher
+     * @param listener
+     *
+     * @return
+     *      true if the condition is met,
+     *      false if condition is not met
+     */
+    public boolean isMet(AbstractBuild build, Launcher launcher,
+                    BuildListener listener) throws IOException, InterruptedException {
+        return isMet(build, launcher, listener, EvaluationContext.none());
+    }
+
+    /**
+     * Checks if the check criteria is met, as part of a larger check.
+     *
+     * @param build
+     * @param launcher
+     * @param listener
+     * @param context - state of the whole check
+     *
+     * @return
+     *      true if the condition is met,
+     *      false if condition is not met
+     *
+     * @throws ConditionTimeoutException if the time ran out and the build should fail,
+     *      or an outer limit ran out first
+     */
+    @Override
+    public boolean isMet(AbstractBuild build, Launcher launcher, BuildListener listener,
+                    EvaluationContext context) throws IOException, InterruptedException {
+        if (timeout <= 0) {
+            return getProgram().evaluate(build, launcher, listener, context);
+        }
+        EvaluationContext limited = context.withTimeout(TimeUnit.SECONDS.toNanos(timeout),
+                getTimeoutResult(), "timeout");
+        try {
+            return getProgram().evaluate(build, launcher, listener, limited);
+        } catch (ConditionTimeoutException e) {
+            if (e.getLimit() != limited || getTimeoutResult() == TimeoutResult.FAIL) {
+                throw e;
+            }
+            return getTimeoutResult() == TimeoutResult.TRUE;
+        }
+    }
+
+    /**
+     * Starts checking the contained conditions, the future completes with
+     * the configured result when the time runs out.
+     */
+    @Override
+    public ConditionFuture isMetAsync(AbstractBuild build, Launcher launcher, BuildListener listener,
+                    EvaluationContext context) {
+        if (timeout <= 0) {
+            return AsyncEvaluator.evaluate(getSnapshot(), false, false, false, build, launcher, listener, context);
+        }
+        EvaluationContext limited = context.withTimeout(TimeUnit.SECONDS.toNanos(timeout),
+                getTimeoutResult(), "timeout");
+        return limited.recover(
+                AsyncEvaluator.evaluate(getSnapshot(), false, false, false, build, launcher, listener, limited));
+    }
+
+    /**
+     * Known if the contained conditions are known and running out of time
+     * would not change the result.
+     */
+    @Override
+    public Boolean isMetInQueue(QueuedBuild item) {
+        Boolean result = QueuedBuild.isMet(getSnapshot(), false, false, item);
+        return timeout <= 0 ? result : QueuedBuild.withTimeout(result, getTimeoutResult());
+    }
+
+    /**
+     * Returns what to do when the time runs out, false if not set.
+     */
+    public TimeoutResult getTimeoutResult() {
+        return timeoutResult == null ? TimeoutResult.FALSE : timeoutResult;
+    }
+
+    /**
+     * Returns an unmodifiable snapshot of the conditions, taken the first time
+     * they are checked and used by every later check.
+     */
+    public ConditionSnapshot getSnapshot() {
+        ConditionSnapshot s = snapshot;
+        if (s == null) {
+            s = ConditionSnapshot.of(conditions);
+            snapshot = s;
+        }
+        return s;
+    }
+
+    /**
+     * Returns the contained conditions compiled into a {@link ConditionProgram}.
+     */
+    public ConditionProgram getProgram() {
+        ConditionProgram p = program;
+        if (p == null) {
+            p = ConditionProgram.compileAnd(getSnapshot(), false);
+            program = p;
+        }
+        return p;
+    }
+
+    @Extension
+    public static final class DescriptorImpl extends CheckConditionDescriptor {
+
+            /**
+             * This human readable name is used in the configuration screen.
+             */
+            @Override
+            public String getDisplayName() {
+                    return "Limit the time taken by the contained conditions";
+            }
+
+            public boolean isApplicable(AbstractProject<?,?> item){
+                return true;
+            }
+
+            /**
+             * Simplifies the contained conditions before they are saved,
+             * keeping them as they are if they were not expanded.
+             */
+            @Override
+            public CheckCondition newInstance(StaplerRequest req, JSONObject formData) throws FormException {
+                CheckCondition collapsed = ConditionSubtreeAction.restore(req, formData);
+                if (collapsed != null) {
+                    return collapsed;
+                }
+                return ConditionNormalizer.of(req).normalize(super.newInstance(req, formData));
+            }
+
+            /**
+             * The result depends on how long the check took,
+             * so it is not shared with other checks of the build.
+             */
+            @Override
+            public boolean isCacheable() {
+                return false;
+            }
+
+            public TimeoutResult[] getTimeoutResults() {
+                return TimeoutResult.values();
+            }
+    }
+}
@@ -34,9 +34,13 @@ import hudson.model.BuildListener;
 import org.kohsuke.stapler.DataBoundConstructor;
 import hudson.Extension;
 import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Set;
 
+import org.jenkinsci.plugins.conditionchecker.BuildEvent;
 import org.jenkinsci.plugins.conditionchecker.CheckCondition;
 import org.jenkinsci.plugins.conditionchecker.CheckConditionDescriptor;
+import org.jenkinsci.plugins.conditionchecker.QueuedBuild;
 /**
  * Extension point for defining a check criteria
  * Before extending this in a seperate plugin
@@ -51,6 +55,7 @@ public class TrueCheckCondition extends CheckCondition {
     @DataBoundConstructor
     public TrueCheckCondition(){
     }
+
     /**
      * Checks if the check criteria is met.
      *
@@ -67,6 +72,14 @@ public class TrueCheckCondition extends CheckCondition {
         return true;
     }
 
+    /**
+     * The result is always known.
+     */
+    @Override
+    public Boolean isMetInQueue(QueuedBuild item) {
+        return Boolean.TRUE;
+    }
+
     @Extension
     public static final class DescriptorImpl extends CheckConditionDescriptor {
 
@@ -78,6 +91,30 @@ public class TrueCheckCondition extends CheckCondition {
                     return "Return True for all checks";
             }
 
+            /**
+             * The result is the same for every build.
+             */
+            @Override
+            public boolean isBuildIndependent() {
+                return true;
+            }
+
+            /**
+             * The result never changes.
+             */
+            @Override
+            public boolean isCacheable() {
+                return true;
+            }
+
+            /**
+             * The result is known as soon as the build starts.
+             */
+            @Override
+            public Set<BuildEvent> getDependencies() {
+                return EnumSet.noneOf(BuildEvent.class);
+            }
+
             public boolean isApplicable(AbstractProject<?,?> item){
                 return true;
             }
@@ -0,0 +1,118 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+
+import org.jenkinsci.plugins.conditionchecker.ParallelEvaluatorTest.Leaf;
+import org.jenkinsci.plugins.conditionchecker.conditions.ThresholdGroupCheckCondition;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that groups checked through {@link AsyncEvaluator} give the same
+ * result as the blocking checks: groups checked all at once are decided in
+ * the configured order, like the same groups checked one after another.
+ *
+ * @author Chris Johnson
+ */
+public class AsyncEvaluatorTest {
+
+    private static String outcome(List<CheckCondition> conditions, boolean decisive, boolean parallel,
+                    boolean negate) throws InterruptedException {
+        try {
+            return String.valueOf(AsyncEvaluator.evaluate(conditions, decisive, parallel, negate,
+                    null, null, null, new EvaluationContext()).get());
+        } catch (ExecutionException e) {
+            return e.getCause().getMessage();
+        }
+    }
+
+    @Test
+    public void racesAgreeWithSequences() throws Exception {
+        Random random = new Random(7);
+        for (int round = 0; round < 300; round++) {
+            int size = 2 + random.nextInt(5);
+            ArrayList<CheckCondition> sequential = new ArrayList<CheckCondition>();
+            ArrayList<CheckCondition> parallel = new ArrayList<CheckCondition>();
+            for (int i = 0; i < size; i++) {
+                int kind = random.nextInt(3);
+                sequential.add(new Leaf(i, kind, 0));
+                // earlier conditions tend to finish later, to mix up the completion order
+                parallel.add(new Leaf(i, kind, random.nextInt(3) * (size - i)));
+            }
+            boolean negate = random.nextBoolean();
+            for (boolean decisive : new boolean[] {false, true}) {
+                assertEquals(decisive + " " + round, outcome(sequential, decisive, false, negate),
+                        outcome(parallel, decisive, true, negate));
+            }
+        }
+    }
+
+    @Test
+    public void laterDecisiveResultDoesNotHideEarlierFailure() throws Exception {
+        ArrayList<CheckCondition> conditions = new ArrayList<CheckCondition>();
+        conditions.add(new Leaf(0, 2, 50));
+        conditions.add(new Leaf(1, 0, 0));
+        assertEquals("leaf 0", outcome(conditions, false, true, false));
+    }
+
+    @Test
+    public void laterFailureIsIgnoredOnceDecided() throws Exception {
+        ArrayList<CheckCondition> conditions = new ArrayList<CheckCondition>();
+        conditions.add(new Leaf(0, 1, 50));
+        conditions.add(new Leaf(1, 2, 0));
+        assertEquals("true", outcome(conditions, true, true, false));
+    }
+
+    @Test
+    public void thresholdGroupsAgreeWithBlockingChecks() throws Exception {
+        Random random = new Random(11);
+        for (int round = 0; round < 300; round++) {
+            int size = random.nextInt(6);
+            ArrayList<CheckCondition> conditions = new ArrayList<CheckCondition>();
+            for (int i = 0; i < size; i++) {
+                conditions.add(new Leaf(i, random.nextInt(3), 0));
+            }
+            ThresholdGroupCheckCondition group = new ThresholdGroupCheckCondition(conditions,
+                    random.nextInt(size + 2), random.nextBoolean());
+            String blocking;
+            try {
+                blocking = String.valueOf(group.isMet(null, null, null));
+            } catch (IOException e) {
+                blocking = e.getMessage();
+            }
+            String async;
+            try {
+                async = String.valueOf(group.isMetAsync(null, null, null, new EvaluationContext()).get());
+            } catch (ExecutionException e) {
+                async = e.getCause().getMessage();
+            }
+            assertEquals("threshold " + round, blocking, async);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import hudson.model.Job;
+import hudson.model.Result;
+import hudson.model.Run;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the answers of the index against the builds themselves, and
+ * that the index survives restarts, deleted builds, damaged files and
+ * renamed jobs.
+ *
+ * @author Chris Johnson
+ */
+public class BuildHistoryIndexTest {
+    private static final Result[] RESULTS = {
+        Result.SUCCESS, Result.UNSTABLE, Result.FAILURE, Result.NOT_BUILT, Result.ABORTED };
+
+    /**
+     * Job keeping its builds in memory, in a directory of its own.
+     */
+    static final class FakeJob extends Job<FakeJob, FakeRun> {
+        File root;
+        final SortedMap<Integer, FakeRun> runs = new TreeMap<Integer, FakeRun>(Collections.<Integer>reverseOrder());
+
+        FakeJob(File root) {
+            super(null, root.getName());
+            this.root = root;
+        }
+
+        FakeRun add(int number, Result result) {
+            FakeRun run = new FakeRun(this, number, result);
+            runs.put(Integer.valueOf(number), run);
+            return run;
+        }
+
+        @Override
+        public File getRootDir() {
+            return root;
+        }
+
+        @Override
+        public boolean isBuildable() {
+            return true;
+        }
+
+        @Override
+        protected SortedMap<Integer, ? extends FakeRun> _getRuns() {
+            return runs;
+        }
+
+        @Override
+        protected void removeRun(FakeRun run) {
+            runs.remove(Integer.valueOf(run.getNumber()));
+        }
+    }
+
+    /**
+     * Completed build started at its number in seconds, taking its number in seconds.
+     */
+    static final class FakeRun extends Run<FakeJob, FakeRun> {
+        private final int number;
+        private final Result result;
+
+        FakeRun(FakeJob job, int number, Result result) {
+            super(job, time(number));
+            this.number = number;
+            this.result = result;
+        }
+
+        private static Calendar time(int number) {
+            Calendar c = Calendar.getInstance();
+            c.setTimeInMillis(number * 1000L);
+            return c;
+        }
+
+        @Override
+        public int getNumber() {
+            return number;
+        }
+
+        @Override
+        public Result getResult() {
+            return result;
+        }
+
+        @Override
+        public long getDuration() {
+            return number * 1000L;
+        }
+
+        @Override
+        public boolean isBuilding() {
+            return false;
+        }
+
+        @Override
+        public FakeRun getPreviousBuild() {
+            SortedMap<Integer, FakeRun> before = getParent().runs.tailMap(Integer.valueOf(number - 1));
+            return before.isEmpty() ? null : before.get(before.firstKey());
+        }
+    }
+
+    private File dir;
+
+    @Before
+    public void createDirectory() throws IOException {
+        dir = File.createTempFile("job", "");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @After
+    public void deleteDirectory() {
+        delete(dir);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static FakeJob job(File root, int count) {
+        FakeJob job = new FakeJob(root);
+        for (int i = 1; i <= count; i++) {
+            job.add(i, RESULTS[(i * 7) % 5 % 3 == 0 ? 0 : (i * 3) % 5]);
+        }
+        return job;
+    }
+
+    /**
+     * Checks every query of the index against the builds of the job.
+     */
+    private static void assertAgrees(FakeJob job, BuildHistoryIndex index) {
+        List<FakeRun> runs = new ArrayList<FakeRun>(job.runs.values());
+        Collections.reverse(runs);
+        assertEquals(runs.size(), index.size());
+        int last = runs.isEmpty() ? 0 : runs.get(runs.size() - 1).getNumber();
+        for (int before = 1; before <= last + 2; before++) {
+            List<FakeRun> earlier = new ArrayList<FakeRun>();
+            for (FakeRun run : runs) {
+                if (run.getNumber() < before) {
+                    earlier.add(run);
+                }
+            }
+            for (Result result : RESULTS) {
+                int worse = 0;
+                long lastGood = -1;
+                for (int i = earlier.size() - 1; i >= 0; i--) {
+                    if (earlier.get(i).getResult().isBetterOrEqualTo(result)) {
+                        lastGood = earlier.get(i).getTimeInMillis();
+                        break;
+                    }
+                    worse++;
+                }
+                String message = "before " + before + " result " + result;
+                assertEquals(message, Math.min(worse, 3), index.countWorseThan(before, result, 3));
+                assertEquals(message, lastGood, index.lastAtLeast(before, result));
+            }
+            long sum = 0;
+            int n = Math.min(2, earlier.size());
+            for (int i = earlier.size() - n; i < earlier.size(); i++) {
+                sum += earlier.get(i).getDuration();
+            }
+            assertEquals("before " + before, n == 0 ? -1 : sum / n, index.averageDuration(before, 2));
+        }
+    }
+
+    @Test
+    public void answersAgreeWithTheBuilds() {
+        FakeJob job = job(dir, 40);
+        assertAgrees(job, BuildHistoryIndex.of(job));
+    }
+
+    @Test
+    public void changesAreKeptAcrossRestarts() {
+        FakeJob job = job(dir, 20);
+        BuildHistoryIndex index = BuildHistoryIndex.of(job);
+        File file = new File(dir, BuildHistoryIndex.FILE_NAME);
+        long snapshot = file.length();
+
+        index.add(job.add(21, Result.FAILURE));
+        FakeRun removed = job.runs.get(Integer.valueOf(5));
+        job.runs.remove(Integer.valueOf(5));
+        index.remove(removed);
+        assertAgrees(job, index);
+        // the changes were appended rather than the whole index written again
+        assertTrue(file.length() > snapshot && file.length() < snapshot + 64);
+
+        FakeJob restarted = new FakeJob(dir);
+        restarted.runs.putAll(job.runs);
+        assertNull(BuildHistoryIndex.peek(restarted));
+        assertAgrees(job, BuildHistoryIndex.of(restarted));
+    }
+
+    @Test
+    public void buildsDeletedWhileDownAreDropped() {
+        FakeJob job = job(dir, 20);
+        BuildHistoryIndex.of(job);
+
+        FakeJob restarted = job(dir, 20);
+        restarted.runs.remove(Integer.valueOf(1));
+        restarted.runs.remove(Integer.valueOf(12));
+        restarted.add(21, Result.SUCCESS);
+        assertAgrees(restarted, BuildHistoryIndex.of(restarted));
+    }
+
+    @Test
+    public void damagedFilesAreRebuilt() throws IOException {
+        FakeJob job = job(dir, 20);
+        BuildHistoryIndex.of(job);
+        RandomAccessFile file = new RandomAccessFile(new File(dir, BuildHistoryIndex.FILE_NAME), "rw");
+        try {
+            // a count of builds longer than the file
+            file.seek(4);
+            file.writeInt(Integer.MAX_VALUE);
+        } finally {
+            file.close();
+        }
+        FakeJob restarted = job(dir, 20);
+        assertAgrees(restarted, BuildHistoryIndex.of(restarted));
+    }
+
+    @Test
+    public void renamedJobsKeepTheirIndex() {
+        FakeJob job = job(dir, 10);
+        BuildHistoryIndex index = BuildHistoryIndex.of(job);
+        File renamed = new File(dir, "renamed");
+        renamed.mkdirs();
+        assertTrue(new File(dir, BuildHistoryIndex.FILE_NAME).renameTo(new File(renamed, BuildHistoryIndex.FILE_NAME)));
+        job.root = renamed;
+
+        index.add(job.add(11, Result.FAILURE));
+        FakeJob restarted = new FakeJob(renamed);
+        restarted.runs.putAll(job.runs);
+        assertAgrees(job, BuildHistoryIndex.of(restarted));
+    }
+}
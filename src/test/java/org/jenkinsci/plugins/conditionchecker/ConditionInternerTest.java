@@ -0,0 +1,77 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.jenkinsci.plugins.conditionchecker.conditions.ChangedPathCheckCondition;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks that compiled state is shared by configuration, and that
+ * the conditions themselves are not.
+ *
+ * @author Chris Johnson
+ */
+public class ConditionInternerTest {
+
+    @Test
+    public void equalKeysShareTheFirstValue() {
+        String first = new String("value");
+        String second = new String("value");
+        long hits = ConditionInterner.getHits();
+        assertSame(first, ConditionInterner.share(Arrays.<Object>asList("equal", "key"), first));
+        assertSame(first, ConditionInterner.share(Arrays.<Object>asList("equal", "key"), second));
+        assertEquals(hits + 1, ConditionInterner.getHits());
+    }
+
+    @Test
+    public void differentKeysOrTypesAreNotShared() {
+        String value = "value";
+        assertSame(value, ConditionInterner.share(Arrays.<Object>asList("one"), value));
+        StringBuilder other = new StringBuilder("value");
+        assertSame(other, ConditionInterner.share(Arrays.<Object>asList("two"), other));
+        // a value of another type under the same key is not returned for it
+        assertSame(other, ConditionInterner.share(Arrays.<Object>asList("one"), other));
+    }
+
+    @Test
+    public void conditionsShareCompiledGlobsOnly() {
+        ChangedPathCheckCondition a = new ChangedPathCheckCondition("src/**/*.java", "**/test/**");
+        ChangedPathCheckCondition b = new ChangedPathCheckCondition("src/**/*.java", "**/test/**");
+        ChangedPathCheckCondition c = new ChangedPathCheckCondition("src/**/*.java", "");
+        assertSame(a.getGlobs(), b.getGlobs());
+        assertNotSame(a.getGlobs(), c.getGlobs());
+
+        ArrayList<CheckCondition> conditions = new ArrayList<CheckCondition>();
+        conditions.add(a);
+        conditions.add(b);
+        ConditionChecker checker = new ConditionChecker(conditions, false);
+        assertSame(a, checker.conditions.get(0));
+        assertSame(b, checker.conditions.get(1));
+    }
+}
@@ -0,0 +1,134 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.jenkinsci.plugins.conditionchecker.ConditionProgramTest.Fixed;
+import org.jenkinsci.plugins.conditionchecker.conditions.ThresholdGroupCheckCondition;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that simplified conditions give the same result as the conditions
+ * they were simplified from, checking the same conditions in the same order.
+ *
+ * @author Chris Johnson
+ */
+public class ConditionNormalizerTest {
+
+    @BeforeClass
+    public static void setUpDescriptors() {
+        ConditionProgramTest.registerDescriptors();
+    }
+
+    @Test
+    public void simplifiedTreesAgreeWithTheTree() throws Exception {
+        Random random = new Random(5);
+        for (int round = 0; round < 500; round++) {
+            List<Integer> calls = new ArrayList<Integer>();
+            ArrayList<CheckCondition> conditions = ConditionProgramTest.randomConditions(random, 4, new int[1],
+                    calls, true);
+            CheckCondition tree = random.nextBoolean()
+                    ? new AndGroupCheckCondition(conditions, random.nextBoolean())
+                    : new OrGroupCheckCondition(conditions, random.nextBoolean());
+            CheckCondition simplified = new ConditionNormalizer().normalize(tree);
+
+            List<Integer> expectedCalls = new ArrayList<Integer>();
+            boolean expected = ConditionProgramTest.reference(tree, expectedCalls);
+            List<Integer> simplifiedCalls = new ArrayList<Integer>();
+            assertEquals("round " + round, expected, ConditionProgramTest.reference(simplified, simplifiedCalls));
+            assertEquals("round " + round, expectedCalls, simplifiedCalls);
+            assertEquals("round " + round, expected, simplified.isMet(null, null, null));
+            assertEquals("round " + round, expectedCalls, calls);
+        }
+    }
+
+    @Test
+    public void flattensGroupsOfTheSameType() {
+        List<Integer> calls = new ArrayList<Integer>();
+        ArrayList<CheckCondition> inner = new ArrayList<CheckCondition>();
+        inner.add(new Fixed(0, true, calls));
+        inner.add(new Fixed(1, true, calls));
+        ArrayList<CheckCondition> outer = new ArrayList<CheckCondition>();
+        outer.add(new AndGroupCheckCondition(inner, false));
+        outer.add(new Fixed(2, true, calls));
+
+        ConditionNormalizer normalizer = new ConditionNormalizer();
+        AndGroupCheckCondition and = (AndGroupCheckCondition) normalizer.normalize(
+                new AndGroupCheckCondition(outer, false));
+        assertEquals(3, and.conditions.size());
+        assertSame(inner.get(0), and.conditions.get(0));
+        assertEquals("Flattened 1 group(s) into the group containing them", normalizer.getSummary().get(0));
+    }
+
+    @Test
+    public void keepsConditionsCheckedBeforeADecidingConstant() {
+        List<Integer> calls = new ArrayList<Integer>();
+        ArrayList<CheckCondition> conditions = new ArrayList<CheckCondition>();
+        conditions.add(new Fixed(0, true, calls));
+        conditions.add(new FalseCheckCondition());
+        conditions.add(new Fixed(1, true, calls));
+
+        AndGroupCheckCondition and = (AndGroupCheckCondition) new ConditionNormalizer().normalize(
+                new AndGroupCheckCondition(conditions, false));
+        assertEquals(2, and.conditions.size());
+        assertSame(conditions.get(0), and.conditions.get(0));
+        assertTrue(and.conditions.get(1) instanceof FalseCheckCondition);
+    }
+
+    @Test
+    public void simplifiesThresholdConditionsWithoutRemovingAny() throws Exception {
+        List<Integer> calls = new ArrayList<Integer>();
+        ArrayList<CheckCondition> single = new ArrayList<CheckCondition>();
+        single.add(new Fixed(0, true, calls));
+        ArrayList<CheckCondition> conditions = new ArrayList<CheckCondition>();
+        conditions.add(new AndGroupCheckCondition(single, false));
+        conditions.add(new TrueCheckCondition());
+        conditions.add(new Fixed(1, false, calls));
+
+        ThresholdGroupCheckCondition threshold = (ThresholdGroupCheckCondition) new ConditionNormalizer().normalize(
+                new ThresholdGroupCheckCondition(conditions, 2, true));
+        assertEquals(3, threshold.conditions.size());
+        assertSame(single.get(0), threshold.conditions.get(0));
+        assertTrue(threshold.conditions.get(1) instanceof TrueCheckCondition);
+        assertEquals(2, threshold.threshold);
+        assertTrue(threshold.negate);
+        assertEquals(false, threshold.isMet(null, null, null));
+    }
+
+    @Test
+    public void emptyGroupsBecomeConstants() {
+        ConditionNormalizer normalizer = new ConditionNormalizer();
+        assertTrue(normalizer.normalize(new OrGroupCheckCondition(new ArrayList<CheckCondition>(), false))
+                instanceof FalseCheckCondition);
+        assertTrue(normalizer.normalize(new OrGroupCheckCondition(new ArrayList<CheckCondition>(), true))
+                instanceof TrueCheckCondition);
+        assertEquals("Replaced 2 group(s) with a constant result by True or False", normalizer.getSummary().get(0));
+    }
+}
@@ -0,0 +1,220 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a compiled program gives the result of the condition tree
+ * it was compiled from, checking the same conditions in the same order.
+ *
+ * @author Chris Johnson
+ */
+public class ConditionProgramTest {
+
+    /**
+     * Condition with a fixed result that logs each time it is checked.
+     */
+    static class Fixed extends CheckCondition {
+        final int index;
+        final boolean value;
+        final List<Integer> calls;
+
+        Fixed(int index, boolean value, List<Integer> calls) {
+            this.index = index;
+            this.value = value;
+            this.calls = calls;
+        }
+
+        public boolean isMet(AbstractBuild build, Launcher launcher, BuildListener listener) {
+            calls.add(Integer.valueOf(index));
+            return value;
+        }
+
+        /**
+         * Not cacheable, so every check of a leaf is logged.
+         */
+        public static final class DescriptorImpl extends CheckConditionDescriptor {
+            @Override
+            public String getDisplayName() {
+                return "Fixed result";
+            }
+
+            @Override
+            public boolean isCacheable() {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Registers the descriptors of the conditions used by the tests,
+     * as Jenkins is not running.
+     */
+    static void registerDescriptors() {
+        DescriptorRegistry.setStandalone(Arrays.<CheckConditionDescriptor>asList(
+                new Fixed.DescriptorImpl(), new TrueCheckCondition.DescriptorImpl(),
+                new FalseCheckCondition.DescriptorImpl()));
+    }
+
+    @BeforeClass
+    public static void setUpDescriptors() {
+        registerDescriptors();
+    }
+
+    /**
+     * Builds a random tree of And and Or groups checked one condition after
+     * another, with {@link Fixed} leaves numbered in configured order.
+     *
+     * @param constants - also use True and False conditions
+     */
+    static ArrayList<CheckCondition> randomConditions(Random random, int depth, int[] next, List<Integer> calls,
+                    boolean constants) {
+        ArrayList<CheckCondition> conditions = new ArrayList<CheckCondition>();
+        int size = random.nextInt(4);
+        for (int i = 0; i < size; i++) {
+            int kind = depth == 0 ? 0 : random.nextInt(constants ? 5 : 3);
+            if (kind == 0) {
+                conditions.add(new Fixed(next[0]++, random.nextBoolean(), calls));
+            } else if (kind == 1) {
+                conditions.add(new AndGroupCheckCondition(randomConditions(random, depth - 1, next, calls, constants),
+                        random.nextBoolean()));
+            } else if (kind == 2) {
+                conditions.add(new OrGroupCheckCondition(randomConditions(random, depth - 1, next, calls, constants),
+                        random.nextBoolean()));
+            } else {
+                conditions.add(kind == 3 ? new TrueCheckCondition() : new FalseCheckCondition());
+            }
+        }
+        return conditions;
+    }
+
+    /**
+     * Works out the result of a condition by walking the tree, checking
+     * the leaves as the groups would, and logging them to the given list.
+     */
+    static boolean reference(CheckCondition c, List<Integer> calls) {
+        if (c instanceof Fixed) {
+            calls.add(Integer.valueOf(((Fixed) c).index));
+            return ((Fixed) c).value;
+        }
+        if (c instanceof TrueCheckCondition || c instanceof FalseCheckCondition) {
+            return c instanceof TrueCheckCondition;
+        }
+        if (c instanceof AndGroupCheckCondition) {
+            AndGroupCheckCondition and = (AndGroupCheckCondition) c;
+            return reference(and.conditions, false, and.negate, calls);
+        }
+        OrGroupCheckCondition or = (OrGroupCheckCondition) c;
+        return reference(or.conditions, true, or.negate, calls);
+    }
+
+    static boolean reference(List<CheckCondition> conditions, boolean decisive, boolean negate, List<Integer> calls) {
+        boolean result = !decisive;
+        for (CheckCondition c : conditions) {
+            if (reference(c, calls) == decisive) {
+                result = decisive;
+                break;
+            }
+        }
+        return result != negate;
+    }
+
+    @Test
+    public void programsAgreeWithTheTree() throws Exception {
+        Random random = new Random(11);
+        for (int round = 0; round < 500; round++) {
+            List<Integer> calls = new ArrayList<Integer>();
+            ArrayList<CheckCondition> conditions = randomConditions(random, 4, new int[1], calls, true);
+            boolean or = random.nextBoolean();
+            boolean negate = random.nextBoolean();
+
+            List<Integer> expectedCalls = new ArrayList<Integer>();
+            boolean expected = reference(conditions, or, negate, expectedCalls);
+
+            ConditionProgram program = or
+                    ? ConditionProgram.compileOr(conditions, negate)
+                    : ConditionProgram.compileAnd(conditions, negate);
+            assertEquals("round " + round, expected, program.evaluate(null, null, null));
+            assertEquals("round " + round, expectedCalls, calls);
+        }
+    }
+
+    @Test
+    public void leavesThatAreNotCacheableAreCheckedEveryTime() throws Exception {
+        List<Integer> calls = new ArrayList<Integer>();
+        Fixed leaf = new Fixed(0, true, calls);
+        assertTrue(leaf.getDescriptor() instanceof Fixed.DescriptorImpl);
+        assertEquals(StructuralHash.NONE, StructuralHash.of(leaf));
+
+        ArrayList<CheckCondition> conditions = new ArrayList<CheckCondition>();
+        conditions.add(leaf);
+        conditions.add(new Fixed(0, true, calls));
+        assertTrue(ConditionProgram.compileAnd(conditions, false).evaluate(null, null, null));
+        assertEquals(2, calls.size());
+    }
+
+    @Test
+    public void emptyGroupsAreConstants() throws Exception {
+        ArrayList<CheckCondition> empty = new ArrayList<CheckCondition>();
+        assertTrue(ConditionProgram.compileAnd(empty, false).evaluate(null, null, null));
+        assertFalse(ConditionProgram.compileAnd(empty, true).evaluate(null, null, null));
+        assertFalse(ConditionProgram.compileOr(empty, false).evaluate(null, null, null));
+        assertTrue(ConditionProgram.compileOr(null, true).evaluate(null, null, null));
+
+        ArrayList<CheckCondition> nested = new ArrayList<CheckCondition>();
+        nested.add(new OrGroupCheckCondition(new ArrayList<CheckCondition>(), false));
+        assertEquals(1, ConditionProgram.compileAnd(nested, false).size());
+        assertFalse(ConditionProgram.compileAnd(nested, false).evaluate(null, null, null));
+    }
+
+    @Test
+    public void deepTreesDoNotOverflow() throws Exception {
+        List<Integer> calls = new ArrayList<Integer>();
+        ArrayList<CheckCondition> conditions = new ArrayList<CheckCondition>();
+        conditions.add(new Fixed(0, true, calls));
+        int depth = 20000;
+        for (int i = 1; i < depth; i++) {
+            ArrayList<CheckCondition> outer = new ArrayList<CheckCondition>();
+            outer.add(new Fixed(i, true, calls));
+            outer.add(new AndGroupCheckCondition(conditions, false));
+            conditions = outer;
+        }
+        ConditionProgram program = ConditionProgram.compileAnd(conditions, false);
+        assertEquals(depth, program.size());
+        assertTrue(program.evaluate(null, null, null));
+        assertEquals(depth, calls.size());
+    }
+}
@@ -0,0 +1,142 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.jenkinsci.plugins.conditionchecker.ConditionProgramTest.Fixed;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that the result of every condition read back from the bit sets
+ * is the result it had when the checker was checked, and that the
+ * conditions that were not reached are skipped.
+ *
+ * @author Chris Johnson
+ */
+public class ConditionResultActionTest {
+
+    /**
+     * Works out the result of each node by path, null for the nodes not reached.
+     *
+     * @return the result of the node, or null if it was not reached
+     */
+    private static Boolean expect(CheckCondition c, String path, boolean reached, Map<String, Boolean> out) {
+        Boolean value = null;
+        if (c instanceof Fixed) {
+            value = reached ? Boolean.valueOf(((Fixed) c).value) : null;
+        } else if (c instanceof AndGroupCheckCondition) {
+            AndGroupCheckCondition and = (AndGroupCheckCondition) c;
+            value = expect(and.conditions, false, and.negate, path, reached, out);
+        } else if (c instanceof OrGroupCheckCondition) {
+            OrGroupCheckCondition or = (OrGroupCheckCondition) c;
+            value = expect(or.conditions, true, or.negate, path, reached, out);
+        }
+        out.put(path, value);
+        return value;
+    }
+
+    private static Boolean expect(List<CheckCondition> conditions, boolean decisive, boolean negate,
+                    String path, boolean reached, Map<String, Boolean> out) {
+        boolean decided = false;
+        for (int i = 0; i < conditions.size(); i++) {
+            String child = path.length() == 0 ? String.valueOf(i) : path + "/" + i;
+            Boolean value = expect(conditions.get(i), child, reached && !decided, out);
+            if (value != null && value.booleanValue() == decisive) {
+                decided = true;
+            }
+        }
+        return reached ? Boolean.valueOf((decided == decisive) != negate) : null;
+    }
+
+    private static ConditionResultAction check(ConditionChecker checker) throws Exception {
+        EvaluationContext context = new EvaluationContext().trace();
+        boolean result = checker.getProgram().evaluate(null, null, null, context);
+        return new ConditionResultAction(checker, result, context);
+    }
+
+    @Test
+    public void replayedResultsMatchTheCheck() throws Exception {
+        Random random = new Random(3);
+        for (int round = 0; round < 300; round++) {
+            List<Integer> calls = new ArrayList<Integer>();
+            ArrayList<CheckCondition> conditions = ConditionProgramTest.randomConditions(random, 4, new int[1],
+                    calls, false);
+            boolean negate = random.nextBoolean();
+            ConditionChecker checker = new ConditionChecker(conditions, negate);
+            ConditionResultAction action = check(checker);
+
+            Map<String, Boolean> expected = new TreeMap<String, Boolean>();
+            expected.put("", expect(conditions, false, negate, "", true, expected));
+            assertEquals("round " + round, expected.size(), action.getNodeCount());
+            assertEquals("round " + round, expected.get(""), Boolean.valueOf(action.getResult()));
+            for (Map.Entry<String, Boolean> e : expected.entrySet()) {
+                assertEquals("round " + round + " at " + e.getKey(), e.getValue(), action.isMet(e.getKey()));
+                assertEquals("round " + round + " at " + e.getKey(), e.getValue() == null,
+                        action.isSkipped(e.getKey()));
+            }
+        }
+    }
+
+    @Test
+    public void resultsPastTheFirstWordAreKept() throws Exception {
+        List<Integer> calls = new ArrayList<Integer>();
+        ArrayList<CheckCondition> conditions = new ArrayList<CheckCondition>();
+        for (int i = 0; i < 150; i++) {
+            conditions.add(new Fixed(i, i != 100, calls));
+        }
+        ConditionResultAction action = check(new ConditionChecker(conditions, false));
+        assertEquals(151, action.getNodeCount());
+        assertFalse(action.getResult());
+        assertEquals(Boolean.TRUE, action.isMet("99"));
+        assertEquals(Boolean.FALSE, action.isMet("100"));
+        assertTrue(action.isSkipped("101"));
+        assertTrue(action.isSkipped("149"));
+    }
+
+    @Test
+    public void unknownPathsAreNotFound() throws Exception {
+        List<Integer> calls = new ArrayList<Integer>();
+        ArrayList<CheckCondition> conditions = new ArrayList<CheckCondition>();
+        conditions.add(new Fixed(0, true, calls));
+        ConditionResultAction action = check(new ConditionChecker(conditions, false));
+        assertNull(action.isMet("1"));
+        assertNull(action.isMet("0/0"));
+        assertNull(action.isMet("x"));
+        try {
+            action.isSkipped("-1");
+            fail("no condition at -1");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that scanning a file finds the same patterns as searching
+ * the whole text, including matches across the chunks it is read in.
+ *
+ * @author Chris Johnson
+ */
+public class LogScannerTest {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final LogScanner.Listener ALL = new LogScanner.Listener() {
+        public boolean found(int pattern, BitSet found) {
+            return false;
+        }
+    };
+
+    private File file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("log", ".txt");
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    private void write(String text) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(text.getBytes(UTF8));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String random(Random random, String alphabet, int length) {
+        StringBuilder s = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            s.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return s.toString();
+    }
+
+    @Test
+    public void findsWhatTheTextContains() throws Exception {
+        Random random = new Random(13);
+        for (int round = 0; round < 100; round++) {
+            int length = random.nextInt(4) == 0 ? LogScanner.CHUNK * 2 + random.nextInt(1000) : random.nextInt(200);
+            String text = random(random, "abc\n", length);
+            write(text);
+
+            List<String> patterns = new ArrayList<String>();
+            BitSet expected = new BitSet();
+            int count = 1 + random.nextInt(8);
+            for (int i = 0; i < count; i++) {
+                if (random.nextInt(4) == 0) {
+                    String regex = random(random, "abc", 1 + random.nextInt(2)) + "+" + random(random, "abc", 1);
+                    patterns.add("/" + regex + "/");
+                    for (String line : text.split("\n")) {
+                        if (Pattern.compile(regex).matcher(line).find()) {
+                            expected.set(i);
+                        }
+                    }
+                } else {
+                    String literal = random(random, "abc", 1 + random.nextInt(length > 1000 ? 9 : 4));
+                    patterns.add(literal);
+                    if (text.contains(literal)) {
+                        expected.set(i);
+                    }
+                }
+            }
+            assertEquals("round " + round + " " + patterns, expected,
+                    LogScanner.compile(patterns, UTF8).scan(file, ALL));
+        }
+    }
+
+    @Test
+    public void findsLiteralsAcrossChunks() throws Exception {
+        char[] filler = new char[LogScanner.CHUNK - 3];
+        Arrays.fill(filler, 'x');
+        write(new String(filler) + "needle\n");
+        BitSet found = LogScanner.compile(Arrays.asList("needle", "missing"), UTF8).scan(file, ALL);
+        assertTrue(found.get(0));
+        assertEquals(1, found.cardinality());
+    }
+
+    @Test
+    public void stopsWhenTheListenerDecides() throws Exception {
+        write("first\nsecond\n");
+        final List<Integer> told = new ArrayList<Integer>();
+        BitSet found = LogScanner.compile(Arrays.asList("first", "second"), UTF8).scan(file,
+                new LogScanner.Listener() {
+                    public boolean found(int pattern, BitSet found) {
+                        told.add(Integer.valueOf(pattern));
+                        return true;
+                    }
+                });
+        assertEquals(Arrays.asList(Integer.valueOf(0)), told);
+        assertEquals(1, found.cardinality());
+    }
+
+    @Test
+    public void emptyPatternsAndMissingFilesFindNothing() throws Exception {
+        write("anything\n");
+        assertTrue(LogScanner.compile(Arrays.asList(""), UTF8).scan(file, ALL).isEmpty());
+        file.delete();
+        assertTrue(LogScanner.compile(Arrays.asList("anything"), UTF8).scan(file, ALL).isEmpty());
+    }
+}
@@ -0,0 +1,113 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that parallel groups give the same result, or throw the same
+ * exception, as the same groups checked one after another.
+ *
+ * @author Chris Johnson
+ */
+public class ParallelEvaluatorTest {
+
+    /**
+     * Condition with a fixed result, or that throws, after a delay.
+     */
+    static class Leaf extends CheckCondition {
+        final int index;
+        final int kind;
+        final long delay;
+
+        Leaf(int index, int kind, long delay) {
+            this.index = index;
+            this.kind = kind;
+            this.delay = delay;
+        }
+
+        public boolean isMet(AbstractBuild build, Launcher launcher, BuildListener listener)
+                        throws IOException, InterruptedException {
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+            if (kind == 2) {
+                throw new IOException("leaf " + index);
+            }
+            return kind == 1;
+        }
+    }
+
+    private static String outcome(CheckCondition group) throws InterruptedException {
+        try {
+            return String.valueOf(group.isMet(null, null, null));
+        } catch (IOException e) {
+            return e.getMessage();
+        }
+    }
+
+    @Test
+    public void parallelGroupsAgreeWithSequentialGroups() throws Exception {
+        Random random = new Random(42);
+        for (int round = 0; round < 300; round++) {
+            int size = 2 + random.nextInt(5);
+            ArrayList<CheckCondition> sequential = new ArrayList<CheckCondition>();
+            ArrayList<CheckCondition> parallel = new ArrayList<CheckCondition>();
+            for (int i = 0; i < size; i++) {
+                int kind = random.nextInt(3);
+                sequential.add(new Leaf(i, kind, 0));
+                // earlier conditions tend to finish later, to mix up the completion order
+                parallel.add(new Leaf(i, kind, random.nextInt(3) * (size - i)));
+            }
+            boolean negate = random.nextBoolean();
+            String and = outcome(new AndGroupCheckCondition(sequential, negate, false, false));
+            assertEquals("and " + round, and, outcome(new AndGroupCheckCondition(parallel, negate, true, false)));
+            String or = outcome(new OrGroupCheckCondition(sequential, negate, false, false));
+            assertEquals("or " + round, or, outcome(new OrGroupCheckCondition(parallel, negate, true, false)));
+        }
+    }
+
+    @Test
+    public void laterDecisiveResultDoesNotHideEarlierException() throws Exception {
+        ArrayList<CheckCondition> conditions = new ArrayList<CheckCondition>();
+        conditions.add(new Leaf(0, 2, 50));
+        conditions.add(new Leaf(1, 0, 0));
+        assertEquals("leaf 0", outcome(new AndGroupCheckCondition(conditions, false, true, false)));
+    }
+
+    @Test
+    public void laterExceptionIsIgnoredOnceDecided() throws Exception {
+        ArrayList<CheckCondition> conditions = new ArrayList<CheckCondition>();
+        conditions.add(new Leaf(0, 1, 50));
+        conditions.add(new Leaf(1, 2, 0));
+        assertEquals("true", outcome(new OrGroupCheckCondition(conditions, false, true, false)));
+    }
+}
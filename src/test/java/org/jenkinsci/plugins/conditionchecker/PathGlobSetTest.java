@@ -0,0 +1,138 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the trie of globs selects the same paths as matching each
+ * glob on its own, segment by segment.
+ *
+ * @author Chris Johnson
+ */
+public class PathGlobSetTest {
+    private static final String[] GLOB_SEGMENTS = { "a", "b", "*", "?", "**", "a*", "?b" };
+    private static final String[] PATH_SEGMENTS = { "a", "b", "ab", "ba", "bb" };
+
+    /**
+     * Matches a path against one glob, trying every split for <tt>**</tt>.
+     */
+    private static boolean matches(String glob, String path) {
+        String g = PathGlobSet.normalize(glob);
+        if (glob.endsWith("/")) {
+            g = g.length() == 0 ? "**" : g + "/**";
+        }
+        String p = PathGlobSet.normalize(path);
+        return matches(g.length() == 0 ? new String[0] : g.split("/"), 0,
+                p.length() == 0 ? new String[0] : p.split("/"), 0);
+    }
+
+    private static boolean matches(String[] glob, int i, String[] path, int j) {
+        if (i == glob.length) {
+            return j == path.length;
+        }
+        if (glob[i].equals("**")) {
+            return matches(glob, i + 1, path, j) || (j < path.length && matches(glob, i, path, j + 1));
+        }
+        return j < path.length
+                && path[j].matches(glob[i].replace("?", ".").replace("*", ".*"))
+                && matches(glob, i + 1, path, j + 1);
+    }
+
+    private static boolean anyMatches(List<String> globs, String path) {
+        for (String glob : globs) {
+            if (matches(glob, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String random(Random random, String[] segments, int max) {
+        StringBuilder s = new StringBuilder();
+        int length = 1 + random.nextInt(max);
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                s.append('/');
+            }
+            s.append(segments[random.nextInt(segments.length)]);
+        }
+        return s.toString();
+    }
+
+    private static String join(List<String> globs) {
+        StringBuilder s = new StringBuilder();
+        for (String glob : globs) {
+            s.append(glob).append('\n');
+        }
+        return s.toString();
+    }
+
+    @Test
+    public void selectsWhatTheGlobsMatch() {
+        Random random = new Random(17);
+        for (int round = 0; round < 300; round++) {
+            List<String> includes = new ArrayList<String>();
+            List<String> excludes = new ArrayList<String>();
+            int count = random.nextInt(4);
+            for (int i = 0; i < count; i++) {
+                includes.add(random(random, GLOB_SEGMENTS, 3) + (random.nextInt(5) == 0 ? "/" : ""));
+            }
+            count = random.nextInt(3);
+            for (int i = 0; i < count; i++) {
+                excludes.add(random(random, GLOB_SEGMENTS, 3));
+            }
+            PathGlobSet set = PathGlobSet.compile(join(includes), join(excludes));
+            assertEquals(includes.size() + excludes.size(), set.size());
+
+            // one matcher for every path, as it remembers the directories it has seen
+            PathGlobSet.Matcher matcher = set.matcher();
+            for (int i = 0; i < 30; i++) {
+                String path = random(random, PATH_SEGMENTS, 4);
+                boolean included = anyMatches(includes, path);
+                boolean excluded = anyMatches(excludes, path);
+                String message = "round " + round + " " + includes + " - " + excludes + " " + path;
+                assertEquals(message, (included ? PathGlobSet.INCLUDED : 0) | (excluded ? PathGlobSet.EXCLUDED : 0),
+                        matcher.match(path));
+                assertEquals(message, (includes.isEmpty() || included) && !excluded, matcher.isSelected(path));
+            }
+        }
+    }
+
+    @Test
+    public void separatorsAreNormalized() {
+        PathGlobSet.Matcher matcher = PathGlobSet.compile("src\\main/, *.txt", "").matcher();
+        assertTrue(matcher.isSelected("src/main/java/A.java"));
+        assertTrue(matcher.isSelected("/src\\main\\B.java"));
+        assertTrue(matcher.isSelected("notes.txt"));
+        assertFalse(matcher.isSelected("docs/notes.txt"));
+        assertFalse(matcher.isSelected("src/test/C.java"));
+    }
+}
@@ -0,0 +1,234 @@
+package org.jenkinsci.plugins.conditionchecker;
+/* The MIT License
+ *
+ * Copyright (c) 2011 Chris Johnson
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.remoting.Callable;
+import hudson.remoting.LocalChannel;
+import hudson.util.NullStream;
+import hudson.util.StreamTaskListener;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Checks groups of {@link RemoteCondition}s sent to a local channel in one
+ * {@link RemoteBatch}: the result, the conditions checked and the results
+ * recorded must be those of checking each condition on its own.
+ *
+ * @author Chris Johnson
+ */
+public class RemoteBatchTest {
+    /**
+     * Conditions checked, in order
+     */
+    private static final List<Integer> CHECKED = new ArrayList<Integer>();
+    /**
+     * Number of conditions checked on their own rather than in a batch
+     */
+    private static int checkedAlone;
+
+    @BeforeClass
+    public static void setUpDescriptors() {
+        ConditionProgramTest.registerDescriptors();
+    }
+
+    /**
+     * Condition checked through its remote check, counting the times it is checked on its own.
+     */
+    static final class Remote extends CheckCondition implements RemoteCondition {
+        final int index;
+        final boolean value;
+
+        Remote(int index, boolean value) {
+            this.index = index;
+            this.value = value;
+        }
+
+        public boolean isMet(AbstractBuild build, Launcher launcher, BuildListener listener) {
+            checkedAlone++;
+            return new Check(index, value).check();
+        }
+
+        public RemoteCheck getRemoteCheck(AbstractBuild build, BuildListener listener) {
+            return new Check(index, value);
+        }
+    }
+
+    static final class Check implements RemoteCheck {
+        private static final long serialVersionUID = 1L;
+        private final int index;
+        private final boolean value;
+
+        Check(int index, boolean value) {
+            this.index = index;
+            this.value = value;
+        }
+
+        public boolean check() {
+            synchronized (CHECKED) {
+                CHECKED.add(Integer.valueOf(index));
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Local channel counting the calls made through it.
+     */
+    static final class CountingChannel extends LocalChannel {
+        int calls;
+
+        CountingChannel(ExecutorService executor) {
+            super(executor);
+        }
+
+        @Override
+        public <V, T extends Throwable> V call(Callable<V, T> callable) throws T {
+            calls++;
+            return super.call(callable);
+        }
+    }
+
+    private ExecutorService executor;
+    private CountingChannel channel;
+    private Launcher launcher;
+
+    @Before
+    public void createChannel() {
+        executor = Executors.newSingleThreadExecutor();
+        channel = new CountingChannel(executor);
+        launcher = new Launcher.LocalLauncher(new StreamTaskListener(new NullStream()), channel);
+        CHECKED.clear();
+        checkedAlone = 0;
+    }
+
+    @After
+    public void closeChannel() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Builds a random tree of groups of {@link Remote} conditions, numbered in configured order.
+     */
+    private static ArrayList<CheckCondition> randomConditions(Random random, int depth, int[] next,
+                    List<Remote> leaves) {
+        ArrayList<CheckCondition> conditions = new ArrayList<CheckCondition>();
+        int size = 1 + random.nextInt(3);
+        for (int i = 0; i < size; i++) {
+            int kind = depth == 0 ? 0 : random.nextInt(3);
+            if (kind == 0) {
+                Remote leaf = new Remote(next[0]++, random.nextBoolean());
+                leaves.add(leaf);
+                conditions.add(leaf);
+            } else if (kind == 1) {
+                conditions.add(new AndGroupCheckCondition(randomConditions(random, depth - 1, next, leaves),
+                        random.nextBoolean()));
+            } else {
+                conditions.add(new OrGroupCheckCondition(randomConditions(random, depth - 1, next, leaves),
+                        random.nextBoolean()));
+            }
+        }
+        return conditions;
+    }
+
+    /**
+     * Works out the result and the conditions checked by walking the tree.
+     */
+    private static boolean reference(CheckCondition c, List<Integer> checked) {
+        if (c instanceof Remote) {
+            checked.add(Integer.valueOf(((Remote) c).index));
+            return ((Remote) c).value;
+        }
+        if (c instanceof AndGroupCheckCondition) {
+            AndGroupCheckCondition and = (AndGroupCheckCondition) c;
+            return reference(and.conditions, false, and.negate, checked);
+        }
+        OrGroupCheckCondition or = (OrGroupCheckCondition) c;
+        return reference(or.conditions, true, or.negate, checked);
+    }
+
+    private static boolean reference(List<CheckCondition> conditions, boolean decisive, boolean negate,
+                    List<Integer> checked) {
+        boolean result = !decisive;
+        for (CheckCondition c : conditions) {
+            if (reference(c, checked) == decisive) {
+                result = decisive;
+                break;
+            }
+        }
+        return result != negate;
+    }
+
+    @Test
+    public void batchesAgreeWithTheTree() throws Exception {
+        Random random = new Random(23);
+        for (int round = 0; round < 300; round++) {
+            CHECKED.clear();
+            checkedAlone = 0;
+            channel.calls = 0;
+            List<Remote> leaves = new ArrayList<Remote>();
+            ArrayList<CheckCondition> conditions = randomConditions(random, 3, new int[1], leaves);
+            boolean negate = random.nextBoolean();
+            List<Integer> expectedChecked = new ArrayList<Integer>();
+            boolean expected = reference(conditions, false, negate, expectedChecked);
+
+            EvaluationContext context = new EvaluationContext().trace();
+            boolean result = ConditionProgram.compileAnd(conditions, negate).evaluate(null, launcher, null, context);
+            assertEquals("round " + round, expected, result);
+            assertEquals("round " + round, expectedChecked, CHECKED);
+            // every condition is remote, so the whole program is one batch once it has two instructions
+            boolean batched = leaves.size() > 1;
+            assertEquals("round " + round, batched ? 1 : 0, channel.calls);
+            assertEquals("round " + round, batched ? 0 : leaves.size(), checkedAlone);
+            for (Remote leaf : leaves) {
+                Boolean recorded = expectedChecked.contains(Integer.valueOf(leaf.index))
+                        ? Boolean.valueOf(leaf.value) : null;
+                assertEquals("round " + round + " leaf " + leaf.index, recorded, context.getRecorded(leaf));
+            }
+        }
+    }
+
+    @Test
+    public void mixedGroupsAreCheckedOneConditionAtATime() throws Exception {
+        List<Integer> calls = new ArrayList<Integer>();
+        ArrayList<CheckCondition> conditions = new ArrayList<CheckCondition>();
+        conditions.add(new Remote(0, true));
+        conditions.add(new ConditionProgramTest.Fixed(1, false, calls));
+        assertFalse(ConditionProgram.compileAnd(conditions, false).evaluate(null, launcher, null));
+        assertEquals(0, channel.calls);
+        assertEquals(1, checkedAlone);
+        assertEquals(1, calls.size());
+    }
+}